@@ -0,0 +1,156 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class DatabaseHelperTest {
+
+    private static final String TEST_DB = "helper-test.db";
+    private static final int DAY = EpochDays.of(2024, 6, 1);
+
+    private Context context;
+    private DatabaseHelper helper;
+    private int userId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        assertTrue(helper.insertUser("Test", "test@example.com", "secret", 2000));
+        userId = helper.getUserIdByEmail("test@example.com");
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void dailyTotals_followInsertsUpdatesAndDeletes() {
+        helper.insertWaterLog(userId, DAY, 250);
+        helper.insertWaterLog(userId, DAY, 500);
+        helper.insertWaterLog(userId, DAY + 1, 300);
+        assertEquals(750, helper.getDailyWaterIntake(userId, DAY));
+
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.execSQL("UPDATE water_logs SET amount = 400 WHERE amount = 500");
+        assertEquals(650, helper.getDailyWaterIntake(userId, DAY));
+
+        db.execSQL("UPDATE water_logs SET day = " + (DAY + 1) + " WHERE amount = 250");
+        assertEquals(400, helper.getDailyWaterIntake(userId, DAY));
+        assertEquals(550, helper.getDailyWaterIntake(userId, DAY + 1));
+
+        db.execSQL("DELETE FROM water_logs WHERE day = " + DAY);
+        assertEquals(0, helper.getDailyWaterIntake(userId, DAY));
+        assertEquals(1, helper.getDailyHistory(userId).size());
+
+        assertEquals(0, helper.checkDailyTotals(false));
+    }
+
+    @Test
+    public void checkDailyTotals_reportsAndRepairsDrift() {
+        helper.insertWaterLog(userId, DAY, 250);
+        helper.insertWaterLog(userId, DAY + 1, 250);
+
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.execSQL("UPDATE daily_totals SET total = 1 WHERE day = " + DAY);
+        db.execSQL("INSERT INTO daily_totals (user_id, day, total, entry_count) VALUES (" + userId + ", 1, 5, 1)");
+
+        assertEquals(2, helper.checkDailyTotals(true));
+        assertEquals(0, helper.checkDailyTotals(false));
+        assertEquals(250, helper.getDailyWaterIntake(userId, DAY));
+    }
+
+    @Test
+    public void getDailyTotals_flagsGoalMetDaysNewestFirst() {
+        helper.insertWaterLog(userId, DAY, 1500);
+        helper.insertWaterLog(userId, DAY, 500);
+        helper.insertWaterLog(userId, DAY + 1, 1000);
+
+        DailyHistory history = helper.getDailyTotals(userId);
+        assertEquals(2, history.size());
+        assertEquals(DAY + 1, history.getDay(0));
+        assertFalse(history.isGoalMet(0));
+        assertEquals(2000, history.getTotal(1));
+        assertTrue(history.isGoalMet(1));
+    }
+
+    @Test
+    public void userProfile_isCachedAndInvalidatedBySettingsWrites() {
+        UserProfile profile = helper.getUserProfile(userId);
+        assertEquals("test@example.com", profile.email);
+        assertEquals(2000, profile.dailyGoal);
+        assertSame(profile, helper.getUserProfile(userId));
+
+        assertTrue(helper.updateUserSettings(userId, 2500, 45));
+        profile = helper.getUserProfile(userId);
+        assertEquals(2500, profile.dailyGoal);
+        assertEquals(45, profile.reminderInterval);
+
+        assertTrue(helper.saveNotificationTimes(userId, 7, 30, 23, 15));
+        profile = helper.getUserProfile(userId);
+        assertEquals(7, profile.wakeUpHour);
+        assertEquals(15, profile.bedTimeMinute);
+
+        assertNull(helper.getUserProfile(userId + 100));
+    }
+
+    @Test
+    public void session_isValidUntilEndedOrReplaced() {
+        assertFalse(helper.isSessionValid(userId, "first"));
+
+        assertTrue(helper.startSession(userId, "first"));
+        assertTrue(helper.isSessionValid(userId, "first"));
+        assertFalse(helper.isSessionValid(userId, "other"));
+        assertFalse(helper.isSessionValid(userId + 100, "first"));
+
+        // Signing in again replaces the earlier token
+        assertTrue(helper.startSession(userId, "second"));
+        assertFalse(helper.isSessionValid(userId, "first"));
+
+        assertTrue(helper.endSession(userId));
+        assertFalse(helper.isSessionValid(userId, "second"));
+        assertFalse(helper.startSession(userId + 100, "nobody"));
+    }
+
+    @Test
+    public void validateUser_verifiesHashAndRehashesLegacyRows() {
+        assertEquals(userId, helper.validateUser("test@example.com", "secret"));
+        assertEquals(-1, helper.validateUser("test@example.com", "wrong"));
+        assertEquals(-1, helper.validateUser("nobody@example.com", "secret"));
+
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertNotEquals("secret", stringColumn(db, "password"));
+
+        // A row from before hashing: plaintext with 0 iterations
+        db.execSQL("UPDATE users SET password = 'secret', password_salt = NULL, password_iterations = 0");
+        assertEquals(-1, helper.validateUser("test@example.com", "wrong"));
+        assertEquals("secret", stringColumn(db, "password"));
+
+        assertEquals(userId, helper.validateUser("test@example.com", "secret"));
+        assertNotEquals("secret", stringColumn(db, "password"));
+        assertEquals(String.valueOf(PasswordHasher.getIterations()), stringColumn(db, "password_iterations"));
+        assertEquals(userId, helper.validateUser("test@example.com", "secret"));
+    }
+
+    private static String stringColumn(SQLiteDatabase db, String column) {
+        try (Cursor cursor = db.rawQuery("SELECT " + column + " FROM users", null)) {
+            cursor.moveToFirst();
+            return cursor.getString(0);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.h2obuddy;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Upgrades a populated version 1 database through every migration and checks nothing was lost,
+ * checks the steps that drop or rewrite rows one at a time, and compares the upgraded schema
+ * with a fresh install's.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseMigrationTest {
+
+    private static final String TEST_DB = "migration-test.db";
+    private static final String FRESH_DB = "migration-fresh-test.db";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        context.deleteDatabase(FRESH_DB);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(TEST_DB);
+        context.deleteDatabase(FRESH_DB);
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsRowsAndTotals() {
+        SQLiteDatabase v1 = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(TEST_DB), null);
+        DatabaseMigrations.createVersion1Schema(v1);
+        insertUser(v1, "a@example.com", 2000);
+        insertUser(v1, "b@example.com", 2500);
+        for (int day = 1; day <= 20; day++) {
+            String date = String.format("2024-01-%02d", day);
+            insertLog(v1, "a@example.com", date, 250);
+            insertLog(v1, "a@example.com", date, 500);
+            insertLog(v1, "b@example.com", date, 300);
+        }
+        insertLog(v1, "a@example.com", "2024-01-21", 2000); // the one day that meets a goal
+        v1.setVersion(1);
+        v1.close();
+
+        DatabaseHelper helper = new DatabaseHelper(context, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertEquals(DatabaseHelper.DATABASE_VERSION, db.getVersion());
+
+        assertEquals(2, count(db, "SELECT COUNT(*) FROM users"));
+        assertEquals(61, count(db, "SELECT COUNT(*) FROM water_logs"));
+        assertEquals(20 * (250 + 500 + 300) + 2000, count(db, "SELECT SUM(amount) FROM water_logs"));
+        // Rows from before timestamps were stored only know their day
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM water_logs WHERE logged_at IS NOT NULL"));
+        assertEquals(750, helper.getDailyWaterIntake("a@example.com", "2024-01-05"));
+        assertEquals(300, helper.getDailyWaterIntake("b@example.com", "2024-01-05"));
+        assertEquals(7, helper.getDailyHistory("a@example.com").size());
+        assertEquals(2500, helper.getDailyGoal("b@example.com"));
+
+        int userA = helper.getUserIdByEmail("a@example.com");
+        assertEquals(750, helper.getDailyWaterIntake(userA, EpochDays.of(2024, 1, 5)));
+        assertEquals("2024-01-21: 2000 ml", helper.getDailyHistory(userA).get(0));
+        assertEquals("2024-01-20: 750 ml", helper.getDailyHistory(userA).get(1));
+
+        // Goal bits backfilled against the goal each user had at upgrade time
+        GoalBitmap goals = helper.getGoalBitmap(userA);
+        assertTrue(goals.isMet(EpochDays.of(2024, 1, 21)));
+        assertEquals(1, goals.countMet(EpochDays.of(2024, 1, 1), EpochDays.of(2024, 12, 31)));
+        assertEquals(0, helper.getGoalBitmap(helper.getUserIdByEmail("b@example.com")).longestStreak());
+        assertEquals(0, helper.getFoldedJournalSeq());
+        helper.close();
+    }
+
+    @Test
+    public void migration2To3_dropsOrphanAndUnparseableRows() {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(TEST_DB), null);
+        DatabaseMigrations.createVersion1Schema(db);
+        DatabaseMigrations.migrate(db, 1, 2);
+        insertUser(db, "a@example.com", 2000);
+        insertLog(db, "a@example.com", "2024-01-05", 250);
+        insertLog(db, "a@example.com", "2024-01-05", null); // kept as 0 ml
+        insertLog(db, "ghost@example.com", "2024-01-05", 400); // no such user
+        insertLog(db, null, "2024-01-05", 400);
+        insertLog(db, "a@example.com", "yesterday", 400);
+        insertLog(db, "a@example.com", "2024-1-5", 400); // not zero-padded
+        insertLog(db, "a@example.com", "2024-13-01", 400);
+        insertLog(db, "a@example.com", null, 400);
+
+        DatabaseMigrations.MIGRATION_2_3.migrate(db);
+
+        assertEquals(2, count(db, "SELECT COUNT(*) FROM water_logs"));
+        assertEquals(2, count(db, "SELECT COUNT(*) FROM water_logs "
+                + "WHERE user_id = (SELECT id FROM users WHERE email = 'a@example.com') "
+                + "AND day = " + EpochDays.of(2024, 1, 5)));
+        assertEquals(250, count(db, "SELECT SUM(amount) FROM water_logs"));
+        // Surviving rows keep their ids
+        assertEquals(3, count(db, "SELECT SUM(id) FROM water_logs"));
+        db.close();
+    }
+
+    @Test
+    public void migration5To6_legacyPasswordsGetZeroIterations() {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(TEST_DB), null);
+        DatabaseMigrations.createVersion1Schema(db);
+        DatabaseMigrations.migrate(db, 1, 5);
+        insertUser(db, "a@example.com", 2000);
+        insertUser(db, "b@example.com", 2500);
+
+        DatabaseMigrations.MIGRATION_5_6.migrate(db);
+
+        assertEquals(2, count(db, "SELECT COUNT(*) FROM users "
+                + "WHERE password = 'secret' AND password_salt IS NULL AND password_iterations = 0"));
+        db.setVersion(6);
+        db.close();
+
+        // The plaintext password still signs in, and is hashed by doing so
+        DatabaseHelper helper = new DatabaseHelper(context, TEST_DB);
+        int userA = helper.validateUser("a@example.com", "secret");
+        assertNotEquals(-1, userA);
+        assertEquals(-1, helper.validateUser("b@example.com", "wrong"));
+        SQLiteDatabase upgraded = helper.getWritableDatabase();
+        assertEquals(1, count(upgraded, "SELECT COUNT(*) FROM users WHERE id = " + userA
+                + " AND password <> 'secret' AND password_salt IS NOT NULL AND password_iterations > 0"));
+        assertEquals(1, count(upgraded, "SELECT COUNT(*) FROM users WHERE password_iterations = 0"));
+        helper.close();
+    }
+
+    @Test
+    public void freshInstall_matchesUpgradedSchema() {
+        DatabaseHelper fresh = new DatabaseHelper(context, FRESH_DB);
+        SQLiteDatabase freshDb = fresh.getWritableDatabase();
+        assertEquals(DatabaseHelper.DATABASE_VERSION, freshDb.getVersion());
+        assertEquals(0, count(freshDb, "SELECT folded_seq FROM intake_journal"));
+        List<String> freshSchema = schema(freshDb);
+        fresh.close();
+
+        SQLiteDatabase v1 = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(TEST_DB), null);
+        DatabaseMigrations.createVersion1Schema(v1);
+        v1.setVersion(1);
+        v1.close();
+        DatabaseHelper upgraded = new DatabaseHelper(context, TEST_DB);
+        SQLiteDatabase upgradedDb = upgraded.getWritableDatabase();
+        assertEquals(DatabaseHelper.DATABASE_VERSION, upgradedDb.getVersion());
+        List<String> upgradedSchema = schema(upgradedDb);
+        upgraded.close();
+
+        assertTrue(freshSchema.contains("index idx_water_logs_user_day_time on water_logs: "
+                + "CREATE INDEX idx_water_logs_user_day_time ON water_logs (user_id, day, logged_at, amount)"));
+        assertEquals(freshSchema, upgradedSchema);
+    }
+
+    // Every table, index, trigger and view with its SQL (whitespace collapsed), then what
+    // SQLite reports for each table's columns and indexes
+    private static List<String> schema(SQLiteDatabase db) {
+        List<String> schema = new ArrayList<>();
+        List<String> tables = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery(
+                "SELECT type, name, tbl_name, sql FROM sqlite_master ORDER BY type, name", null)) {
+            while (cursor.moveToNext()) {
+                String sql = cursor.isNull(3) ? null : cursor.getString(3).replaceAll("\\s+", " ").trim();
+                schema.add(cursor.getString(0) + " " + cursor.getString(1) + " on " + cursor.getString(2) + ": " + sql);
+                if ("table".equals(cursor.getString(0))) {
+                    tables.add(cursor.getString(1));
+                }
+            }
+        }
+        for (String table : tables) {
+            schema.addAll(pragma(db, "table_info(\"" + table + "\")", 0));
+            // Skip the seq column: it only reflects creation order
+            List<String> indexes = pragma(db, "index_list(\"" + table + "\")", 1);
+            Collections.sort(indexes);
+            schema.addAll(indexes);
+        }
+        return schema;
+    }
+
+    // One line per row of the pragma, prefixed with its name, from column {@code first} on
+    private static List<String> pragma(SQLiteDatabase db, String pragma, int first) {
+        List<String> lines = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("PRAGMA " + pragma, null)) {
+            while (cursor.moveToNext()) {
+                StringBuilder line = new StringBuilder(pragma);
+                for (int i = first; i < cursor.getColumnCount(); i++) {
+                    line.append(' ').append(cursor.getColumnName(i)).append('=').append(cursor.getString(i));
+                }
+                lines.add(line.toString());
+            }
+        }
+        return lines;
+    }
+
+    private static void insertUser(SQLiteDatabase db, String email, int dailyGoal) {
+        ContentValues values = new ContentValues();
+        values.put("name", email);
+        values.put("email", email);
+        values.put("password", "secret");
+        values.put("daily_goal", dailyGoal);
+        db.insertOrThrow("users", null, values);
+    }
+
+    private static void insertLog(SQLiteDatabase db, String email, String date, Integer amount) {
+        ContentValues values = new ContentValues();
+        values.put("email", email);
+        values.put("date", date);
+        values.put("amount", amount);
+        db.insertOrThrow("water_logs", null, values);
+    }
+
+    private static long count(SQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the old pattern (every screen builds, opens and queries its own helper) with the
+ * shared application-scoped helper. Results are logged as one "BENCH key=value ..." line each.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseOpenBenchmark {
+
+    private static final String TAG = "DatabaseOpenBenchmark";
+    private static final String TEST_DB = "open-bench.db";
+    private static final int SCREENS = 200;
+
+    private Context context;
+    private int userId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        DatabaseHelper seed = new DatabaseHelper(context, TEST_DB);
+        seed.insertUser("Bench", "bench@example.com", "secret", 2000);
+        userId = seed.getUserIdByEmail("bench@example.com");
+        int today = EpochDays.today();
+        for (int day = today - 365; day <= today; day++) {
+            seed.insertWaterLog(userId, day, 250);
+            seed.insertWaterLog(userId, day, 500);
+        }
+        seed.close();
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void perActivityHelperVsSharedHelper() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < SCREENS; i++) {
+            DatabaseHelper perScreen = new DatabaseHelper(context, TEST_DB);
+            loadScreen(perScreen);
+            perScreen.close();
+        }
+        long perActivityNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        DatabaseHelper shared = new DatabaseHelper(context, TEST_DB);
+        start = SystemClock.elapsedRealtimeNanos();
+        shared.getWritableDatabase();
+        long coldOpenNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < SCREENS; i++) {
+            loadScreen(shared);
+        }
+        long sharedNanos = SystemClock.elapsedRealtimeNanos() - start;
+        shared.close();
+
+        Log.i(TAG, "BENCH name=per_activity_helper screens=" + SCREENS
+                + " avg_us=" + perActivityNanos / SCREENS / 1000);
+        Log.i(TAG, "BENCH name=shared_helper screens=" + SCREENS
+                + " cold_open_us=" + coldOpenNanos / 1000
+                + " avg_us=" + sharedNanos / SCREENS / 1000);
+    }
+
+    // Roughly what Home, History and Settings read when they open
+    private void loadScreen(DatabaseHelper helper) {
+        helper.getDailyGoal(userId);
+        helper.getDailyWaterIntake(userId, EpochDays.today());
+        helper.getDailyHistory(userId);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pages through five years of synthetic history and checks that every page is cheap and
+ * that walking the whole range does not grow the heap.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HistoryPagingTest {
+
+    private static final String TAG = "HistoryPagingTest";
+    private static final String TEST_DB = "paging-test.db";
+    private static final int YEARS = 5;
+    private static final int PAGE_SIZE = 60;
+    private static final int LAST_DAY = EpochDays.of(2024, 6, 30);
+
+    private Context context;
+    private DatabaseHelper helper;
+    private int userId;
+    private int days;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        helper.insertUser("Paging", "paging@example.com", "secret", 2000);
+        userId = helper.getUserIdByEmail("paging@example.com");
+
+        // Six drinks a day for five years, at noon so every drink lands on its own day
+        days = YEARS * 365;
+        List<IntakeEvent> events = new ArrayList<>();
+        for (int d = 0; d < days; d++) {
+            long noon = (long) (LAST_DAY - d) * EpochDays.MILLIS_PER_DAY + EpochDays.MILLIS_PER_DAY / 2;
+            for (int i = 0; i < 6; i++) {
+                events.add(new IntakeEvent(userId, noon, d % 2 == 0 ? 400 : 250));
+            }
+        }
+        helper.insertWaterLogs(events);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void pagesCoverWholeRangeWithFlatLatencyAndHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long peakHeap = heapBefore;
+
+        long worstPageNanos = 0;
+        int seen = 0;
+        int beforeDay = Integer.MAX_VALUE;
+        while (true) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            DailyHistory page = helper.getDailyTotalsBefore(userId, beforeDay, PAGE_SIZE);
+            worstPageNanos = Math.max(worstPageNanos, SystemClock.elapsedRealtimeNanos() - start);
+            peakHeap = Math.max(peakHeap, runtime.totalMemory() - runtime.freeMemory());
+
+            for (int i = 0; i < page.size(); i++) {
+                assertTrue(page.getDay(i) < beforeDay);
+                beforeDay = page.getDay(i);
+                assertEquals(page.getTotal(i) >= 2000, page.isGoalMet(i));
+            }
+            seen += page.size();
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+        }
+
+        Log.i(TAG, "BENCH name=history_paging days=" + days
+                + " worst_page_us=" + worstPageNanos / 1000
+                + " peak_heap_growth_kb=" + (peakHeap - heapBefore) / 1024);
+        assertEquals(days, seen);
+        assertTrue("page took " + worstPageNanos / 1_000_000 + " ms", worstPageNanos < 100_000_000L);
+        assertTrue("heap grew " + (peakHeap - heapBefore) / 1024 + " KB", peakHeap - heapBefore < 8L * 1024 * 1024);
+    }
+}
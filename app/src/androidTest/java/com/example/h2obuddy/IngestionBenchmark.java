@@ -0,0 +1,98 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rows/sec for the single-row insertWaterLog path against the batched insertWaterLogs path.
+ * Results are logged as one "BENCH key=value ..." line each.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IngestionBenchmark {
+
+    private static final String TAG = "IngestionBenchmark";
+    private static final String TEST_DB = "ingest-bench.db";
+    private static final int BATCH_CHUNK = 10_000;
+
+    private Context context;
+    private DatabaseHelper helper;
+    private int userId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        helper.insertUser("Bench", "bench@example.com", "secret", 2000);
+        userId = helper.getUserIdByEmail("bench@example.com");
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void singleRow10k() {
+        int rows = 10_000;
+        int today = EpochDays.today();
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < rows; i++) {
+            helper.insertWaterLog(userId, today - i / 8, 250);
+        }
+        report("single_row", rows, SystemClock.elapsedRealtimeNanos() - start);
+    }
+
+    @Test
+    public void batch10k() {
+        runBatch(10_000);
+    }
+
+    @Test
+    public void batch1M() {
+        runBatch(1_000_000);
+    }
+
+    private void runBatch(int rows) {
+        long now = System.currentTimeMillis();
+        List<IntakeEvent> chunk = new ArrayList<>(BATCH_CHUNK);
+        long elapsed = 0;
+        int written = 0;
+        for (int i = 0; i < rows; i++) {
+            // Eight drinks a day, walking back in time
+            chunk.add(new IntakeEvent(userId, now - (i / 8) * EpochDays.MILLIS_PER_DAY, 250));
+            if (chunk.size() == BATCH_CHUNK || i == rows - 1) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                boolean[] outcomes = helper.insertWaterLogs(chunk);
+                elapsed += SystemClock.elapsedRealtimeNanos() - start;
+                for (boolean ok : outcomes) {
+                    written += ok ? 1 : 0;
+                }
+                chunk.clear();
+            }
+        }
+        assertEquals(rows, written);
+        report("batch", rows, elapsed);
+    }
+
+    private static void report(String name, int rows, long nanos) {
+        Log.i(TAG, "BENCH name=" + name + " rows=" + rows
+                + " ms=" + nanos / 1_000_000
+                + " rows_per_sec=" + (long) (rows / (nanos / 1e9)));
+    }
+}
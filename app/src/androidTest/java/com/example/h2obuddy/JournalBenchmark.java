@@ -0,0 +1,108 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-drink latency and rows/sec for insertWaterLog writing straight to SQLite against the
+ * same calls appending to the intake journal. Journal folds run on a background thread as in
+ * the app; the "with_fold" rate includes folding whatever is left at the end. Results are
+ * logged as one "BENCH key=value ..." line each.
+ */
+@RunWith(AndroidJUnit4.class)
+public class JournalBenchmark {
+
+    private static final String TAG = "JournalBenchmark";
+    private static final String TEST_DB = "journal-bench.db";
+    private static final int ROWS = 10_000;
+
+    private Context context;
+    private DatabaseHelper helper;
+    private File file;
+    private ExecutorService folder;
+    private int userId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        PasswordHasher.setIterations(1);
+        helper = new DatabaseHelper(context, TEST_DB);
+        file = new File(context.getFilesDir(), "journal-bench.journal");
+        file.delete();
+        folder = Executors.newSingleThreadExecutor();
+        helper.insertUser("Bench", "bench@example.com", "secret", 2000);
+        userId = helper.getUserIdByEmail("bench@example.com");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        PasswordHasher.setIterations(PasswordHasher.DEFAULT_ITERATIONS);
+        helper.close();
+        folder.shutdown();
+        folder.awaitTermination(10, TimeUnit.SECONDS);
+        context.deleteDatabase(TEST_DB);
+        file.delete();
+    }
+
+    @Test
+    public void sqlite10k() {
+        run("sqlite", ROWS);
+    }
+
+    @Test
+    public void journal10k() throws IOException {
+        helper.setIntakeStore(IntakeJournal.open(file, helper, IntakeJournal.DEFAULT_CAPACITY, folder));
+        run("journal", ROWS);
+    }
+
+    @Test
+    public void journal1M() throws IOException {
+        helper.setIntakeStore(IntakeJournal.open(file, helper, IntakeJournal.DEFAULT_CAPACITY, folder));
+        run("journal", 1_000_000);
+    }
+
+    private void run(String name, int rows) {
+        long[] latencies = new long[rows];
+        long now = System.currentTimeMillis();
+        int today = EpochDays.today();
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < rows; i++) {
+            long before = SystemClock.elapsedRealtimeNanos();
+            assertTrue(helper.insertWaterLog(new IntakeEvent(userId, now, 250)));
+            latencies[i] = SystemClock.elapsedRealtimeNanos() - before;
+        }
+        long appendNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        // Everything in water_logs, as the next history read would need it; reads fold first
+        helper.getLastLogId();
+        long totalNanos = SystemClock.elapsedRealtimeNanos() - start;
+        assertEquals((long) rows * 250, helper.getDailyWaterIntake(userId, today));
+
+        Arrays.sort(latencies);
+        Log.i(TAG, "BENCH name=" + name + " rows=" + rows
+                + " p50_us=" + latencies[rows / 2] / 1000.0
+                + " p99_us=" + latencies[(int) (rows * 0.99)] / 1000.0
+                + " max_us=" + latencies[rows - 1] / 1000
+                + " rows_per_sec=" + (long) (rows / (appendNanos / 1e9))
+                + " with_fold_rows_per_sec=" + (long) (rows / (totalNanos / 1e9)));
+    }
+}
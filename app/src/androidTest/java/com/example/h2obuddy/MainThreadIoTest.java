@@ -0,0 +1,124 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the repository from the main thread with StrictMode set to kill the process on any
+ * main-thread disk access. A DatabaseHelper call that leaks onto the UI thread fails the run.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MainThreadIoTest {
+
+    private static final String TEST_DB = "strict-test.db";
+
+    private Context context;
+    private DatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                StrictModeGuard.failOnMainThreadDiskIo();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                StrictModeGuard.reset();
+            }
+        });
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void repositoryNeverTouchesDiskOnMainThread() throws Exception {
+        final WaterRepository repository = new WaterRepository(helper);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<List<String>> history = new AtomicReference<>();
+        final AtomicReference<Boolean> deliveredOnMain = new AtomicReference<>();
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                repository.execute(new WaterRepository.Query<List<String>>() {
+                    @Override
+                    public List<String> run(DatabaseHelper db) {
+                        db.insertUser("Test", "strict@example.com", "secret", 2000);
+                        int userId = db.validateUser("strict@example.com", "secret");
+                        db.insertWaterLog(userId, EpochDays.today(), 250);
+                        return db.getDailyHistory(userId);
+                    }
+                }, new WaterRepository.Callback<List<String>>() {
+                    @Override
+                    public void onResult(List<String> result) {
+                        deliveredOnMain.set(Looper.myLooper() == Looper.getMainLooper());
+                        history.set(result);
+                        done.countDown();
+                    }
+                });
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(deliveredOnMain.get());
+        assertEquals(1, history.get().size());
+    }
+
+    @Test
+    public void cancelledTasksAreNotDelivered() throws Exception {
+        final WaterRepository repository = new WaterRepository(helper);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<Boolean> delivered = new AtomicReference<>(false);
+
+        repository.execute(new WaterRepository.Query<Integer>() {
+            @Override
+            public Integer run(DatabaseHelper db) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return db.getDailyGoal(1);
+            }
+        }, new WaterRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer result) {
+                delivered.set(true);
+            }
+        });
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        repository.cancelAll();
+        release.countDown();
+        Thread.sleep(200);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        assertFalse(delivered.get());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.h2obuddy;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Time to hash one password at a range of PBKDF2 iteration counts, and the largest count that
+ * keeps a login under the target latency on this device. Run on the slowest device the app
+ * should support and set {@link PasswordHasher#DEFAULT_ITERATIONS} from the result. Results are
+ * logged as one "BENCH key=value ..." line each.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PasswordHashBenchmark {
+
+    private static final String TAG = "PasswordHashBenchmark";
+    private static final long TARGET_MILLIS = 250;
+    private static final int[] ITERATIONS = {10_000, 20_000, 40_000, 60_000, 100_000, 150_000, 200_000};
+    private static final int RUNS = 5;
+
+    @Test
+    public void iterationsUnderTargetLatency() {
+        String salt = PasswordHasher.newSalt();
+        // Warm up the provider
+        PasswordHasher.hash("warmup", salt, 1000);
+
+        int recommended = 0;
+        for (int iterations : ITERATIONS) {
+            long[] millis = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                PasswordHasher.hash("correct horse battery staple", salt, iterations);
+                millis[i] = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000;
+            }
+            Arrays.sort(millis);
+            long median = millis[RUNS / 2];
+            Log.i(TAG, "BENCH name=pbkdf2 iterations=" + iterations
+                    + " p50_ms=" + median + " max_ms=" + millis[RUNS - 1]);
+            if (median <= TARGET_MILLIS) {
+                recommended = iterations;
+            }
+        }
+        Log.i(TAG, "BENCH name=pbkdf2_recommendation target_ms=" + TARGET_MILLIS
+                + " iterations=" + recommended + " current=" + PasswordHasher.DEFAULT_ITERATIONS);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cost of logging one drink through the background quick-log path against the activity flow it
+ * replaces (login screen, sign-in, home screen, tap). Results are logged as one
+ * "BENCH key=value ..." line each.
+ *
+ * Both run inside the already-started test process; process start cost for a quick log from a
+ * cold process is recorded in the field as {@link Metrics#QUICK_LOG_COLD_START}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QuickLogBenchmark {
+
+    private static final String TAG = "QuickLogBenchmark";
+    private static final String TEST_DB = "quicklog-bench.db";
+    private static final int RUNS = 20;
+
+    private Context context;
+    private DatabaseHelper helper;
+    private int userId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        helper.insertUser("Bench", "bench@example.com", "secret", 2000);
+        userId = helper.getUserIdByEmail("bench@example.com");
+    }
+
+    @After
+    public void tearDown() {
+        ProgressCache.getInstance().invalidate(userId);
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void quickLogVsActivityFlow() {
+        long[] quickLog = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            // Every other run starts without a cached total, as after a process start
+            if (i % 2 == 0) {
+                ProgressCache.getInstance().invalidate(userId);
+            }
+            long start = SystemClock.elapsedRealtimeNanos();
+            assertNotNull(QuickLogReceiver.log(helper, userId, 250));
+            quickLog[i] = SystemClock.elapsedRealtimeNanos() - start;
+        }
+
+        long[] activityFlow = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+
+            ActivityScenario.launch(MainActivity.class).close();
+            int signedIn = helper.validateUser("bench@example.com", "secret");
+            Intent home = new Intent(context, HomeActivity.class).putExtra("USER_ID", signedIn);
+            ActivityScenario.launch(home).close();
+            helper.getUserProfile(signedIn);
+            helper.getDailyWaterIntake(signedIn, EpochDays.today());
+            helper.insertWaterLog(signedIn, EpochDays.today(), 250);
+
+            activityFlow[i] = SystemClock.elapsedRealtimeNanos() - start;
+        }
+
+        report("quick_log", quickLog);
+        report("activity_flow", activityFlow);
+        assertEquals(2 * RUNS * 250, helper.getDailyWaterIntake(userId, EpochDays.today()));
+    }
+
+    private static void report(String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        Log.i(TAG, "BENCH name=" + name + " runs=" + sorted.length
+                + " p50_us=" + sorted[sorted.length / 2] / 1000
+                + " max_us=" + sorted[sorted.length - 1] / 1000);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rows/sec for exporting 1M log rows to a file and importing them into an empty user, in both
+ * formats. Results are logged as one "BENCH key=value ..." line each.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransferBenchmark {
+
+    private static final String TAG = "TransferBenchmark";
+    private static final String TEST_DB = "transfer-bench.db";
+    private static final int ROWS = 1_000_000;
+    private static final int DRINKS_PER_DAY = 60; // keeps 1M rows within ~45 years
+    private static final int BATCH_CHUNK = 10_000;
+
+    private Context context;
+    private DatabaseHelper helper;
+    private LogTransfer transfer;
+    private File file;
+    private int source;
+    private int target;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        PasswordHasher.setIterations(1);
+        helper = new DatabaseHelper(context, TEST_DB);
+        transfer = new LogTransfer(helper);
+        file = new File(context.getCacheDir(), "transfer-bench.export");
+
+        helper.insertUser("Source", "source@example.com", "secret", 2000);
+        helper.insertUser("Target", "target@example.com", "secret", 2000);
+        source = helper.getUserIdByEmail("source@example.com");
+        target = helper.getUserIdByEmail("target@example.com");
+
+        long now = System.currentTimeMillis();
+        List<IntakeEvent> chunk = new ArrayList<>(BATCH_CHUNK);
+        for (int i = 0; i < ROWS; i++) {
+            // A drink a minute, walking back in time a day per DRINKS_PER_DAY rows
+            long time = now - (long) (i / DRINKS_PER_DAY) * EpochDays.MILLIS_PER_DAY - (i % DRINKS_PER_DAY) * 60_000L;
+            chunk.add(new IntakeEvent(source, time, 250));
+            if (chunk.size() == BATCH_CHUNK) {
+                helper.insertWaterLogs(chunk);
+                chunk.clear();
+            }
+        }
+        helper.insertWaterLogs(chunk);
+    }
+
+    @After
+    public void tearDown() {
+        PasswordHasher.setIterations(PasswordHasher.DEFAULT_ITERATIONS);
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+        file.delete();
+    }
+
+    @Test
+    public void csv1M() throws IOException {
+        run("csv", LogArchive.CSV);
+    }
+
+    @Test
+    public void binary1M() throws IOException {
+        run("binary", LogArchive.BINARY);
+    }
+
+    private void run(String format, int formatId) throws IOException {
+        long start = SystemClock.elapsedRealtimeNanos();
+        long exported;
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            exported = transfer.export(source, formatId, out.getChannel());
+            out.getFD().sync();
+        }
+        long exportNanos = SystemClock.elapsedRealtimeNanos() - start;
+        assertEquals(ROWS, exported);
+
+        start = SystemClock.elapsedRealtimeNanos();
+        LogTransfer.Result result;
+        try (FileInputStream in = new FileInputStream(file)) {
+            result = transfer.importInto(target, in.getChannel(), false);
+        }
+        long importNanos = SystemClock.elapsedRealtimeNanos() - start;
+        assertEquals(ROWS, result.imported);
+        assertEquals(0, result.rejected);
+
+        report(format + "_export", file.length(), exportNanos);
+        report(format + "_import", file.length(), importNanos);
+
+        // Importing the same file again only runs the duplicate checks
+        start = SystemClock.elapsedRealtimeNanos();
+        try (FileInputStream in = new FileInputStream(file)) {
+            result = transfer.importInto(target, in.getChannel(), false);
+        }
+        assertEquals(ROWS, result.duplicates);
+        report(format + "_reimport", file.length(), SystemClock.elapsedRealtimeNanos() - start);
+    }
+
+    private static void report(String name, long bytes, long nanos) {
+        Log.i(TAG, "BENCH name=" + name + " rows=" + ROWS + " bytes=" + bytes
+                + " ms=" + nanos / 1_000_000
+                + " rows_per_sec=" + (long) (ROWS / (nanos / 1e9)));
+    }
+}
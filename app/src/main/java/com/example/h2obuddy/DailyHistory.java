@@ -0,0 +1,101 @@
+package com.example.h2obuddy;
+
+import java.util.Arrays;
+
+/**
+ * Per-day intake totals, newest first, held in parallel primitive arrays.
+ * Whether each day met the user's goal is decided by the query that builds it.
+ */
+public final class DailyHistory {
+
+    private int[] days;
+    private int[] totals;
+    private boolean[] goalMet;
+    private int size;
+
+    DailyHistory(int capacity) {
+        days = new int[capacity];
+        totals = new int[capacity];
+        goalMet = new boolean[capacity];
+    }
+
+    void add(int day, int total, boolean met) {
+        ensureCapacity(size + 1);
+        days[size] = day;
+        totals[size] = total;
+        goalMet[size] = met;
+        size++;
+    }
+
+    // Appends an older page fetched with the keyset cursor from getOldestDay()
+    void append(DailyHistory page) {
+        ensureCapacity(size + page.size);
+        System.arraycopy(page.days, 0, days, size, page.size);
+        System.arraycopy(page.totals, 0, totals, size, page.size);
+        System.arraycopy(page.goalMet, 0, goalMet, size, page.size);
+        size += page.size;
+    }
+
+    /**
+     * Adds an intake delta to {@code day}, inserting the day at the front if it is newer than
+     * every loaded day (the first drink of today). Other days that aren't loaded are left
+     * alone; they'll come with their page. Returns whether anything changed.
+     */
+    boolean applyDelta(int day, int delta, int dailyGoal) {
+        if (size == 0 || day > days[0]) {
+            ensureCapacity(size + 1);
+            System.arraycopy(days, 0, days, 1, size);
+            System.arraycopy(totals, 0, totals, 1, size);
+            System.arraycopy(goalMet, 0, goalMet, 1, size);
+            days[0] = day;
+            totals[0] = delta;
+            goalMet[0] = delta >= dailyGoal;
+            size++;
+            return true;
+        }
+        // Newest first, and a delta almost always lands on today, so this ends at index 0
+        for (int i = 0; i < size && days[i] >= day; i++) {
+            if (days[i] == day) {
+                totals[i] += delta;
+                goalMet[i] = totals[i] >= dailyGoal;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > days.length) {
+            int grown = Math.max(capacity, days.length * 2);
+            days = Arrays.copyOf(days, grown);
+            totals = Arrays.copyOf(totals, grown);
+            goalMet = Arrays.copyOf(goalMet, grown);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Epoch day, see EpochDays
+    public int getDay(int index) {
+        return days[index];
+    }
+
+    public int getTotal(int index) {
+        return totals[index];
+    }
+
+    public boolean isGoalMet(int index) {
+        return goalMet[index];
+    }
+
+    // Keyset for the next (older) page; Integer.MAX_VALUE when empty so it starts from the newest day
+    public int getOldestDay() {
+        return size == 0 ? Integer.MAX_VALUE : days[size - 1];
+    }
+}
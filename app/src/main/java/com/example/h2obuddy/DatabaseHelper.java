@@ -1,31 +1,41 @@
 package com.example.h2obuddy;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.SparseArray;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.TimeZone;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
 
     // Database Name and Version
-    private static final String DATABASE_NAME = "WaterReminder.db";
-    private static final int DATABASE_VERSION = 1;
+    static final String DATABASE_NAME = "WaterReminder.db";
+    static final int DATABASE_VERSION = 10;
 
     // Table Names
     private static final String TABLE_USERS = "users";
     private static final String TABLE_WATER_LOGS = "water_logs";
+    private static final String TABLE_DAILY_TOTALS = "daily_totals";
+    private static final String TABLE_GOAL_HISTORY = "goal_history";
+    private static final String TABLE_GOAL_DAYS = "goal_days";
+    private static final String TABLE_INTAKE_JOURNAL = "intake_journal";
+    private static final String TABLE_COMPACTED_DAYS = "compacted_days";
 
     // Common Columns
     private static final String COLUMN_ID = "id";
 
     // Users Table Columns
     private static final String COLUMN_EMAIL = "email";
-    private static final String COLUMN_PASSWORD = "password";
+    private static final String COLUMN_PASSWORD = "password"; // PBKDF2 hash, see PasswordHasher
+    private static final String COLUMN_PASSWORD_SALT = "password_salt";
+    private static final String COLUMN_PASSWORD_ITERATIONS = "password_iterations";
     private static final String COLUMN_NAME = "name";
     private static final String COLUMN_DAILY_GOAL = "daily_goal";
     private static final String COLUMN_REMINDER_INTERVAL = "reminder_interval";
@@ -33,228 +43,1168 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COLUMN_WAKE_UP_MINUTE = "wake_up_minute";
     private static final String COLUMN_BED_TIME_HOUR = "bed_time_hour";
     private static final String COLUMN_BED_TIME_MINUTE = "bed_time_minute";
+    private static final String COLUMN_SESSION_TOKEN = "session_token";
 
     // Water Logs Table Columns
-    private static final String COLUMN_DATE = "date";
+    private static final String COLUMN_USER_ID = "user_id";
+    private static final String COLUMN_DAY = "day"; // epoch day, see EpochDays
     private static final String COLUMN_AMOUNT = "amount";
+    private static final String COLUMN_LOGGED_AT = "logged_at"; // epoch millis; NULL when only the day is known
+
+    // logged_at as passed in and out of the helper and intake stores when it is NULL
+    static final long NO_TIME = Long.MIN_VALUE;
+
+    // Daily Totals Table Columns (maintained by triggers on water_logs, see DatabaseMigrations)
+    private static final String COLUMN_TOTAL = "total";
+    private static final String COLUMN_ENTRY_COUNT = "entry_count";
+
+    // Goal History Table Columns: the goal in effect from from_day until the next row
+    private static final String COLUMN_FROM_DAY = "from_day";
+    private static final String COLUMN_GOAL = "goal";
+
+    // Goal Days Table Columns (bitmap of goal-met days, maintained by triggers on daily_totals)
+    private static final String COLUMN_WORD = "word"; // day >> 6
+    private static final String COLUMN_BITS = "bits"; // bit (day & 63) set when that day met its goal
+
+    // Intake Journal Table Columns (one row, see IntakeJournal)
+    private static final String COLUMN_FOLDED_SEQ = "folded_seq";
+
+    // Compacted Days Table Columns (user_id, day): the row holding the day's compacted total
+    private static final String COLUMN_LOG_ID = "log_id";
+
+    // Resolves an email to users.id inside the same statement, so email-based callers
+    // don't pay for a separate lookup
+    private static final String USER_ID_BY_EMAIL =
+            "(SELECT " + COLUMN_ID + " FROM " + TABLE_USERS + " WHERE " + COLUMN_EMAIL + " = ?)";
+
+    // One drink; bound with bindLog()
+    private static final String INSERT_LOG = "INSERT INTO " + TABLE_WATER_LOGS + " (" + COLUMN_USER_ID + ", "
+            + COLUMN_DAY + ", " + COLUMN_LOGGED_AT + ", " + COLUMN_AMOUNT + ") VALUES (?, ?, ?, ?)";
+
+    // Marks the row just inserted as the compacted total of its (user, day)
+    private static final String MARK_COMPACTED = "INSERT OR REPLACE INTO " + TABLE_COMPACTED_DAYS + " ("
+            + COLUMN_USER_ID + ", " + COLUMN_DAY + ", " + COLUMN_LOG_ID + ") VALUES (?, ?, last_insert_rowid())";
+
+    private static final int HISTORY_DAYS = 7;
+
+    // Connection tuning applied every time the database is opened
+    private static final int CACHE_SIZE_KIB = 2048;
+
+    // Largest file reclaimSpace() converts to incremental auto_vacuum; bounds how long its one
+    // VACUUM can hold the write lock
+    static final long MAX_VACUUM_BYTES = 4L * 1024 * 1024;
+
+    private static DatabaseHelper instance;
+
+    // Sees every named statement this class issues; installed by the query-plan tests
+    interface StatementListener {
+        void onStatement(String name, String sql, String[] args);
+    }
+
+    static volatile StatementListener statementListener;
+
+    // Profiles by user id; invalidated by every write to the users table
+    private final SparseArray<UserProfile> profileCache = new SparseArray<>();
+
+    // Tells screens and caches what each write changed
+    private final InvalidationTracker invalidationTracker = new InvalidationTracker();
+
+    // The default intake store: every drink is its own INSERT
+    private final IntakeStore sqliteStore = new IntakeStore() {
+        @Override
+        public boolean append(int userId, int day, long loggedAt, int amount) {
+            return insertLogRow(userId, day, loggedAt, amount);
+        }
+
+        @Override
+        public int pendingTotal(int userId, int day) {
+            return 0;
+        }
+
+        @Override
+        public int fold() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    // Where single drinks go; an IntakeJournal when the journal backend is enabled
+    private volatile IntakeStore intakeStore = sqliteStore;
+
+    // One helper per process, bound to the application context rather than an activity
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+            // The shared progress cache follows every write to the shared database
+            instance.invalidationTracker.addImmediateObserver(ProgressCache.getInstance());
+        }
+        return instance;
+    }
+
+    public InvalidationTracker getInvalidationTracker() {
+        return invalidationTracker;
+    }
 
     public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    // Package-private so tests can open an isolated database file
+    DatabaseHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        // Lets history reads run while an intake write is in progress
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // WAL only needs fsync at checkpoints to stay durable against app crashes
+        db.execSQL("PRAGMA synchronous = NORMAL");
+        // Negative value is in KiB rather than pages
+        db.execSQL("PRAGMA cache_size = -" + CACHE_SIZE_KIB);
+        db.execSQL("PRAGMA temp_store = MEMORY");
+        // Only takes effect on a brand-new file; existing files are converted by reclaimSpace()
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // Create Users Table
-        String CREATE_USERS_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_USERS + " ("
-                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + COLUMN_EMAIL + " TEXT UNIQUE, "
-                + COLUMN_PASSWORD + " TEXT, "
-                + COLUMN_NAME + " TEXT, "
-                + COLUMN_DAILY_GOAL + " INTEGER DEFAULT 2000, "
-                + COLUMN_REMINDER_INTERVAL + " INTEGER DEFAULT 60, "
-                + COLUMN_WAKE_UP_HOUR + " INTEGER DEFAULT 6, "
-                + COLUMN_WAKE_UP_MINUTE + " INTEGER DEFAULT 0, "
-                + COLUMN_BED_TIME_HOUR + " INTEGER DEFAULT 22, "
-                + COLUMN_BED_TIME_MINUTE + " INTEGER DEFAULT 0)";
-        db.execSQL(CREATE_USERS_TABLE);
-
-        // Create Water Logs Table
-        String CREATE_WATER_LOGS_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_WATER_LOGS + " ("
-                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + COLUMN_DATE + " TEXT, "
-                + COLUMN_AMOUNT + " INTEGER, "
-                + COLUMN_EMAIL + " TEXT, "
-                + "FOREIGN KEY(" + COLUMN_EMAIL + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_EMAIL + "))";
-        db.execSQL(CREATE_WATER_LOGS_TABLE);
+        // Build the original schema, then replay every migration so fresh installs
+        // and upgraded installs share a single code path
+        DatabaseMigrations.createVersion1Schema(db);
+        DatabaseMigrations.migrate(db, 1, DATABASE_VERSION);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_WATER_LOGS);
-        onCreate(db);
+        DatabaseMigrations.migrate(db, oldVersion, newVersion);
+    }
+
+    // Folds a journal's pending drinks while the database is still open. Not synchronized:
+    // a fold takes the store's lock and then this helper's, never the other way round
+    @Override
+    public void close() {
+        IntakeStore store = intakeStore;
+        intakeStore = sqliteStore;
+        store.close();
+        super.close();
+    }
+
+    // Replaces the intake store; null goes back to writing straight to SQLite
+    void setIntakeStore(IntakeStore store) {
+        IntakeStore previous = intakeStore;
+        intakeStore = store == null ? sqliteStore : store;
+        if (previous != intakeStore) {
+            previous.close();
+        }
+    }
+
+    // Moves drinks held by the intake store into water_logs, before a read that needs all of them
+    private void foldPending() {
+        intakeStore.fold();
     }
 
     // ====================== User Management ====================== //
 
+    // Hashes the password, so call from a background thread
     public boolean insertUser(String name, String email, String password, int dailyGoal) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_NAME, name);
-        values.put(COLUMN_EMAIL, email);
-        values.put(COLUMN_PASSWORD, password);
-        values.put(COLUMN_DAILY_GOAL, dailyGoal);
+        int iterations = PasswordHasher.getIterations();
+        String salt = PasswordHasher.newSalt();
+        String hash = PasswordHasher.hash(password, salt, iterations);
 
-        long result = db.insert(TABLE_USERS, null, values);
-        return result != -1;
+        SQLiteDatabase db = this.getWritableDatabase();
+        // A taken email is ignored rather than thrown, and reported as false
+        return update(db, "insertUser", "INSERT OR IGNORE INTO " + TABLE_USERS + " ("
+                        + COLUMN_NAME + ", " + COLUMN_EMAIL + ", " + COLUMN_PASSWORD + ", " + COLUMN_PASSWORD_SALT + ", "
+                        + COLUMN_PASSWORD_ITERATIONS + ", " + COLUMN_DAILY_GOAL + ") VALUES (?, ?, ?, ?, ?, ?)",
+                name, email, hash, salt, String.valueOf(iterations), String.valueOf(dailyGoal)) > 0;
     }
 
+    /**
+     * Looks the user up by email and checks the password against the stored hash, rehashing it
+     * if it was stored with fewer iterations than the current setting, or at another length. Deliberately slow; call
+     * from a background thread. Returns -1 if the email or password is wrong.
+     */
     public int validateUser(String email, String password) {
+        long started = Metrics.start();
         SQLiteDatabase db = this.getReadableDatabase();
         int userId = -1; // Default: user not found
+        int iterations = 0;
+        String stored = null;
 
-        try (Cursor cursor = db.query(TABLE_USERS, new String[]{COLUMN_ID},
-                COLUMN_EMAIL + "=? AND " + COLUMN_PASSWORD + "=?",
-                new String[]{email, password}, null, null, null)) {
+        try (Cursor cursor = query(db, "validateUser",
+                "SELECT " + COLUMN_ID + ", " + COLUMN_PASSWORD + ", " + COLUMN_PASSWORD_SALT + ", "
+                        + COLUMN_PASSWORD_ITERATIONS + " FROM " + TABLE_USERS + " WHERE " + COLUMN_EMAIL + " = ?",
+                email)) {
             if (cursor != null && cursor.moveToFirst()) {
-                userId = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID));
+                iterations = cursor.getInt(3);
+                stored = cursor.getString(1);
+                if (PasswordHasher.verify(password, stored, cursor.getString(2), iterations)) {
+                    userId = cursor.getInt(0);
+                }
             }
         }
+
+        if (userId != -1 && PasswordHasher.needsRehash(iterations, stored)) {
+            setPassword(userId, password);
+        }
+        Metrics.end(Metrics.VALIDATE_USER, started, userId != -1 ? 1 : 0);
         return userId;
     }
 
-    public boolean updateUserSettings(String email, int dailyGoal, int reminderInterval) {
+    // Stores a fresh salt and hash at the current iteration count; call from a background thread
+    public boolean setPassword(int userId, String password) {
+        int iterations = PasswordHasher.getIterations();
+        String salt = PasswordHasher.newSalt();
+        String hash = PasswordHasher.hash(password, salt, iterations);
+
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_DAILY_GOAL, dailyGoal);
-        values.put(COLUMN_REMINDER_INTERVAL, reminderInterval);
+        return update(db, "setPassword", "UPDATE " + TABLE_USERS + " SET "
+                        + COLUMN_PASSWORD + " = ?, " + COLUMN_PASSWORD_SALT + " = ?, " + COLUMN_PASSWORD_ITERATIONS + " = ?"
+                        + " WHERE " + COLUMN_ID + " = ?",
+                hash, salt, String.valueOf(iterations), String.valueOf(userId)) > 0;
+    }
 
-        int rows = db.update(TABLE_USERS, values, COLUMN_EMAIL + "=?", new String[]{email});
+    public boolean updateUserSettings(String email, int dailyGoal, int reminderInterval) {
+        boolean updated = updateUserSettings("updateUserSettingsByEmail", COLUMN_EMAIL, email, dailyGoal, reminderInterval);
+        invalidateProfiles();
+        if (updated) {
+            invalidationTracker.userChanged(InvalidationTracker.ALL_USERS);
+        }
+        return updated;
+    }
+
+    public boolean updateUserSettings(int userId, int dailyGoal, int reminderInterval) {
+        boolean updated = updateUserSettings("updateUserSettings", COLUMN_ID, String.valueOf(userId), dailyGoal, reminderInterval);
+        invalidateProfile(userId);
+        if (updated) {
+            invalidationTracker.userChanged(userId);
+        }
+        return updated;
+    }
+
+    private boolean updateUserSettings(String name, String keyColumn, String key, int dailyGoal, int reminderInterval) {
+        long started = Metrics.start();
+        SQLiteDatabase db = this.getWritableDatabase();
+        int rows;
+        db.beginTransaction();
+        try {
+            rows = update(db, name, "UPDATE " + TABLE_USERS + " SET "
+                            + COLUMN_DAILY_GOAL + " = ?, " + COLUMN_REMINDER_INTERVAL + " = ?"
+                            + " WHERE " + keyColumn + " = ?",
+                    String.valueOf(dailyGoal), String.valueOf(reminderInterval), key);
+            if (rows > 0) {
+                // Earlier days keep the goal they were logged against
+                recordGoal(db, COLUMN_ID.equals(keyColumn), key, dailyGoal, EpochDays.today());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Metrics.end(Metrics.UPDATE_SETTINGS, started, rows);
         return rows > 0;
     }
 
+    /**
+     * Makes {@code dailyGoal} the goal from {@code fromDay} on, without touching users.daily_goal.
+     * Settings changes do this for today; tests use it to build goal histories.
+     */
+    void setDailyGoalFrom(int userId, int dailyGoal, int fromDay) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            recordGoal(db, true, String.valueOf(userId), dailyGoal, fromDay);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        invalidationTracker.userChanged(userId);
+    }
+
+    // Records the goal change, then re-evaluates the goal bits of days already logged from
+    // fromDay on; the no-op total update makes the daily_totals trigger recompute each bit
+    private void recordGoal(SQLiteDatabase db, boolean byId, String key, int dailyGoal, int fromDay) {
+        String user = byId ? "?" : USER_ID_BY_EMAIL;
+        String day = String.valueOf(fromDay);
+        update(db, byId ? "recordGoal" : "recordGoalByEmail", "INSERT OR REPLACE INTO " + TABLE_GOAL_HISTORY + " ("
+                        + COLUMN_USER_ID + ", " + COLUMN_FROM_DAY + ", " + COLUMN_GOAL + ") VALUES (" + user + ", ?, ?)",
+                key, day, String.valueOf(dailyGoal));
+        update(db, byId ? "reevaluateGoalDays" : "reevaluateGoalDaysByEmail", "UPDATE " + TABLE_DAILY_TOTALS
+                        + " SET " + COLUMN_TOTAL + " = " + COLUMN_TOTAL
+                        + " WHERE " + COLUMN_USER_ID + " = " + user + " AND " + COLUMN_DAY + " >= ?",
+                key, day);
+    }
+
     public String getUserEmailById(int userId) {
+        UserProfile profile = getUserProfile(userId);
+        return profile != null ? profile.email : null;
+    }
+
+    // All user columns in one query, served from memory after the first read
+    public UserProfile getUserProfile(int userId) {
+        synchronized (profileCache) {
+            UserProfile cached = profileCache.get(userId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long started = Metrics.start();
         SQLiteDatabase db = this.getReadableDatabase();
-        String email = null;
+        UserProfile profile = null;
 
-        try (Cursor cursor = db.query(TABLE_USERS, new String[]{COLUMN_EMAIL},
-                COLUMN_ID + "=?", new String[]{String.valueOf(userId)},
-                null, null, null)) {
+        try (Cursor cursor = query(db, "getUserProfile", "SELECT " + COLUMN_ID + ", " + COLUMN_EMAIL + ", "
+                        + COLUMN_NAME + ", " + COLUMN_DAILY_GOAL + ", " + COLUMN_REMINDER_INTERVAL + ", "
+                        + COLUMN_WAKE_UP_HOUR + ", " + COLUMN_WAKE_UP_MINUTE + ", "
+                        + COLUMN_BED_TIME_HOUR + ", " + COLUMN_BED_TIME_MINUTE
+                        + " FROM " + TABLE_USERS + " WHERE " + COLUMN_ID + " = ?",
+                String.valueOf(userId))) {
             if (cursor != null && cursor.moveToFirst()) {
-                email = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EMAIL));
+                profile = new UserProfile(cursor.getInt(0), cursor.getString(1), cursor.getString(2),
+                        cursor.getInt(3), cursor.getInt(4), cursor.getInt(5), cursor.getInt(6),
+                        cursor.getInt(7), cursor.getInt(8));
+            }
+        }
+        Metrics.end(Metrics.GET_USER_PROFILE, started, profile != null ? 1 : 0);
+
+        if (profile != null) {
+            synchronized (profileCache) {
+                profileCache.put(userId, profile);
             }
         }
-        return email;
+        return profile;
+    }
+
+    private void invalidateProfile(int userId) {
+        synchronized (profileCache) {
+            profileCache.remove(userId);
+        }
+    }
+
+    // Used by the email-keyed writes, which don't know the id
+    private void invalidateProfiles() {
+        synchronized (profileCache) {
+            profileCache.clear();
+        }
+    }
+
+    public int getUserIdByEmail(String email) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        int userId = -1;
+
+        try (Cursor cursor = query(db, "getUserIdByEmail",
+                "SELECT " + COLUMN_ID + " FROM " + TABLE_USERS + " WHERE " + COLUMN_EMAIL + " = ?",
+                email)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                userId = cursor.getInt(0);
+            }
+        }
+        return userId;
+    }
+
+    // ====================== Sessions ====================== //
+
+    // Replaces any earlier session for the user, signing out other installs restored from a backup
+    public boolean startSession(int userId, String token) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        return update(db, "startSession", "UPDATE " + TABLE_USERS + " SET " + COLUMN_SESSION_TOKEN + " = ?"
+                        + " WHERE " + COLUMN_ID + " = ?",
+                token, String.valueOf(userId)) > 0;
+    }
+
+    public boolean isSessionValid(int userId, String token) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = query(db, "validateSession", "SELECT 1 FROM " + TABLE_USERS
+                        + " WHERE " + COLUMN_ID + " = ? AND " + COLUMN_SESSION_TOKEN + " = ?",
+                String.valueOf(userId), token)) {
+            return cursor != null && cursor.moveToFirst();
+        }
+    }
+
+    public boolean endSession(int userId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        return update(db, "endSession", "UPDATE " + TABLE_USERS + " SET " + COLUMN_SESSION_TOKEN + " = NULL"
+                        + " WHERE " + COLUMN_ID + " = ?",
+                String.valueOf(userId)) > 0;
     }
 
     // ====================== Water Logs Management ====================== //
 
+    // Legacy entry point: date is "yyyy-MM-dd"
     public boolean insertWaterLog(String email, String date, int amount) {
+        int userId = getUserIdByEmail(email);
+        return userId != -1 && insertWaterLog(userId, EpochDays.fromDate(date), amount);
+    }
+
+    // A drink at a known time, filed under the local day of its timestamp
+    public boolean insertWaterLog(IntakeEvent event) {
+        return insertWaterLog(event.userId, EpochDays.fromMillis(event.timestamp), event.timestamp, event.amount);
+    }
+
+    // A drink for which only the day is known
+    public boolean insertWaterLog(int userId, int day, int amount) {
+        return insertWaterLog(userId, day, NO_TIME, amount);
+    }
+
+    // Single drinks go through the intake store, which may hold them back from SQLite for a while.
+    // Published under the store's lock, so a read of the day's total either sees the drink and
+    // comes after its delta, or sees neither (ProgressCache relies on this)
+    private boolean insertWaterLog(int userId, int day, long loggedAt, int amount) {
+        IntakeStore store = intakeStore;
+        synchronized (store) {
+            long started = Metrics.start();
+            boolean inserted = store.append(userId, day, loggedAt, amount);
+            Metrics.end(Metrics.INSERT_WATER_LOG, started, inserted ? 1 : 0);
+            if (inserted) {
+                invalidationTracker.intakeChanged(userId, day, amount);
+            }
+            return inserted;
+        }
+    }
+
+    private boolean insertLogRow(int userId, int day, long loggedAt, int amount) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_EMAIL, email);
-        values.put(COLUMN_DATE, date);
-        values.put(COLUMN_AMOUNT, amount);
+        SQLiteStatement statement = compile(db, "insertWaterLog", INSERT_LOG);
+        try {
+            bindLog(statement, userId, day, loggedAt, amount);
+            return statement.executeInsert() != -1;
+        } catch (SQLiteException e) {
+            return false;
+        } finally {
+            statement.close();
+        }
+    }
 
-        long result = db.insert(TABLE_WATER_LOGS, null, values);
-        return result != -1;
+    // loggedAt is stored as NULL when it is NO_TIME
+    private static void bindLog(SQLiteStatement statement, int userId, int day, long loggedAt, int amount) {
+        statement.bindLong(1, userId);
+        statement.bindLong(2, day);
+        if (loggedAt == NO_TIME) {
+            statement.bindNull(3);
+        } else {
+            statement.bindLong(3, loggedAt);
+        }
+        statement.bindLong(4, amount);
+    }
+
+    /**
+     * Writes all {@code events} in one transaction through a single compiled statement,
+     * straight to SQLite whatever the intake store. Returns one outcome per event:
+     * {@code false} for events that were rejected (non-positive amount or a failed insert);
+     * the rest of the batch is still committed.
+     */
+    public boolean[] insertWaterLogs(List<IntakeEvent> events) {
+        IntakeStore store = intakeStore;
+        // Committed and published under the store's lock, like single drinks
+        synchronized (store) {
+            long started = Metrics.start();
+            boolean[] inserted = new boolean[events.size()];
+            int[] days = new int[inserted.length];
+            SQLiteDatabase db = this.getWritableDatabase();
+            SQLiteStatement statement = compile(db, "insertWaterLogs", INSERT_LOG);
+
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < inserted.length; i++) {
+                    IntakeEvent event = events.get(i);
+                    if (event.amount <= 0) {
+                        continue;
+                    }
+                    days[i] = EpochDays.fromMillis(event.timestamp);
+                    bindLog(statement, event.userId, days[i], event.timestamp, event.amount);
+                    try {
+                        inserted[i] = statement.executeInsert() != -1;
+                    } catch (SQLiteException e) {
+                        inserted[i] = false;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                statement.close();
+            }
+            Metrics.end(Metrics.INSERT_WATER_LOGS, started, inserted.length);
+
+            // Only once committed; the tracker coalesces these per user and day
+            for (int i = 0; i < inserted.length; i++) {
+                if (inserted[i]) {
+                    IntakeEvent event = events.get(i);
+                    invalidationTracker.intakeChanged(event.userId, days[i], event.amount);
+                }
+            }
+            return inserted;
+        }
     }
 
     public int getDailyWaterIntake(String email, String date) {
+        foldPending(); // pending drinks are indexed by user id, not email
+        return getDailyWaterIntake("getDailyWaterIntakeByEmail", USER_ID_BY_EMAIL, email, EpochDays.fromDate(date));
+    }
+
+    public int getDailyWaterIntake(int userId, int day) {
+        IntakeStore store = intakeStore;
+        // No fold can move rows between the two reads, counting them twice or not at all, and
+        // no drink can commit without its delta being published
+        synchronized (store) {
+            return getDailyWaterIntake("getDailyWaterIntake", "?", String.valueOf(userId), day)
+                    + store.pendingTotal(userId, day);
+        }
+    }
+
+    private int getDailyWaterIntake(String name, String userExpr, String userArg, int day) {
+        long started = Metrics.start();
         SQLiteDatabase db = this.getReadableDatabase();
         int total = 0;
 
-        try (Cursor cursor = db.rawQuery("SELECT SUM(" + COLUMN_AMOUNT + ") FROM " + TABLE_WATER_LOGS +
-                " WHERE " + COLUMN_EMAIL + "=? AND " + COLUMN_DATE + "=?", new String[]{email, date})) {
+        try (Cursor cursor = query(db, name, "SELECT " + COLUMN_TOTAL + " FROM " + TABLE_DAILY_TOTALS +
+                " WHERE " + COLUMN_USER_ID + " = " + userExpr + " AND " + COLUMN_DAY + " = ?",
+                userArg, String.valueOf(day))) {
             if (cursor != null && cursor.moveToFirst()) {
                 total = cursor.getInt(0);
             }
         }
+        Metrics.end(Metrics.DAILY_INTAKE, started, 1);
         return total;
     }
 
     public List<String> getWeeklyHistory(String email) {
-        List<String> history = new ArrayList<>();
+        return queryHistory("historyByEmail", USER_ID_BY_EMAIL, email);
+    }
+
+    public List<String> getWeeklyHistory(int userId) {
+        return queryHistory("history", "?", String.valueOf(userId));
+    }
+
+    // Columns: day (epoch day), total
+    public Cursor getWeeklyWaterIntake(String email) {
+        return weeklyIntakeCursor("historyByEmail", USER_ID_BY_EMAIL, email);
+    }
+
+    public Cursor getWeeklyWaterIntake(int userId) {
+        return weeklyIntakeCursor("history", "?", String.valueOf(userId));
+    }
+
+    private Cursor weeklyIntakeCursor(String name, String userExpr, String userArg) {
+        foldPending();
         SQLiteDatabase db = this.getReadableDatabase();
+        return query(db, name, historySql(userExpr), userArg);
+    }
 
-        try (Cursor cursor = db.rawQuery(
-                "SELECT " + COLUMN_DATE + ", SUM(" + COLUMN_AMOUNT + ") AS total " +
-                        "FROM " + TABLE_WATER_LOGS +
-                        " WHERE " + COLUMN_EMAIL + " = ? " +
-                        "GROUP BY " + COLUMN_DATE +
-                        " ORDER BY " + COLUMN_DATE + " DESC LIMIT 7",
-                new String[]{email})) {
+    public int getDailyGoal(String email) {
+        return getUserInt("getDailyGoalByEmail", COLUMN_DAILY_GOAL, email, 2000);
+    }
 
-            while (cursor.moveToNext()) {
-                String date = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DATE));
-                int total = cursor.getInt(cursor.getColumnIndexOrThrow("total"));
-                history.add(date + ": " + total + " ml");
+    public int getDailyGoal(int userId) {
+        UserProfile profile = getUserProfile(userId);
+        return profile != null ? profile.dailyGoal : 2000;
+    }
+
+    private int getUserInt(String name, String column, String email, int defaultValue) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        int value = defaultValue;
+
+        try (Cursor cursor = query(db, name,
+                "SELECT " + column + " FROM " + TABLE_USERS + " WHERE " + COLUMN_EMAIL + " = ?",
+                email)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                value = cursor.getInt(0);
             }
         }
-        return history;
+        return value;
     }
 
-    public Cursor getWeeklyWaterIntake(String email) {
+    // ====================== Analytics ====================== //
+
+    /**
+     * Streams every log row of {@code userId} from {@code firstDay} to {@code lastDay}
+     * (inclusive) through one {@link IntakeAnalytics}. The scan reads only the
+     * (user_id, day, logged_at, amount) index, in index order, one cursor window at a time.
+     */
+    public IntakeAnalytics getIntakeAnalytics(int userId, int firstDay, int lastDay) {
+        foldPending();
         SQLiteDatabase db = this.getReadableDatabase();
-        return db.rawQuery(
-                "SELECT " + COLUMN_DATE + ", SUM(" + COLUMN_AMOUNT + ") AS total " +
-                        "FROM " + TABLE_WATER_LOGS +
-                        " WHERE " + COLUMN_EMAIL + "=? " +
-                        "GROUP BY " + COLUMN_DATE +
-                        " ORDER BY " + COLUMN_DATE + " DESC LIMIT 7",
-                new String[]{email});
+        IntakeAnalytics analytics = new IntakeAnalytics(firstDay, lastDay, TimeZone.getDefault());
+
+        try (Cursor cursor = query(db, "intakeAnalytics", "SELECT " + COLUMN_DAY + ", " + COLUMN_LOGGED_AT + ", "
+                        + COLUMN_AMOUNT + " FROM " + TABLE_WATER_LOGS
+                        + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_DAY + " BETWEEN ? AND ?",
+                String.valueOf(userId), String.valueOf(firstDay), String.valueOf(lastDay))) {
+            while (cursor.moveToNext()) {
+                boolean timed = !cursor.isNull(1);
+                analytics.add(cursor.getInt(0), timed ? cursor.getLong(1) : 0, timed, cursor.getInt(2));
+            }
+        }
+        analytics.finish();
+        return analytics;
     }
 
-    public int getDailyGoal(String email) {
+    // Intake of one day logged from fromMillis (inclusive) to toMillis (exclusive). Rows that only
+    // know their day are left out. Reminders use it to measure pace across midnight
+    public int getTimedIntake(int userId, int day, long fromMillis, long toMillis) {
+        foldPending();
         SQLiteDatabase db = this.getReadableDatabase();
-        int dailyGoal = 2000; // Default goal
+        try (Cursor cursor = query(db, "timedIntake", "SELECT IFNULL(SUM(" + COLUMN_AMOUNT + "), 0) FROM "
+                        + TABLE_WATER_LOGS + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_DAY + " = ?"
+                        + " AND " + COLUMN_LOGGED_AT + " >= ? AND " + COLUMN_LOGGED_AT + " < ?",
+                String.valueOf(userId), String.valueOf(day), String.valueOf(fromMillis), String.valueOf(toMillis))) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
 
-        try (Cursor cursor = db.query(TABLE_USERS, new String[]{COLUMN_DAILY_GOAL},
-                COLUMN_EMAIL + "=?", new String[]{email}, null, null, null)) {
-            if (cursor != null && cursor.moveToFirst()) {
-                dailyGoal = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_DAILY_GOAL));
+    // Every goal-met day of the user, as one bitmap; a few dozen rows for years of history
+    public GoalBitmap getGoalBitmap(int userId) {
+        foldPending();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = query(db, "getGoalBitmap", "SELECT " + COLUMN_WORD + ", " + COLUMN_BITS
+                        + " FROM " + TABLE_GOAL_DAYS + " WHERE " + COLUMN_USER_ID + " = ?"
+                        + " ORDER BY " + COLUMN_WORD,
+                String.valueOf(userId))) {
+            if (!cursor.moveToLast()) {
+                return new GoalBitmap(0, new long[0]);
             }
+            int lastWord = cursor.getInt(0);
+            cursor.moveToFirst();
+            int firstWord = cursor.getInt(0);
+            long[] words = new long[lastWord - firstWord + 1];
+            do {
+                words[cursor.getInt(0) - firstWord] = cursor.getLong(1);
+            } while (cursor.moveToNext());
+            return new GoalBitmap(firstWord, words);
         }
-        return dailyGoal;
     }
 
     // ====================== Notification Settings ====================== //
 
     public boolean saveNotificationTimes(String email, int wakeUpHour, int wakeUpMinute, int bedTimeHour, int bedTimeMinute) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_WAKE_UP_HOUR, wakeUpHour);
-        values.put(COLUMN_WAKE_UP_MINUTE, wakeUpMinute);
-        values.put(COLUMN_BED_TIME_HOUR, bedTimeHour);
-        values.put(COLUMN_BED_TIME_MINUTE, bedTimeMinute);
+        boolean updated = saveNotificationTimes("saveNotificationTimesByEmail", COLUMN_EMAIL, email, wakeUpHour, wakeUpMinute, bedTimeHour, bedTimeMinute);
+        invalidateProfiles();
+        if (updated) {
+            invalidationTracker.userChanged(InvalidationTracker.ALL_USERS);
+        }
+        return updated;
+    }
+
+    public boolean saveNotificationTimes(int userId, int wakeUpHour, int wakeUpMinute, int bedTimeHour, int bedTimeMinute) {
+        boolean updated = saveNotificationTimes("saveNotificationTimes", COLUMN_ID, String.valueOf(userId), wakeUpHour, wakeUpMinute, bedTimeHour, bedTimeMinute);
+        invalidateProfile(userId);
+        if (updated) {
+            invalidationTracker.userChanged(userId);
+        }
+        return updated;
+    }
 
-        int rows = db.update(TABLE_USERS, values, COLUMN_EMAIL + "=?", new String[]{email});
+    private boolean saveNotificationTimes(String name, String keyColumn, String key, int wakeUpHour, int wakeUpMinute, int bedTimeHour, int bedTimeMinute) {
+        long started = Metrics.start();
+        SQLiteDatabase db = this.getWritableDatabase();
+        int rows = update(db, name, "UPDATE " + TABLE_USERS + " SET "
+                        + COLUMN_WAKE_UP_HOUR + " = ?, " + COLUMN_WAKE_UP_MINUTE + " = ?, "
+                        + COLUMN_BED_TIME_HOUR + " = ?, " + COLUMN_BED_TIME_MINUTE + " = ?"
+                        + " WHERE " + keyColumn + " = ?",
+                String.valueOf(wakeUpHour), String.valueOf(wakeUpMinute),
+                String.valueOf(bedTimeHour), String.valueOf(bedTimeMinute), key);
+        Metrics.end(Metrics.SAVE_NOTIFICATION_TIMES, started, rows);
         return rows > 0;
     }
 
     public int getReminderInterval(String email) {
+        return getUserInt("getReminderIntervalByEmail", COLUMN_REMINDER_INTERVAL, email, 60);
+    }
+
+    public int getReminderInterval(int userId) {
+        UserProfile profile = getUserProfile(userId);
+        return profile != null ? profile.reminderInterval : 60;
+    }
+
+    public List<String> getDailyHistory(String email) {
+        return queryHistory("historyByEmail", USER_ID_BY_EMAIL, email);
+    }
+
+    public List<String> getDailyHistory(int userId) {
+        return queryHistory("history", "?", String.valueOf(userId));
+    }
+
+    // Last 7 logged days, newest first, with goal achievement computed in the query
+    public DailyHistory getDailyTotals(int userId) {
+        return getDailyTotalsBefore(userId, Integer.MAX_VALUE, HISTORY_DAYS);
+    }
+
+    /**
+     * One page of history: up to {@code pageSize} logged days strictly older than
+     * {@code beforeDay}, newest first. Pass the previous page's oldest day to continue; the
+     * keyset seek costs the same on page 1 and page 100. Each day's goal flag is its bit in
+     * the goal bitmap, so it reflects the goal in effect on that day.
+     */
+    public DailyHistory getDailyTotalsBefore(int userId, int beforeDay, int pageSize) {
+        foldPending();
+        long started = Metrics.start();
+        String user = String.valueOf(userId);
         SQLiteDatabase db = this.getReadableDatabase();
-        int interval = 60; // Default reminder interval
+        DailyHistory history = new DailyHistory(pageSize);
 
-        try (Cursor cursor = db.query(TABLE_USERS, new String[]{COLUMN_REMINDER_INTERVAL},
-                COLUMN_EMAIL + "=?", new String[]{email}, null, null, null)) {
-            if (cursor != null && cursor.moveToFirst()) {
-                interval = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_REMINDER_INTERVAL));
+        try (Cursor cursor = query(db, "getDailyTotalsBefore", "SELECT " + COLUMN_DAY + ", " + COLUMN_TOTAL + ", "
+                        + "IFNULL((SELECT " + COLUMN_BITS + " FROM " + TABLE_GOAL_DAYS
+                        + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_WORD + " = " + COLUMN_DAY + " >> 6)"
+                        + " >> (" + COLUMN_DAY + " & 63) & 1, 0)"
+                        + " FROM " + TABLE_DAILY_TOTALS
+                        + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_DAY + " < ?"
+                        + " ORDER BY " + COLUMN_DAY + " DESC LIMIT " + pageSize,
+                user, user, String.valueOf(beforeDay))) {
+            while (cursor.moveToNext()) {
+                history.add(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2) != 0);
             }
         }
-        return interval;
+        Metrics.end(Metrics.HISTORY, started, history.size());
+        return history;
     }
 
-    // Add this method to the DatabaseHelper class
-    public List<String> getDailyHistory(String email) {
+    // Last 7 logged days, newest first, as "yyyy-MM-dd: N ml"
+    private List<String> queryHistory(String name, String userExpr, String userArg) {
+        foldPending();
+        long started = Metrics.start();
         List<String> history = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
 
-        try {
-            // Query to fetch the last 7 days' water intake
-            String query = "SELECT " + COLUMN_DATE + ", SUM(" + COLUMN_AMOUNT + ") AS total " +
-                    "FROM " + TABLE_WATER_LOGS + " " +
-                    "WHERE " + COLUMN_EMAIL + " = ? " +
-                    "GROUP BY " + COLUMN_DATE + " " +
-                    "ORDER BY " + COLUMN_DATE + " DESC " +
-                    "LIMIT 7";
-
-            cursor = db.rawQuery(query, new String[]{email});
-
-            // Process query results
-            while (cursor != null && cursor.moveToNext()) {
-                String date = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DATE));
-                int total = cursor.getInt(cursor.getColumnIndexOrThrow("total"));
+        try (Cursor cursor = query(db, name, historySql(userExpr), userArg)) {
+            while (cursor.moveToNext()) {
+                String date = EpochDays.toDate(cursor.getInt(0));
+                int total = cursor.getInt(1);
                 history.add(date + ": " + total + " ml");
             }
+        }
+        Metrics.end(Metrics.HISTORY, started, history.size());
+        return history;
+    }
+
+    private static String historySql(String userExpr) {
+        return "SELECT " + COLUMN_DAY + ", " + COLUMN_TOTAL +
+                " FROM " + TABLE_DAILY_TOTALS +
+                " WHERE " + COLUMN_USER_ID + " = " + userExpr +
+                " ORDER BY " + COLUMN_DAY + " DESC LIMIT " + HISTORY_DAYS;
+    }
+
+    // ====================== Rollup Maintenance ====================== //
+
+    // Aggregates raw logs the slow way; daily_totals must always match this
+    private static final String RAW_DAILY_TOTALS_SQL =
+            "SELECT " + COLUMN_USER_ID + ", " + COLUMN_DAY + ", SUM(" + COLUMN_AMOUNT + ") AS " + COLUMN_TOTAL +
+                    ", COUNT(*) AS " + COLUMN_ENTRY_COUNT +
+                    " FROM " + TABLE_WATER_LOGS + " GROUP BY " + COLUMN_USER_ID + ", " + COLUMN_DAY;
+
+    /**
+     * Compares daily_totals with a fresh aggregate of water_logs and returns the number of
+     * (user, day) rows that disagree or are missing on either side. When {@code repair} is set
+     * and drift was found, the rollup is rebuilt from the raw logs.
+     */
+    public int checkDailyTotals(boolean repair) {
+        foldPending();
+        SQLiteDatabase db = this.getWritableDatabase();
+        int drift;
+
+        db.beginTransaction();
+        try {
+            String rolled = TABLE_DAILY_TOTALS;
+            String raw = "(" + RAW_DAILY_TOTALS_SQL + ")";
+            String join = " ON r." + COLUMN_USER_ID + " = t." + COLUMN_USER_ID + " AND r." + COLUMN_DAY + " = t." + COLUMN_DAY;
+            try (Cursor cursor = query(db, "checkDailyTotals", "SELECT "
+                    + "(SELECT COUNT(*) FROM " + raw + " r LEFT JOIN " + rolled + " t" + join
+                    + " WHERE t." + COLUMN_TOTAL + " IS NOT r." + COLUMN_TOTAL
+                    + " OR t." + COLUMN_ENTRY_COUNT + " IS NOT r." + COLUMN_ENTRY_COUNT + ") + "
+                    + "(SELECT COUNT(*) FROM " + rolled + " t LEFT JOIN " + raw + " r" + join
+                    + " WHERE r." + COLUMN_USER_ID + " IS NULL)")) {
+                cursor.moveToFirst();
+                drift = cursor.getInt(0);
+            }
+
+            if (repair && drift > 0) {
+                update(db, "clearDailyTotals", "DELETE FROM " + TABLE_DAILY_TOTALS);
+                update(db, "rebuildDailyTotals", "INSERT INTO " + TABLE_DAILY_TOTALS + " (" + COLUMN_USER_ID + ", "
+                        + COLUMN_DAY + ", " + COLUMN_TOTAL + ", " + COLUMN_ENTRY_COUNT + ") " + RAW_DAILY_TOTALS_SQL);
+            }
+            db.setTransactionSuccessful();
         } finally {
-            if (cursor != null) {
-                cursor.close();
+            db.endTransaction();
+        }
+        return drift;
+    }
+
+    // ====================== Compaction & Retention ====================== //
+
+    /**
+     * Where the next compaction or retention chunk of one run picks up, so the run reads each
+     * candidate once instead of searching again from the start of the table for every chunk.
+     * Rows written behind it during the run wait for the next run.
+     */
+    public static final class MaintenanceCursor {
+        int userId; // last (user, day) compacted; users.id starts at 1
+        int day;
+        long logId; // last log id deleted
+    }
+
+    // Compacts from the start of the table; see the overload taking a cursor
+    public int compactLogsBefore(int beforeDay, int maxDays) {
+        return compactLogsBefore(beforeDay, maxDays, new MaintenanceCursor());
+    }
+
+    /**
+     * Collapses up to {@code maxDays} (user, day) groups older than {@code beforeDay} that hold
+     * more than one entry into a single row with the same total. The compacted row has no time
+     * of day, so hour-of-day analytics only reach back as far as the compaction horizon, and is
+     * recorded in compacted_days so imports and exports can tell it from an untimed drink. Each
+     * call is one short transaction and resumes after the last day {@code cursor} saw; returns
+     * the number of days compacted, 0 once nothing is left to do.
+     */
+    public int compactLogsBefore(int beforeDay, int maxDays, MaintenanceCursor cursor) {
+        foldPending();
+        SQLiteDatabase db = this.getWritableDatabase();
+        int[] users = new int[maxDays];
+        int[] days = new int[maxDays];
+        int count = 0;
+
+        // No row values before SQLite 3.15, so "(user_id, day) > (?1, ?2)" is spelled out in a
+        // form that is still a primary key range
+        try (Cursor candidates = query(db, "compactionCandidates",
+                "SELECT " + COLUMN_USER_ID + ", " + COLUMN_DAY + " FROM " + TABLE_DAILY_TOTALS
+                        + " WHERE " + COLUMN_USER_ID + " >= ?1 AND (" + COLUMN_USER_ID + " > ?1 OR " + COLUMN_DAY + " > ?2)"
+                        + " AND " + COLUMN_DAY + " < ?3 AND " + COLUMN_ENTRY_COUNT + " > 1"
+                        + " ORDER BY " + COLUMN_USER_ID + ", " + COLUMN_DAY + " LIMIT " + maxDays,
+                String.valueOf(cursor.userId), String.valueOf(cursor.day), String.valueOf(beforeDay))) {
+            while (candidates.moveToNext()) {
+                users[count] = candidates.getInt(0);
+                days[count] = candidates.getInt(1);
+                count++;
             }
         }
+        if (count > 0) {
+            cursor.userId = users[count - 1];
+            cursor.day = days[count - 1];
+        }
 
-        return history;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                String user = String.valueOf(users[i]);
+                String day = String.valueOf(days[i]);
+                long total = 0;
+                try (Cursor sum = query(db, "sumLogsForDay",
+                        "SELECT SUM(" + COLUMN_AMOUNT + ") FROM " + TABLE_WATER_LOGS
+                                + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_DAY + " = ?",
+                        user, day)) {
+                    if (sum.moveToFirst()) {
+                        total = sum.getLong(0);
+                    }
+                }
+                update(db, "deleteLogsForDay", "DELETE FROM " + TABLE_WATER_LOGS
+                        + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_DAY + " = ?", user, day);
+                update(db, "insertCompactedLog", "INSERT INTO " + TABLE_WATER_LOGS + " ("
+                                + COLUMN_USER_ID + ", " + COLUMN_DAY + ", " + COLUMN_AMOUNT + ") VALUES (?, ?, ?)",
+                        user, day, String.valueOf(total));
+                update(db, "markDayCompacted", MARK_COMPACTED, user, day);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // Totals are unchanged but the rows behind them aren't
+        publishUsers(users, count);
+        return count;
+    }
+
+    // Deletes from the start of the table; see the overload taking a cursor
+    public int deleteLogsBefore(int beforeDay, int maxRows) {
+        return deleteLogsBefore(beforeDay, maxRows, new MaintenanceCursor());
+    }
+
+    // Deletes up to maxRows log entries older than beforeDay, resuming after the last id cursor
+    // saw, and once they are all gone the compaction marks of those days; returns how many log
+    // entries were deleted
+    public int deleteLogsBefore(int beforeDay, int maxRows, MaintenanceCursor cursor) {
+        foldPending();
+        SQLiteDatabase db = this.getWritableDatabase();
+        String after = String.valueOf(cursor.logId);
+        String before = String.valueOf(beforeDay);
+        int[] users = new int[maxRows];
+        int userCount = 0;
+        int deleted;
+
+        db.beginTransaction();
+        try {
+            // Listed and deleted in the same transaction, so both see the same rows
+            try (Cursor rows = query(db, "expiredLogs", "SELECT " + COLUMN_ID + ", " + COLUMN_USER_ID + " FROM "
+                            + TABLE_WATER_LOGS + " WHERE " + COLUMN_ID + " > ? AND " + COLUMN_DAY + " < ?"
+                            + " ORDER BY " + COLUMN_ID + " LIMIT " + maxRows,
+                    after, before)) {
+                while (rows.moveToNext()) {
+                    cursor.logId = rows.getLong(0);
+                    users[userCount++] = rows.getInt(1);
+                }
+            }
+            deleted = update(db, "deleteExpiredLogs", "DELETE FROM " + TABLE_WATER_LOGS + " WHERE "
+                    + COLUMN_ID + " > ? AND " + COLUMN_ID + " <= ? AND " + COLUMN_DAY + " < ?",
+                    after, String.valueOf(cursor.logId), before);
+            if (deleted < maxRows) {
+                update(db, "deleteExpiredCompactedDays", "DELETE FROM " + TABLE_COMPACTED_DAYS
+                        + " WHERE " + COLUMN_DAY + " < ?", before);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        publishUsers(users, userCount);
+        return deleted;
+    }
+
+    // One userChanged per distinct user among the first count entries, after a maintenance
+    // chunk commits, so caches and open screens drop rows it removed
+    private void publishUsers(int[] users, int count) {
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            boolean seen = false;
+            for (int j = 0; j < distinct && !seen; j++) {
+                seen = users[j] == users[i];
+            }
+            if (!seen) {
+                users[distinct++] = users[i];
+                invalidationTracker.userChanged(users[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns up to {@code maxPages} free pages to the file system and truncates the WAL.
+     * A database created before auto_vacuum was enabled is converted with one full VACUUM,
+     * which blocks every write, the tap path included, until it has rewritten the file. So
+     * only files up to {@link #MAX_VACUUM_BYTES} are converted; larger ones keep their free
+     * pages for reuse.
+     */
+    public void reclaimSpace(int maxPages) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        if (pragmaLong(db, "PRAGMA auto_vacuum") != 2) {
+            if (pragmaLong(db, "PRAGMA page_count") * pragmaLong(db, "PRAGMA page_size") <= MAX_VACUUM_BYTES) {
+                db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                db.execSQL("VACUUM");
+            }
+        } else {
+            pragmaLong(db, "PRAGMA incremental_vacuum(" + maxPages + ")");
+        }
+        pragmaLong(db, "PRAGMA wal_checkpoint(TRUNCATE)");
+    }
+
+    // Runs a PRAGMA to completion and returns the first column of its first row, or -1
+    private static long pragmaLong(SQLiteDatabase db, String pragma) {
+        long value = -1;
+        try (Cursor cursor = db.rawQuery(pragma, null)) {
+            if (cursor.moveToFirst()) {
+                value = cursor.getLong(0);
+            }
+            while (cursor.moveToNext()) {
+                // incremental_vacuum frees one page per step
+            }
+        }
+        return value;
+    }
+
+    // ====================== Export & Import ====================== //
+
+    // Receives log rows in (day, logged_at, amount) order; loggedAt is NO_TIME when unknown, and
+    // compacted is set on the row that holds a compacted day's total
+    interface LogVisitor {
+        void onLog(int day, long loggedAt, int amount, boolean compacted) throws IOException;
     }
 
+    // First and last day with any intake for the user, or null when there is none
+    public int[] getLogDayRange(int userId) {
+        foldPending();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = query(db, "logDayRange", "SELECT MIN(" + COLUMN_DAY + "), MAX(" + COLUMN_DAY + ")"
+                        + " FROM " + TABLE_DAILY_TOTALS + " WHERE " + COLUMN_USER_ID + " = ?",
+                String.valueOf(userId))) {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                return null;
+            }
+            return new int[]{cursor.getInt(0), cursor.getInt(1)};
+        }
+    }
+
+    /**
+     * Passes every log row of {@code userId} from {@code fromDay} (inclusive) to {@code toDay}
+     * (exclusive) to the visitor, straight from the covering index. Callers keep the range
+     * short: a cursor refills its window by re-running the query, so one cursor over years of
+     * history gets slower with every window. Returns the number of rows read.
+     */
+    int readLogs(int userId, int fromDay, int toDay, LogVisitor visitor) throws IOException {
+        foldPending();
+        SQLiteDatabase db = this.getReadableDatabase();
+        int rows = 0;
+        String logs = TABLE_WATER_LOGS + ".";
+        String marks = TABLE_COMPACTED_DAYS + ".";
+        try (Cursor cursor = query(db, "exportLogs", "SELECT " + logs + COLUMN_DAY + ", " + COLUMN_LOGGED_AT + ", "
+                        + COLUMN_AMOUNT + ", " + COLUMN_LOG_ID + " IS NOT NULL FROM " + TABLE_WATER_LOGS
+                        + " LEFT JOIN " + TABLE_COMPACTED_DAYS + " ON " + marks + COLUMN_USER_ID + " = " + logs + COLUMN_USER_ID
+                        + " AND " + marks + COLUMN_DAY + " = " + logs + COLUMN_DAY + " AND " + COLUMN_LOG_ID + " = " + logs + COLUMN_ID
+                        + " WHERE " + logs + COLUMN_USER_ID + " = ? AND " + logs + COLUMN_DAY + " >= ? AND "
+                        + logs + COLUMN_DAY + " < ?",
+                String.valueOf(userId), String.valueOf(fromDay), String.valueOf(toDay))) {
+            while (cursor.moveToNext()) {
+                visitor.onLog(cursor.getInt(0), cursor.isNull(1) ? NO_TIME : cursor.getLong(1),
+                        cursor.getInt(2), cursor.getInt(3) != 0);
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    // Highest log id so far, 0 for an empty table; an import only deduplicates against rows up to it
+    public long getLastLogId() {
+        foldPending();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = query(db, "lastLogId", "SELECT MAX(" + COLUMN_ID + ") FROM " + TABLE_WATER_LOGS)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * Inserts the first {@code count} rows for {@code userId} in one transaction, skipping any
+     * row identical in day, time and amount to an existing row with an id up to
+     * {@code lastLogId}. Rows added by earlier batches of the same import have higher ids, so
+     * repeats inside the file are kept while running an import twice adds nothing. Rows are
+     * expected to be validated already. Returns the number of rows inserted.
+     *
+     * Compacted days can't be matched drink by drink, so they are matched by day instead: a day
+     * compacted here takes no rows from an import, and a compacted total from the file, flagged
+     * in {@code compacted}, is only added to a day that has no rows here yet. It stays marked
+     * as compacted. Untimed and timed drinks of every other day are matched as usual.
+     */
+    public int importWaterLogs(int userId, int[] days, long[] loggedAt, int[] amounts, boolean[] compacted,
+                               int count, long lastLogId) {
+        long started = Metrics.start();
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement statement = compile(db, "importLog", "INSERT INTO " + TABLE_WATER_LOGS + " ("
+                + COLUMN_USER_ID + ", " + COLUMN_DAY + ", " + COLUMN_LOGGED_AT + ", " + COLUMN_AMOUNT + ")"
+                + " SELECT ?1, ?2, ?3, ?4 WHERE NOT EXISTS (SELECT 1 FROM " + TABLE_COMPACTED_DAYS
+                + " WHERE " + COLUMN_USER_ID + " = ?1 AND " + COLUMN_DAY + " = ?2 AND " + COLUMN_LOG_ID + " <= ?5)"
+                + " AND NOT EXISTS (SELECT 1 FROM " + TABLE_WATER_LOGS
+                + " WHERE " + COLUMN_USER_ID + " = ?1 AND " + COLUMN_DAY + " = ?2 AND " + COLUMN_ID + " <= ?5"
+                + " AND (?6 OR " + COLUMN_LOGGED_AT + " IS ?3 AND " + COLUMN_AMOUNT + " = ?4))");
+        SQLiteStatement mark = compile(db, "markImportedDayCompacted", MARK_COMPACTED);
+        int inserted = 0;
+
+        db.beginTransaction();
+        try {
+            statement.bindLong(1, userId);
+            statement.bindLong(5, lastLogId);
+            mark.bindLong(1, userId);
+            for (int i = 0; i < count; i++) {
+                statement.bindLong(2, days[i]);
+                if (loggedAt[i] == NO_TIME) {
+                    statement.bindNull(3);
+                } else {
+                    statement.bindLong(3, loggedAt[i]);
+                }
+                statement.bindLong(4, amounts[i]);
+                statement.bindLong(6, compacted[i] ? 1 : 0);
+                if (statement.executeUpdateDelete() > 0) {
+                    inserted++;
+                    if (compacted[i]) {
+                        mark.bindLong(2, days[i]);
+                        mark.executeInsert();
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+            mark.close();
+        }
+        Metrics.end(Metrics.IMPORT_WATER_LOGS, started, count);
+
+        // One coarse change per batch rather than one per imported day
+        if (inserted > 0) {
+            invalidationTracker.userChanged(userId);
+        }
+        return inserted;
+    }
+
+    // ====================== Intake Journal ====================== //
+
+    // Sequence number of the last journal record already in water_logs
+    long getFoldedJournalSeq() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = query(db, "foldedJournalSeq", "SELECT " + COLUMN_FOLDED_SEQ + " FROM "
+                + TABLE_INTAKE_JOURNAL + " WHERE " + COLUMN_ID + " = 0")) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * Inserts one batch of journal records and records {@code lastSeq} as folded, in one
+     * transaction, so a replay after a crash skips exactly the records that made it in. A
+     * record SQLite rejects is dropped rather than blocking every later fold. Nothing is
+     * published: screens heard about each drink when it was appended, and drinks replayed from
+     * an earlier process are announced by IntakeJournal.attach.
+     */
+    void foldJournal(int[] users, int[] days, long[] loggedAt, int[] amounts, int count, long lastSeq) {
+        long started = Metrics.start();
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement statement = compile(db, "foldJournal", INSERT_LOG);
+
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                bindLog(statement, users[i], days[i], loggedAt[i], amounts[i]);
+                try {
+                    statement.executeInsert();
+                } catch (SQLiteException e) {
+                    // Dropped; see above
+                }
+            }
+            update(db, "markJournalFolded", "UPDATE " + TABLE_INTAKE_JOURNAL + " SET " + COLUMN_FOLDED_SEQ
+                    + " = ? WHERE " + COLUMN_ID + " = 0", String.valueOf(lastSeq));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        Metrics.end(Metrics.FOLD_JOURNAL, started, count);
+    }
+
+    // ====================== Statement Execution ====================== //
+
+    // Every read goes through here, named, so tests can check each statement's query plan
+    private Cursor query(SQLiteDatabase db, String name, String sql, String... args) {
+        StatementListener listener = statementListener;
+        if (listener != null) {
+            listener.onStatement(name, sql, args);
+        }
+        return db.rawQuery(sql, args);
+    }
+
+    // Same for INSERT/UPDATE/DELETE; returns the number of rows changed
+    private int update(SQLiteDatabase db, String name, String sql, String... args) {
+        StatementListener listener = statementListener;
+        if (listener != null) {
+            listener.onStatement(name, sql, args);
+        }
+        SQLiteStatement statement = db.compileStatement(sql);
+        try {
+            statement.bindAllArgsAsStrings(args);
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    // Statements reused across a batch with typed bindings; reported to the listener unbound
+    private SQLiteStatement compile(SQLiteDatabase db, String name, String sql) {
+        StatementListener listener = statementListener;
+        if (listener != null) {
+            listener.onStatement(name, sql, new String[0]);
+        }
+        return db.compileStatement(sql);
+    }
 }
@@ -0,0 +1,258 @@
+package com.example.h2obuddy;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Ordered schema history for {@link DatabaseHelper}.
+ *
+ * Fresh installs create the version 1 schema and then replay every migration, so new and
+ * upgraded databases always end up with exactly the same tables and indexes.
+ */
+final class DatabaseMigrations {
+
+    // Version 1 -> 2: covering index so per-user daily aggregates become index-only range scans
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_water_logs_email_date_amount "
+                    + "ON water_logs (email, date, amount)");
+        }
+    };
+
+    // Version 2 -> 3: water_logs references users.id and stores the day as an INTEGER epoch day
+    // instead of repeating the email and a TEXT date on every row
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE water_logs_v3 ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "user_id INTEGER NOT NULL, "
+                    + "day INTEGER NOT NULL, "
+                    + "amount INTEGER NOT NULL, "
+                    + "FOREIGN KEY(user_id) REFERENCES users(id))");
+
+            // Rows that point at no user or have no parseable yyyy-MM-dd date could never be
+            // shown on any screen, so they are not carried over
+            db.execSQL("INSERT INTO water_logs_v3 (id, user_id, day, amount) "
+                    + "SELECT l.id, u.id, CAST(julianday(l.date) - 2440587.5 AS INTEGER), IFNULL(l.amount, 0) "
+                    + "FROM water_logs l JOIN users u ON u.email = l.email "
+                    + "WHERE julianday(l.date) IS NOT NULL");
+
+            db.execSQL("DROP TABLE water_logs");
+            db.execSQL("ALTER TABLE water_logs_v3 RENAME TO water_logs");
+            db.execSQL("CREATE INDEX idx_water_logs_user_day_amount "
+                    + "ON water_logs (user_id, day, amount)");
+        }
+    };
+
+    // Version 3 -> 4: daily_totals rollup kept in step with water_logs by triggers, so daily
+    // and history reads are point/range lookups instead of SUM ... GROUP BY over raw logs
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE daily_totals ("
+                    + "user_id INTEGER NOT NULL, "
+                    + "day INTEGER NOT NULL, "
+                    + "total INTEGER NOT NULL, "
+                    + "entry_count INTEGER NOT NULL, "
+                    + "PRIMARY KEY (user_id, day)) WITHOUT ROWID");
+
+            db.execSQL("INSERT INTO daily_totals (user_id, day, total, entry_count) "
+                    + "SELECT user_id, day, SUM(amount), COUNT(*) FROM water_logs GROUP BY user_id, day");
+
+            db.execSQL("CREATE TRIGGER trg_water_logs_insert AFTER INSERT ON water_logs BEGIN "
+                    + ADD_TO_TOTALS.replace("$", "NEW")
+                    + "END");
+            db.execSQL("CREATE TRIGGER trg_water_logs_delete AFTER DELETE ON water_logs BEGIN "
+                    + SUBTRACT_FROM_TOTALS.replace("$", "OLD")
+                    + "END");
+            db.execSQL("CREATE TRIGGER trg_water_logs_update AFTER UPDATE OF user_id, day, amount ON water_logs BEGIN "
+                    + SUBTRACT_FROM_TOTALS.replace("$", "OLD")
+                    + ADD_TO_TOTALS.replace("$", "NEW")
+                    + "END");
+        }
+    };
+
+    // Trigger bodies; "$" is replaced with NEW or OLD. No UPSERT before SQLite 3.24, hence
+    // INSERT OR IGNORE followed by UPDATE.
+    private static final String ADD_TO_TOTALS =
+            "INSERT OR IGNORE INTO daily_totals (user_id, day, total, entry_count) VALUES ($.user_id, $.day, 0, 0); "
+                    + "UPDATE daily_totals SET total = total + $.amount, entry_count = entry_count + 1 "
+                    + "WHERE user_id = $.user_id AND day = $.day; ";
+    private static final String SUBTRACT_FROM_TOTALS =
+            "UPDATE daily_totals SET total = total - $.amount, entry_count = entry_count - 1 "
+                    + "WHERE user_id = $.user_id AND day = $.day; "
+                    + "DELETE FROM daily_totals WHERE user_id = $.user_id AND day = $.day AND entry_count <= 0; ";
+
+    // Version 4 -> 5: token of the persisted sign-in session, so launches can skip the login screen
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE users ADD COLUMN session_token TEXT");
+        }
+    };
+
+    // Version 5 -> 6: salted password hashes. Existing rows keep their plaintext password with 0
+    // iterations and are rehashed on their next successful login
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE users ADD COLUMN password_salt TEXT");
+            db.execSQL("ALTER TABLE users ADD COLUMN password_iterations INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    // Version 6 -> 7: when each drink was logged (epoch millis), for time-of-day analytics. Older
+    // rows only know their day and keep NULL. The day index is widened to cover the new column,
+    // so analytics scans stay index-only, and replaces the old one rather than sitting beside it
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE water_logs ADD COLUMN logged_at INTEGER");
+            db.execSQL("DROP INDEX idx_water_logs_user_day_amount");
+            db.execSQL("CREATE INDEX idx_water_logs_user_day_time "
+                    + "ON water_logs (user_id, day, logged_at, amount)");
+        }
+    };
+
+    // Version 7 -> 8: the goal in effect on each day, and a per-user bitmap of the days that met
+    // it, so streaks and calendars are bit operations instead of log scans. goal_history holds
+    // one row per goal change (from_day 0 is the goal the account started with). goal_days
+    // packs 64 consecutive epoch days into each row: bit (day & 63) of word (day >> 6). Triggers
+    // on daily_totals keep the bits in step with every write, compaction and rebuild included
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE goal_history ("
+                    + "user_id INTEGER NOT NULL, "
+                    + "from_day INTEGER NOT NULL, "
+                    + "goal INTEGER NOT NULL, "
+                    + "PRIMARY KEY (user_id, from_day)) WITHOUT ROWID");
+            db.execSQL("CREATE TABLE goal_days ("
+                    + "user_id INTEGER NOT NULL, "
+                    + "word INTEGER NOT NULL, "
+                    + "bits INTEGER NOT NULL, "
+                    + "PRIMARY KEY (user_id, word)) WITHOUT ROWID");
+
+            // Nothing recorded which goal applied before now, so the current one applies throughout
+            db.execSQL("INSERT INTO goal_history (user_id, from_day, goal) "
+                    + "SELECT id, 0, IFNULL(daily_goal, 2000) FROM users");
+            // Days are distinct within a word, so SUM of their bits is their OR
+            db.execSQL("INSERT INTO goal_days (user_id, word, bits) "
+                    + "SELECT t.user_id, t.day >> 6, SUM(CASE WHEN t.total >= g.goal THEN 1 << (t.day & 63) ELSE 0 END) "
+                    + "FROM daily_totals t JOIN goal_history g ON g.user_id = t.user_id "
+                    + "GROUP BY t.user_id, t.day >> 6");
+
+            db.execSQL("CREATE TRIGGER trg_users_insert_goal AFTER INSERT ON users BEGIN "
+                    + "INSERT OR REPLACE INTO goal_history (user_id, from_day, goal) "
+                    + "VALUES (NEW.id, 0, IFNULL(NEW.daily_goal, 2000)); "
+                    + "END");
+            // A row is inserted with total 0 and then updated, except by a rebuild
+            db.execSQL("CREATE TRIGGER trg_daily_totals_insert AFTER INSERT ON daily_totals WHEN NEW.total > 0 BEGIN "
+                    + SET_GOAL_BIT.replace("$", "NEW")
+                    + "END");
+            db.execSQL("CREATE TRIGGER trg_daily_totals_update AFTER UPDATE OF total ON daily_totals BEGIN "
+                    + SET_GOAL_BIT.replace("$", "NEW")
+                    + "END");
+            db.execSQL("CREATE TRIGGER trg_daily_totals_delete AFTER DELETE ON daily_totals BEGIN "
+                    + "UPDATE goal_days SET bits = bits & ~(1 << (OLD.day & 63)) "
+                    + "WHERE user_id = OLD.user_id AND word = OLD.day >> 6; "
+                    + "END");
+        }
+    };
+
+    // Version 8 -> 9: the sequence number of the last intake journal record folded into
+    // water_logs, committed in the same transaction as the rows themselves, so replaying the
+    // journal after a crash never inserts a record twice. Always exactly one row
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE intake_journal ("
+                    + "id INTEGER PRIMARY KEY CHECK (id = 0), "
+                    + "folded_seq INTEGER NOT NULL)");
+            db.execSQL("INSERT INTO intake_journal (id, folded_seq) VALUES (0, 0)");
+        }
+    };
+
+    // Version 9 -> 10: the days LogCompactor collapsed, each with the id of the one row that now
+    // holds the day's total, so imports and exports can tell that row from an ordinary untimed
+    // drink. Compaction ships in this version, so no earlier day needs marking
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE compacted_days ("
+                    + "user_id INTEGER NOT NULL, "
+                    + "day INTEGER NOT NULL, "
+                    + "log_id INTEGER NOT NULL, "
+                    + "PRIMARY KEY (user_id, day)) WITHOUT ROWID");
+        }
+    };
+
+    // Sets or clears the goal bit of a daily_totals row; "$" is replaced with NEW. The goal is
+    // the latest goal_history entry at or before the day.
+    private static final String SET_GOAL_BIT =
+            "INSERT OR IGNORE INTO goal_days (user_id, word, bits) VALUES ($.user_id, $.day >> 6, 0); "
+                    + "UPDATE goal_days SET bits = CASE WHEN $.total >= IFNULL((SELECT goal FROM goal_history "
+                    + "WHERE user_id = $.user_id AND from_day <= $.day ORDER BY from_day DESC LIMIT 1), 2000) "
+                    + "THEN bits | (1 << ($.day & 63)) ELSE bits & ~(1 << ($.day & 63)) END "
+                    + "WHERE user_id = $.user_id AND word = $.day >> 6; ";
+
+    // Must stay in version order, one step per DATABASE_VERSION bump
+    static final Migration[] ALL = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+            MIGRATION_8_9,
+            MIGRATION_9_10
+    };
+
+    private DatabaseMigrations() {
+    }
+
+    // The schema exactly as it shipped in version 1. Never edit this; add a migration instead.
+    static void createVersion1Schema(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS users ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "email TEXT UNIQUE, "
+                + "password TEXT, "
+                + "name TEXT, "
+                + "daily_goal INTEGER DEFAULT 2000, "
+                + "reminder_interval INTEGER DEFAULT 60, "
+                + "wake_up_hour INTEGER DEFAULT 6, "
+                + "wake_up_minute INTEGER DEFAULT 0, "
+                + "bed_time_hour INTEGER DEFAULT 22, "
+                + "bed_time_minute INTEGER DEFAULT 0)");
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS water_logs ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "date TEXT, "
+                + "amount INTEGER, "
+                + "email TEXT, "
+                + "FOREIGN KEY(email) REFERENCES users(email))");
+    }
+
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        int version = oldVersion;
+        while (version < newVersion) {
+            Migration step = find(version);
+            if (step == null) {
+                throw new IllegalStateException("No migration from database version " + version);
+            }
+            step.migrate(db);
+            version = step.endVersion;
+        }
+    }
+
+    private static Migration find(int startVersion) {
+        for (Migration migration : ALL) {
+            if (migration.startVersion == startVersion) {
+                return migration;
+            }
+        }
+        return null;
+    }
+}
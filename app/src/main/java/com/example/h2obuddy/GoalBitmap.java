@@ -0,0 +1,105 @@
+package com.example.h2obuddy;
+
+/**
+ * Which days met the goal in effect on them, one bit per epoch day.
+ *
+ * Bit (day &amp; 63) of word (day &gt;&gt; 6) is the day, exactly as stored in goal_days; days
+ * outside the loaded words count as not met. Counts and streaks work a word at a time, so
+ * years of history cost a few dozen long operations.
+ */
+public final class GoalBitmap {
+
+    private final int firstWord;
+    private final long[] words;
+
+    GoalBitmap(int firstWord, long[] words) {
+        this.firstWord = firstWord;
+        this.words = words;
+    }
+
+    private long word(int index) {
+        int i = index - firstWord;
+        return i >= 0 && i < words.length ? words[i] : 0;
+    }
+
+    public boolean isMet(int day) {
+        return (word(day >> 6) >>> (day & 63) & 1) != 0;
+    }
+
+    // Goal-met days from firstDay to lastDay, inclusive
+    public int countMet(int firstDay, int lastDay) {
+        if (lastDay < firstDay) {
+            return 0;
+        }
+        int first = firstDay >> 6;
+        int last = lastDay >> 6;
+        int count = 0;
+        for (int w = Math.max(first, firstWord), end = Math.min(last, firstWord + words.length - 1); w <= end; w++) {
+            long bits = words[w - firstWord];
+            if (w == first) {
+                bits &= -1L << (firstDay & 63);
+            }
+            if (w == last) {
+                bits &= -1L >>> (63 - (lastDay & 63));
+            }
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    /**
+     * Consecutive goal-met days ending today, or ending yesterday while today's goal is still
+     * open, so a streak isn't shown as broken before the day is over.
+     */
+    public int currentStreak(int today) {
+        return runEndingAt(isMet(today) ? today : today - 1);
+    }
+
+    // Goal-met days running back from day, inclusive
+    private int runEndingAt(int day) {
+        int w = day >> 6;
+        // Bits at or before the day, moved to the top so the run is the leading ones
+        long bits = word(w) << (63 - (day & 63));
+        int available = (day & 63) + 1;
+        int run = 0;
+        while (true) {
+            int ones = Long.numberOfLeadingZeros(~bits);
+            if (ones < available) {
+                return run + ones;
+            }
+            run += available;
+            if (--w < firstWord) {
+                return run;
+            }
+            bits = words[w - firstWord];
+            available = 64;
+        }
+    }
+
+    // Longest run of consecutive goal-met days
+    public int longestStreak() {
+        int best = 0;
+        int run = 0; // ones carried over from the end of the previous word
+        for (long bits : words) {
+            if (bits == -1L) {
+                run += 64;
+                continue;
+            }
+            // Low bits are the earlier days, so they continue the carried run
+            best = Math.max(best, run + Long.numberOfTrailingZeros(~bits));
+            best = Math.max(best, longestRun(bits));
+            run = Long.numberOfLeadingZeros(~bits);
+        }
+        return Math.max(best, run);
+    }
+
+    // Each step shortens every run of ones by one, so the step count is the longest run
+    private static int longestRun(long bits) {
+        int length = 0;
+        while (bits != 0) {
+            bits &= bits << 1;
+            length++;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * One calendar year of goal-met days: a column per week, a row per weekday (Monday on top),
+ * filled where {@link GoalBitmap} has the day's bit set.
+ */
+public class GoalHeatmapView extends View {
+
+    private static final int WEEKS = 54; // a leap year starting on Sunday touches 54 weeks
+    private static final float GAP = 0.15f; // fraction of a cell left empty around each square
+
+    private final Paint metPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint missedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint futurePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private GoalBitmap goals;
+    private int firstDay; // January 1st
+    private int lastDay; // December 31st
+    private int today;
+
+    public GoalHeatmapView(Context context) {
+        this(context, null);
+    }
+
+    public GoalHeatmapView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        metPaint.setColor(Color.rgb(0x03, 0xDA, 0xC5));
+        missedPaint.setColor(Color.rgb(0xE0, 0xE0, 0xE0));
+        futurePaint.setColor(Color.rgb(0xF5, 0xF5, 0xF5));
+    }
+
+    public void setYear(GoalBitmap goals, int year, int today) {
+        this.goals = goals;
+        this.firstDay = EpochDays.of(year, 1, 1);
+        this.lastDay = EpochDays.of(year + 1, 1, 1) - 1;
+        this.today = today;
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int cell = (width - getPaddingLeft() - getPaddingRight()) / WEEKS;
+        setMeasuredDimension(width, cell * IntakeAnalytics.WEEKDAYS + getPaddingTop() + getPaddingBottom());
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (goals == null) {
+            return;
+        }
+        float cell = (float) (getWidth() - getPaddingLeft() - getPaddingRight()) / WEEKS;
+        float inset = cell * GAP / 2;
+        int offset = IntakeAnalytics.weekdayOf(firstDay); // January 1st's row in the first column
+        for (int day = firstDay; day <= lastDay; day++) {
+            int slot = day - firstDay + offset;
+            float left = getPaddingLeft() + (slot / IntakeAnalytics.WEEKDAYS) * cell + inset;
+            float top = getPaddingTop() + (slot % IntakeAnalytics.WEEKDAYS) * cell + inset;
+            Paint paint = day > today ? futurePaint : goals.isMet(day) ? metPaint : missedPaint;
+            canvas.drawRect(left, top, left + cell - 2 * inset, top + cell - 2 * inset, paint);
+        }
+    }
+}
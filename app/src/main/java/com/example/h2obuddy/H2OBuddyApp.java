@@ -0,0 +1,18 @@
+package com.example.h2obuddy;
+
+import android.app.Application;
+
+public class H2OBuddyApp extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Start opening the shared database while the launcher activity inflates, then check
+        // for a saved session (and load its progress) once any intake journal is replayed
+        WaterRepository.prewarm(this, Session.prefetch(this));
+
+        // Old quick-add entries are folded into one row per day in the background, once a day
+        WaterRepository.scheduleCompaction(this);
+    }
+}
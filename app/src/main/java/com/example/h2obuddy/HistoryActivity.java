@@ -2,16 +2,48 @@ package com.example.h2obuddy;
 
 import androidx.appcompat.app.AppCompatActivity;
 import android.os.Bundle;
-import android.widget.ArrayAdapter;
+import android.widget.AbsListView;
 import android.widget.ListView;
 import android.widget.Toast;
-import java.util.List;
 
 public class HistoryActivity extends AppCompatActivity {
 
+    private static final int PAGE_SIZE = 60; // days per page
+    private static final int PREFETCH_DISTANCE = 20; // rows left before the next page is fetched
+
     private ListView lvHistory;
-    private DatabaseHelper databaseHelper;
+    private HistoryAdapter adapter;
+    private WaterRepository repository;
     private int userId;
+    private boolean loadingPage;
+    private boolean reachedEnd;
+    private long loadStarted;
+    private boolean firstPageShown;
+    private boolean firstPageStale; // a write was published while the first page was loading
+    private volatile int dailyGoal; // For the goal flag of days updated in place
+    private InvalidationTracker invalidationTracker;
+
+    // New drinks update their day in place; a settings change may move the goal, so reload
+    private final InvalidationTracker.Observer changes = new InvalidationTracker.Observer() {
+        @Override
+        public void onIntakeChanged(int changedUserId, int day, int delta) {
+            // The first page may have been read before or after this write, so it is read again
+            if (!firstPageShown) {
+                firstPageStale = true;
+            } else if (dailyGoal > 0) {
+                adapter.applyDelta(day, delta, dailyGoal);
+            }
+        }
+
+        @Override
+        public void onUserChanged(int changedUserId) {
+            repository.cancelAll();
+            loadingPage = false;
+            reachedEnd = false;
+            dailyGoal = 0;
+            loadDailyHistory();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -20,7 +52,8 @@ public class HistoryActivity extends AppCompatActivity {
 
         // Initialize views
         lvHistory = findViewById(R.id.lvHistory);
-        databaseHelper = new DatabaseHelper(this);
+        repository = new WaterRepository(this);
+        invalidationTracker = DatabaseHelper.getInstance(this).getInvalidationTracker();
 
         // Retrieve user ID from intent
         userId = getIntent().getExtras().getInt("USER_ID", -1);
@@ -32,48 +65,79 @@ public class HistoryActivity extends AppCompatActivity {
         }
 
         loadDailyHistory();
+        invalidationTracker.addObserver(userId, changes);
     }
 
     private void loadDailyHistory() {
-        // Get user email by ID
-        String userEmail = databaseHelper.getUserEmailById(userId);
-        if (userEmail == null) {
-            Toast.makeText(this, "User not found", Toast.LENGTH_SHORT).show();
-            finish();
-            return;
-        }
+        loadStarted = Metrics.start();
+        firstPageShown = false;
+        firstPageStale = false;
+        adapter = new HistoryAdapter(new DailyHistory(PAGE_SIZE));
+        lvHistory.setAdapter(adapter);
 
-        // Fetch daily history for the last 7 days from the database
-        List<String> dailyHistory = databaseHelper.getDailyHistory(userEmail);
+        // Fetch the next page in the background as the user nears the bottom
+        lvHistory.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
 
-        if (dailyHistory.isEmpty()) {
-            Toast.makeText(this, "No history available", Toast.LENGTH_SHORT).show();
-            return;
-        }
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (totalItemCount > 0 && firstVisibleItem + visibleItemCount >= totalItemCount - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
 
-        // Create an adapter to display the history
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
-                android.R.layout.simple_list_item_1, highlightSuccessfulDays(dailyHistory, userEmail));
-        lvHistory.setAdapter(adapter);
+        loadNextPage();
     }
 
-    private List<String> highlightSuccessfulDays(List<String> history, String userEmail) {
-        int dailyGoal = databaseHelper.getDailyGoal(userEmail);
-
-        for (int i = 0; i < history.size(); i++) {
-            String entry = history.get(i);
-            String[] parts = entry.split(": ");
-            if (parts.length == 2) {
-                try {
-                    int intake = Integer.parseInt(parts[1].replace(" ml", ""));
-                    if (intake >= dailyGoal) {
-                        history.set(i, entry + " (✅ Goal Achieved)");
-                    }
-                } catch (NumberFormatException e) {
-                    e.printStackTrace();
+    private void loadNextPage() {
+        if (loadingPage || reachedEnd) {
+            return;
+        }
+        loadingPage = true;
+        final int beforeDay = adapter.getOldestDay();
+
+        repository.execute(new WaterRepository.Query<DailyHistory>() {
+            @Override
+            public DailyHistory run(DatabaseHelper helper) {
+                if (dailyGoal == 0) {
+                    UserProfile profile = helper.getUserProfile(userId);
+                    dailyGoal = profile != null ? profile.dailyGoal : 0;
                 }
+                return helper.getDailyTotalsBefore(userId, beforeDay, PAGE_SIZE);
             }
+        }, new WaterRepository.Callback<DailyHistory>() {
+            @Override
+            public void onResult(DailyHistory page) {
+                loadingPage = false;
+                if (!firstPageShown && firstPageStale) {
+                    loadDailyHistory();
+                    return;
+                }
+                firstPageShown = true;
+                reachedEnd = page.size() < PAGE_SIZE;
+                if (page.isEmpty() && adapter.isEmpty()) {
+                    Toast.makeText(HistoryActivity.this, "No history available", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                adapter.appendPage(page);
+                if (loadStarted != 0) {
+                    // First page on screen
+                    Metrics.end(Metrics.LOAD_HISTORY, loadStarted, page.size());
+                    loadStarted = 0;
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (invalidationTracker != null) {
+            invalidationTracker.removeObserver(changes);
         }
-        return history;
+        repository.cancelAll();
+        super.onDestroy();
     }
 }
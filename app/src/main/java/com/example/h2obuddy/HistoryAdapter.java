@@ -0,0 +1,83 @@
+package com.example.h2obuddy;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/**
+ * Shows a {@link DailyHistory} that grows a page at a time. Rows are formatted only when
+ * bound and row views are recycled through a view holder, so view memory stays flat however
+ * far back the user scrolls.
+ */
+public class HistoryAdapter extends BaseAdapter {
+
+    private final DailyHistory history;
+    private final StringBuilder text = new StringBuilder(48);
+
+    public HistoryAdapter(DailyHistory history) {
+        this.history = history;
+    }
+
+    public void appendPage(DailyHistory page) {
+        history.append(page);
+        notifyDataSetChanged();
+    }
+
+    // Updates one day in place after a write, instead of reloading the list
+    public void applyDelta(int day, int delta, int dailyGoal) {
+        if (history.applyDelta(day, delta, dailyGoal)) {
+            notifyDataSetChanged();
+        }
+    }
+
+    public int getOldestDay() {
+        return history.getOldestDay();
+    }
+
+    @Override
+    public int getCount() {
+        return history.size();
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return history.getTotal(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return history.getDay(position);
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        ViewHolder holder;
+        if (convertView == null) {
+            convertView = LayoutInflater.from(parent.getContext())
+                    .inflate(android.R.layout.simple_list_item_1, parent, false);
+            holder = new ViewHolder((TextView) convertView.findViewById(android.R.id.text1));
+            convertView.setTag(holder);
+        } else {
+            holder = (ViewHolder) convertView.getTag();
+        }
+
+        text.setLength(0);
+        text.append(EpochDays.toDate(history.getDay(position)))
+                .append(": ").append(history.getTotal(position)).append(" ml");
+        if (history.isGoalMet(position)) {
+            text.append(" (✅ Goal Achieved)");
+        }
+        holder.text.setText(text);
+        return convertView;
+    }
+
+    private static final class ViewHolder {
+        final TextView text;
+
+        ViewHolder(TextView text) {
+            this.text = text;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.h2obuddy;
 
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
@@ -7,8 +8,6 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
-import java.util.HashMap;
-import java.util.Map;
 
 public class HomeActivity extends AppCompatActivity {
 
@@ -17,14 +16,60 @@ public class HomeActivity extends AppCompatActivity {
     private ProgressBar progressBar;
 
     private int dailyGoal = 2000; // Default daily goal in ml
-    private int currentIntake = 0; // Tracks the current water intake
+    private int currentIntake = 0; // Today's total water intake
     private int userId = -1; // Holds the user ID passed from MainActivity
 
-    private DatabaseHelper databaseHelper; // Database helper instance
+    private WaterRepository repository;
+    private IntakeBuffer intakeBuffer; // Coalesces quick-add taps into fewer writes
+    private final ProgressCache progressCache = ProgressCache.getInstance();
+    private WaterRepository.Task<ProgressCache.Progress> pendingLoad;
+    private InvalidationTracker invalidationTracker;
+
+    // Writes from anywhere (this screen's buffer, quick-log, settings) update what's shown
+    private final InvalidationTracker.Observer changes = new InvalidationTracker.Observer() {
+        @Override
+        public void onIntakeChanged(int changedUserId, int day, int delta) {
+            if (day == EpochDays.today()) {
+                refreshProgress();
+            }
+        }
+
+        @Override
+        public void onUserChanged(int changedUserId) {
+            refreshProgress();
+        }
+    };
+
+    // Launcher start time and path, for the time-to-first-progress metrics
+    private long launchedAt;
+    private boolean fromSession;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+
+        // Get user ID from intent extras
+        Bundle extras = getIntent().getExtras();
+        userId = extras.getInt("USER_ID", -1);
+        launchedAt = extras.getLong("LAUNCHED_AT", 0);
+        fromSession = extras.getBoolean("FROM_SESSION", false);
+
+        repository = new WaterRepository(this);
+        intakeBuffer = new IntakeBuffer(repository, userId);
+        // The committed drink is in the cache before it leaves the unsaved amount
+        intakeBuffer.setSavedListener(new Runnable() {
+            @Override
+            public void run() {
+                refreshProgress();
+            }
+        });
+        invalidationTracker = DatabaseHelper.getInstance(this).getInvalidationTracker();
+
+        // Start reading progress before inflating, so the two overlap
+        if (userId != -1 && progressCache.get(userId) == null) {
+            startLoad(Metrics.start());
+        }
+
         setContentView(R.layout.activity_home);
 
         // Initialize views
@@ -32,58 +77,132 @@ public class HomeActivity extends AppCompatActivity {
         tvProgress = findViewById(R.id.tvProgress);
         progressBar = findViewById(R.id.progressBar);
 
-        // Initialize DatabaseHelper
-        databaseHelper = new DatabaseHelper();
+        if (userId == -1) {
+            Toast.makeText(this, "User ID not found", Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
 
-        // Get user ID from intent extras
-        userId = getIntent().getExtras().getInt("USER_ID", -1);
+        // The home-screen widget logs for whoever last opened this screen
+        final Context appContext = getApplicationContext();
+        repository.executeWrite(new WaterRepository.Query<Void>() {
+            @Override
+            public Void run(DatabaseHelper helper) {
+                QuickLogWidget.bindUser(appContext, userId);
+                return null;
+            }
+        });
+    }
 
-        // Load user data from database
-        loadUserData();
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (userId != -1) {
+            invalidationTracker.addObserver(userId, changes);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        invalidationTracker.removeObserver(changes);
+        super.onStop();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (userId != -1) {
+            loadUserData();
+        }
     }
 
     private void loadUserData() {
-        if (userId == -1) {
-            Toast.makeText(this, "User ID not found", Toast.LENGTH_SHORT).show();
-            finish();
+        final long started = Metrics.start();
+
+        // Served from memory unless the day rolled over or settings changed
+        ProgressCache.Progress cached = progressCache.get(userId);
+        if (cached != null) {
+            showProgress(cached);
+            Metrics.end(Metrics.LOAD_HOME, started);
             return;
         }
 
-        // Fetch user data from the database
-        User user = databaseHelper.getUserById(userId);
-        if (user != null) {
-            dailyGoal = user.dailyGoal;
-            currentIntake = user.currentIntake;
-            updateUI();
-        } else {
-            Toast.makeText(this, "User not found in database", Toast.LENGTH_SHORT).show();
-            finish();
+        // Already on its way from onCreate
+        if (pendingLoad == null) {
+            startLoad(started);
         }
     }
 
-    private void addWaterIntake(int amount) {
-        currentIntake += amount;
-
-        // Ensure intake doesn't exceed daily goal
-        if (currentIntake > dailyGoal) {
-            currentIntake = dailyGoal;
+    // After a change: the cache already has intake deltas, so only a dropped entry (settings
+    // changed) is read again
+    private void refreshProgress() {
+        ProgressCache.Progress cached = progressCache.get(userId);
+        if (cached != null) {
+            showProgress(cached);
+        } else if (pendingLoad == null) {
+            startLoad(0);
         }
+    }
 
-        // Save updated intake to the database
-        boolean success = databaseHelper.updateUserIntake(userId, currentIntake);
+    private void startLoad(final long started) {
+        pendingLoad = repository.execute(new WaterRepository.Query<ProgressCache.Progress>() {
+            @Override
+            public ProgressCache.Progress run(DatabaseHelper helper) {
+                return progressCache.load(helper, userId);
+            }
+        }, new WaterRepository.Callback<ProgressCache.Progress>() {
+            @Override
+            public void onResult(ProgressCache.Progress progress) {
+                pendingLoad = null;
+                if (progress != null) {
+                    showProgress(progress);
+                    Metrics.end(Metrics.LOAD_HOME, started);
+                } else {
+                    Toast.makeText(HomeActivity.this, "User not found in database", Toast.LENGTH_SHORT).show();
+                    finish();
+                }
+            }
+        });
+    }
+
+    private void showProgress(ProgressCache.Progress progress) {
+        // The cache holds what is committed; taps still on their way are added on top
+        dailyGoal = progress.dailyGoal;
+        currentIntake = progress.getTodayTotal() + intakeBuffer.getUnsavedAmount();
+        updateUI();
 
-        if (success) {
-            updateUI(); // Update UI with the new values
-        } else {
-            Toast.makeText(this, "Failed to update water intake", Toast.LENGTH_SHORT).show();
+        if (launchedAt != 0) {
+            Metrics.end(fromSession ? Metrics.FIRST_PROGRESS_SESSION : Metrics.FIRST_PROGRESS_LOGIN, launchedAt);
+            launchedAt = 0;
         }
     }
 
+    private void addWaterIntake(int amount) {
+        // Show the new progress right away; the buffer persists it shortly after
+        currentIntake += amount;
+        intakeBuffer.add(amount);
+        updateUI();
+    }
+
+    @Override
+    protected void onPause() {
+        // Nothing buffered may be lost if the process is killed while in the background
+        intakeBuffer.flush();
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        intakeBuffer.setSavedListener(null);
+        repository.cancelAll();
+        super.onDestroy();
+    }
+
     private void updateUI() {
         tvDailyGoal.setText("Daily Goal: " + dailyGoal + " ml");
         tvProgress.setText("Progress: " + currentIntake + " / " + dailyGoal + " ml");
         progressBar.setMax(100); // Ensure progressBar max value is set to 100
-        progressBar.setProgress((currentIntake * 100) / dailyGoal); // Update progress
+        progressBar.setProgress(Math.min(100, (currentIntake * 100) / dailyGoal)); // Update progress
     }
 
     public void addWaterIntake250(View view) {
@@ -110,42 +229,11 @@ public class HomeActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
-    private class DatabaseHelper {
-
-        private Map<Integer, User> users = new HashMap<>();
-
-        public DatabaseHelper() {
-            users.put(1, new User(1, "test@example.com", "password123", 2000, 0));
-            users.put(2, new User(2, "user2@example.com", "pass456", 2500, 500));
-        }
-
-        public User getUserById(int userId) {
-            return users.get(userId);
-        }
-
-        public boolean updateUserIntake(int userId, int intake) {
-            User user = users.get(userId);
-            if (user != null) {
-                user.currentIntake = intake;
-                return true;
-            }
-            return false;
-        }
-    }
-
-    private static class User {
-        int id;
-        String email;
-        String password;
-        int dailyGoal;
-        int currentIntake;
-
-        public User(int id, String email, String password, int dailyGoal, int currentIntake) {
-            this.id = id;
-            this.email = email;
-            this.password = password;
-            this.dailyGoal = dailyGoal;
-            this.currentIntake = currentIntake;
-        }
+    public void gotoInsights(View view) {
+        Intent intent = new Intent(this, InsightsActivity.class);
+        Bundle bundle = new Bundle();
+        bundle.putInt("USER_ID", userId);
+        intent.putExtras(bundle);
+        startActivity(intent);
     }
 }
@@ -0,0 +1,197 @@
+package com.example.h2obuddy;
+
+import androidx.appcompat.app.AppCompatActivity;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.util.Calendar;
+
+public class InsightsActivity extends AppCompatActivity {
+
+    private static final int RANGE_DAYS = IntakeAnalytics.MONTH; // days summarised, ending today
+    private static final int BAR_WIDTH = 20; // characters for the busiest hour or weekday
+    private static final String[] WEEKDAY_NAMES = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
+    private static final long RELOAD_DELAY_MILLIS = 5000; // a run of drinks costs one scan
+
+    private TextView tvAverages;
+    private TextView tvStreaks;
+    private GoalHeatmapView goalHeatmap;
+    private TextView tvPace;
+    private TextView tvHours;
+    private TextView tvWeekdays;
+
+    private WaterRepository repository;
+    private int userId;
+    private long loadStarted;
+    private WaterRepository.Task<Insights> pendingLoad;
+    private InvalidationTracker invalidationTracker;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean reloadPosted;
+    private final Runnable reload = new Runnable() {
+        @Override
+        public void run() {
+            loadInsights();
+        }
+    };
+
+    // Everything the screen shows, read in one background task
+    private static final class Insights {
+        final IntakeAnalytics analytics;
+        final GoalBitmap goals;
+
+        Insights(IntakeAnalytics analytics, GoalBitmap goals) {
+            this.analytics = analytics;
+            this.goals = goals;
+        }
+    }
+
+    // Any write for this user changes some figure. A reload is one index scan of the range, so
+    // drinks reload at most once per RELOAD_DELAY_MILLIS; a settings change reloads right away
+    private final InvalidationTracker.Observer changes = new InvalidationTracker.Observer() {
+        @Override
+        public void onIntakeChanged(int changedUserId, int day, int delta) {
+            if (!reloadPosted) {
+                reloadPosted = true;
+                handler.postDelayed(reload, RELOAD_DELAY_MILLIS);
+            }
+        }
+
+        @Override
+        public void onUserChanged(int changedUserId) {
+            loadInsights();
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_insights);
+
+        // Initialize views
+        tvAverages = findViewById(R.id.tvAverages);
+        tvStreaks = findViewById(R.id.tvStreaks);
+        goalHeatmap = findViewById(R.id.goalHeatmap);
+        tvPace = findViewById(R.id.tvPace);
+        tvHours = findViewById(R.id.tvHours);
+        tvWeekdays = findViewById(R.id.tvWeekdays);
+        repository = new WaterRepository(this);
+        invalidationTracker = DatabaseHelper.getInstance(this).getInvalidationTracker();
+
+        // Retrieve user ID from intent
+        userId = getIntent().getExtras().getInt("USER_ID", -1);
+
+        if (userId == -1) {
+            Toast.makeText(this, "User ID not found", Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+
+        loadStarted = Metrics.start();
+        loadInsights();
+        invalidationTracker.addObserver(userId, changes);
+    }
+
+    private void loadInsights() {
+        handler.removeCallbacks(reload);
+        reloadPosted = false;
+        if (pendingLoad != null) {
+            pendingLoad.cancel();
+        }
+        final int today = EpochDays.today();
+        pendingLoad = repository.execute(new WaterRepository.Query<Insights>() {
+            @Override
+            public Insights run(DatabaseHelper helper) {
+                return new Insights(helper.getIntakeAnalytics(userId, today - RANGE_DAYS + 1, today),
+                        helper.getGoalBitmap(userId));
+            }
+        }, new WaterRepository.Callback<Insights>() {
+            @Override
+            public void onResult(Insights insights) {
+                pendingLoad = null;
+                showStreaks(insights.goals, today);
+                showInsights(insights.analytics);
+                if (loadStarted != 0) {
+                    Metrics.end(Metrics.LOAD_INSIGHTS, loadStarted, insights.analytics.getRowCount());
+                    loadStarted = 0;
+                }
+            }
+        });
+    }
+
+    private void showStreaks(GoalBitmap goals, int today) {
+        int year = Calendar.getInstance().get(Calendar.YEAR);
+        tvStreaks.setText("Current streak: " + goals.currentStreak(today) + " days\n"
+                + "Longest streak: " + goals.longestStreak() + " days\n"
+                + "Goal met on " + goals.countMet(EpochDays.of(year, 1, 1), today) + " days in " + year);
+        goalHeatmap.setYear(goals, year, today);
+    }
+
+    private void showInsights(IntakeAnalytics analytics) {
+        int last = analytics.getDayCount() - 1;
+        tvAverages.setText("7-day average: " + analytics.getRollingAverage(last, IntakeAnalytics.WEEK) + " ml\n"
+                + "30-day average: " + analytics.getRollingAverage(last, IntakeAnalytics.MONTH) + " ml");
+
+        // Today so far against a typical day at the same hour
+        int hour = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+        int[] today = new int[IntakeAnalytics.HOURS];
+        int[] typical = new int[IntakeAnalytics.HOURS];
+        analytics.getPaceCurve(last, today);
+        analytics.getAveragePaceCurve(typical);
+        tvPace.setText("By " + hour + ":59 today: " + today[hour] + " ml\n"
+                + "Usually by then: " + typical[hour] + " ml");
+
+        int[] hours = new int[IntakeAnalytics.HOURS];
+        for (int h = 0; h < hours.length; h++) {
+            hours[h] = analytics.getHourAverage(h);
+        }
+        StringBuilder text = new StringBuilder();
+        int max = max(hours);
+        for (int h = 0; h < hours.length; h++) {
+            appendBar(text, (h < 10 ? "0" : "") + h + ":00", hours[h], max);
+        }
+        tvHours.setText(text);
+
+        int[] weekdays = new int[IntakeAnalytics.WEEKDAYS];
+        for (int w = 0; w < weekdays.length; w++) {
+            weekdays[w] = analytics.getWeekdayAverage(w);
+        }
+        text.setLength(0);
+        max = max(weekdays);
+        for (int w = 0; w < weekdays.length; w++) {
+            appendBar(text, WEEKDAY_NAMES[w], weekdays[w], max);
+        }
+        tvWeekdays.setText(text);
+    }
+
+    // "label ██████ 450 ml", the bar scaled against the largest value
+    private static void appendBar(StringBuilder text, String label, int value, int max) {
+        text.append(label).append(' ');
+        int width = max == 0 ? 0 : (int) ((long) value * BAR_WIDTH / max);
+        for (int i = 0; i < width; i++) {
+            text.append('█');
+        }
+        text.append(' ').append(value).append(" ml\n");
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (invalidationTracker != null) {
+            invalidationTracker.removeObserver(changes);
+        }
+        handler.removeCallbacks(reload);
+        repository.cancelAll();
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.h2obuddy;
+
+import java.util.TimeZone;
+
+/**
+ * Intake patterns over a range of days: hour-of-day and weekday histograms, per-day pace
+ * curves and rolling averages, built in one pass over the range's log rows.
+ *
+ * Everything lives in primitive arrays sized by the range up front, so feeding rows through
+ * {@link #add} allocates nothing. Hour figures only count rows with a logged time; rows from
+ * before timestamps were stored, or collapsed by compaction, count towards day and weekday
+ * figures only.
+ */
+public final class IntakeAnalytics {
+
+    public static final int HOURS = 24;
+    public static final int WEEKDAYS = 7; // 0 = Monday
+    public static final int WEEK = 7;
+    public static final int MONTH = 30;
+
+    private static final long MILLIS_PER_HOUR = 60L * 60 * 1000;
+
+    private final int firstDay;
+    private final int dayCount;
+    private final TimeZone zone;
+
+    private final int[] dailyTotals;
+    private final int[] hourlyTotals; // dayCount * HOURS, one row of hours per day
+    private final int[] hourOfDay = new int[HOURS];
+    private final int[] weekday = new int[WEEKDAYS];
+    private final int[] weekdayDays = new int[WEEKDAYS]; // how often each weekday occurs in the range
+    private final long[] prefixTotals; // prefixTotals[i] = sum of dailyTotals[0 .. i-1], for rolling averages
+    private int timedDays; // days with at least one timed row
+    private int untimedAmount;
+    private int rows;
+
+    IntakeAnalytics(int firstDay, int lastDay, TimeZone zone) {
+        if (lastDay < firstDay) {
+            throw new IllegalArgumentException("Empty range " + firstDay + ".." + lastDay);
+        }
+        this.firstDay = firstDay;
+        this.dayCount = lastDay - firstDay + 1;
+        this.zone = zone;
+        dailyTotals = new int[dayCount];
+        hourlyTotals = new int[dayCount * HOURS];
+        prefixTotals = new long[dayCount + 1];
+    }
+
+    // One log row; rows may come in any order, and rows outside the range are ignored
+    void add(int day, long loggedAt, boolean timed, int amount) {
+        int index = day - firstDay;
+        if (index < 0 || index >= dayCount) {
+            return;
+        }
+        rows++;
+        dailyTotals[index] += amount;
+        weekday[weekdayOf(day)] += amount;
+        if (timed) {
+            int hour = hourOf(loggedAt);
+            hourOfDay[hour] += amount;
+            hourlyTotals[index * HOURS + hour] += amount;
+        } else {
+            untimedAmount += amount;
+        }
+    }
+
+    // Derives the per-day figures once every row is in; O(days), independent of the row count
+    void finish() {
+        timedDays = 0;
+        for (int i = 0; i < dayCount; i++) {
+            prefixTotals[i + 1] = prefixTotals[i] + dailyTotals[i];
+            weekdayDays[weekdayOf(firstDay + i)]++;
+            for (int h = i * HOURS, end = h + HOURS; h < end; h++) {
+                if (hourlyTotals[h] != 0) {
+                    timedDays++;
+                    break;
+                }
+            }
+        }
+    }
+
+    static int weekdayOf(int epochDay) {
+        // 1970-01-01 was a Thursday
+        return Math.floorMod(epochDay + 3, WEEKDAYS);
+    }
+
+    private int hourOf(long millis) {
+        long local = millis + zone.getOffset(millis);
+        return (int) (Math.floorMod(local, EpochDays.MILLIS_PER_DAY) / MILLIS_PER_HOUR);
+    }
+
+    public int getFirstDay() {
+        return firstDay;
+    }
+
+    public int getLastDay() {
+        return firstDay + dayCount - 1;
+    }
+
+    // Days in the range, including days without intake
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public int getDailyTotal(int index) {
+        return dailyTotals[index];
+    }
+
+    public int getHourTotal(int hour) {
+        return hourOfDay[hour];
+    }
+
+    // Mean intake in this hour over the days that have timed rows
+    public int getHourAverage(int hour) {
+        return timedDays == 0 ? 0 : hourOfDay[hour] / timedDays;
+    }
+
+    public int getWeekdayTotal(int weekdayIndex) {
+        return weekday[weekdayIndex];
+    }
+
+    // Mean daily intake on this weekday, counting every occurrence in the range
+    public int getWeekdayAverage(int weekdayIndex) {
+        int occurrences = weekdayDays[weekdayIndex];
+        return occurrences == 0 ? 0 : weekday[weekdayIndex] / occurrences;
+    }
+
+    // Intake without a time of day
+    public int getUntimedAmount() {
+        return untimedAmount;
+    }
+
+    /**
+     * Mean daily intake over the {@code window} days ending at {@code index}. Near the start of
+     * the range the window is cut short and the mean is taken over the days it does cover.
+     */
+    public int getRollingAverage(int index, int window) {
+        int from = Math.max(0, index - window + 1);
+        return (int) ((prefixTotals[index + 1] - prefixTotals[from]) / (index + 1 - from));
+    }
+
+    // Fills out[h] with the intake of day index up to the end of hour h
+    public void getPaceCurve(int index, int[] out) {
+        int running = 0;
+        for (int h = 0; h < HOURS; h++) {
+            running += hourlyTotals[index * HOURS + h];
+            out[h] = running;
+        }
+    }
+
+    // The same, averaged over the days that have timed rows: how far along a typical day is
+    public void getAveragePaceCurve(int[] out) {
+        int running = 0;
+        for (int h = 0; h < HOURS; h++) {
+            running += hourOfDay[h];
+            out[h] = timedDays == 0 ? 0 : running / timedDays;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.h2obuddy;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces rapid quick-add taps into a single water_logs row.
+ *
+ * The first tap opens a short window; every tap inside it is summed and written as one entry
+ * when the window closes, when the day changes, or when {@link #flush()} is called (from
+ * onPause). Not thread-safe: call {@link #add(int)} and {@link #flush()} on the main thread.
+ */
+public class IntakeBuffer {
+
+    static final long DEFAULT_WINDOW_MILLIS = 2000;
+
+    private final WaterRepository repository;
+    private final int userId;
+    private final long windowMillis;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // Pending (unwritten) intake
+    private int pendingAmount;
+    private int pendingDay;
+    private long pendingTimestamp; // first tap; the merged row is logged at this time
+    private int pendingTaps;
+
+    // Flushed but not yet committed; written from the database thread
+    private final AtomicInteger inFlightAmount = new AtomicInteger();
+
+    // Told on the main thread once a flush has left inFlightAmount
+    private Runnable savedListener;
+    private final Runnable notifySaved = new Runnable() {
+        @Override
+        public void run() {
+            if (savedListener != null) {
+                savedListener.run();
+            }
+        }
+    };
+
+    // Tuning statistics; the latency counters are written from the database thread
+    private long taps;
+    private long flushes;
+    private final AtomicLong lastFlushLatencyNanos = new AtomicLong();
+    private final AtomicLong maxFlushLatencyNanos = new AtomicLong();
+
+    public IntakeBuffer(WaterRepository repository, int userId) {
+        this(repository, userId, DEFAULT_WINDOW_MILLIS);
+    }
+
+    public IntakeBuffer(WaterRepository repository, int userId, long windowMillis) {
+        this.repository = repository;
+        this.userId = userId;
+        this.windowMillis = windowMillis;
+    }
+
+    public void add(int amount) {
+        long now = System.currentTimeMillis();
+        int today = EpochDays.fromMillis(now);
+        if (pendingTaps > 0 && pendingDay != today) {
+            // Never merge across midnight; yesterday's taps belong to yesterday
+            flush();
+        }
+        if (pendingTaps == 0) {
+            pendingDay = today;
+            pendingTimestamp = now;
+            handler.postDelayed(flushTask, windowMillis);
+        }
+        pendingAmount += amount;
+        pendingTaps++;
+        taps++;
+    }
+
+    // Writes whatever is pending now; safe to call when nothing is buffered
+    public void flush() {
+        handler.removeCallbacks(flushTask);
+        if (pendingTaps == 0) {
+            return;
+        }
+
+        final IntakeEvent event = new IntakeEvent(userId, pendingTimestamp, pendingAmount);
+        final int amount = pendingAmount;
+        final long queuedAt = SystemClock.elapsedRealtimeNanos();
+        pendingAmount = 0;
+        pendingTaps = 0;
+        flushes++;
+        inFlightAmount.addAndGet(amount);
+
+        repository.executeWrite(new WaterRepository.Query<Boolean>() {
+            @Override
+            public Boolean run(DatabaseHelper helper) {
+                boolean inserted = helper.insertWaterLog(event);
+                // Committed (and published), or failed; either way no longer ours to show. A
+                // screen that rendered in between counted it twice, so it renders again
+                inFlightAmount.addAndGet(-amount);
+                handler.post(notifySaved);
+                recordLatency(SystemClock.elapsedRealtimeNanos() - queuedAt);
+                return inserted;
+            }
+        });
+    }
+
+    // Called after each flushed amount stops counting as unsaved; null to stop
+    public void setSavedListener(Runnable listener) {
+        savedListener = listener;
+    }
+
+    private void recordLatency(long nanos) {
+        lastFlushLatencyNanos.set(nanos);
+        long max;
+        do {
+            max = maxFlushLatencyNanos.get();
+        } while (nanos > max && !maxFlushLatencyNanos.compareAndSet(max, nanos));
+    }
+
+    public int getPendingAmount() {
+        return pendingAmount;
+    }
+
+    // Intake tapped but not yet in the database: buffered or being written
+    public int getUnsavedAmount() {
+        return pendingAmount + inFlightAmount.get();
+    }
+
+    public long getTapCount() {
+        return taps;
+    }
+
+    public long getFlushCount() {
+        return flushes;
+    }
+
+    // Taps that did not need their own row
+    public long getMergedCount() {
+        return taps - flushes - pendingTaps;
+    }
+
+    public long getLastFlushLatencyMillis() {
+        return lastFlushLatencyNanos.get() / 1_000_000;
+    }
+
+    public long getMaxFlushLatencyMillis() {
+        return maxFlushLatencyNanos.get() / 1_000_000;
+    }
+}
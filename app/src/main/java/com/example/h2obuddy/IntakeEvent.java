@@ -0,0 +1,17 @@
+package com.example.h2obuddy;
+
+/**
+ * A single drink to be logged: who, when (epoch millis) and how much (ml).
+ */
+public final class IntakeEvent {
+
+    public final int userId;
+    public final long timestamp;
+    public final int amount;
+
+    public IntakeEvent(int userId, long timestamp, int amount) {
+        this.userId = userId;
+        this.timestamp = timestamp;
+        this.amount = amount;
+    }
+}
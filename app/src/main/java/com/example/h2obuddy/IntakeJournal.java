@@ -0,0 +1,356 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * An {@link IntakeStore} that appends each drink as a fixed-width record to a memory-mapped
+ * file, so the tap path is a 32-byte copy instead of a SQLite transaction. A small per-day
+ * index answers today's total meanwhile, and the records are folded into water_logs in one
+ * transaction per batch: once half the journal is used, once the oldest record is
+ * {@link #FOLD_INTERVAL_MILLIS} old, and before any read that needs them.
+ *
+ * File layout, big-endian: a 32-byte header ("H2OJ", version, record size, capacity), then
+ * records of long sequence number, int user id, int epoch day, long logged at (or
+ * {@link DatabaseHelper#NO_TIME}), int amount and the CRC32 of those 28 bytes.
+ *
+ * Records are written from slot 0 with consecutive sequence numbers, and after a fold writing
+ * starts at slot 0 again without clearing the old ones. Replay on open reads slots while the
+ * CRC holds and the numbers run on, and skips records up to intake_journal.folded_seq, which
+ * each fold commits together with its rows. A record torn by a crash ends the replay; a crash
+ * between a fold's commit and the restart at slot 0 folds nothing twice.
+ *
+ * Records reach the page cache, not the disk: like SQLite with synchronous=NORMAL they survive
+ * the app being killed, while a power cut can lose the latest ones.
+ */
+final class IntakeJournal implements IntakeStore {
+
+    static final String FILE_NAME = "intake.journal";
+    static final int DEFAULT_CAPACITY = 32 * 1024; // records, 1 MiB
+    static final long FOLD_INTERVAL_MILLIS = 10 * 60 * 1000;
+
+    private static final int MAGIC = 0x48324F4A; // "H2OJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final int CRC_OFFSET = RECORD_SIZE - 4;
+    private static final int FOLD_BATCH = 5000;
+
+    private static final String PREFS = "storage";
+    private static final String KEY_ENABLED = "intake_journal";
+
+    private final DatabaseHelper helper;
+    private final Executor executor; // runs the background folds
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int capacity;
+
+    private final CRC32 crc = new CRC32();
+    private final byte[] record = new byte[RECORD_SIZE];
+    private final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+
+    // Pending {total, rows} per user and day; a handful of entries between folds
+    private final Map<Long, int[]> pendingByDay = new HashMap<>();
+
+    // One fold batch, read back from the journal
+    private final int[] batchUsers = new int[FOLD_BATCH];
+    private final int[] batchDays = new int[FOLD_BATCH];
+    private final long[] batchLoggedAt = new long[FOLD_BATCH];
+    private final int[] batchAmounts = new int[FOLD_BATCH];
+
+    private int firstPendingSlot; // slots before it are folded, waiting to be overwritten
+    private int nextSlot;
+    private long nextSeq;
+    private long firstPendingMillis;
+    private boolean foldQueued;
+    private boolean closed;
+
+    private final Runnable foldTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (IntakeJournal.this) {
+                foldQueued = false;
+                if (!closed) {
+                    foldLocked();
+                }
+            }
+        }
+    };
+
+    /**
+     * Maps {@code path}, creating it with room for {@code capacity} records if needed, and
+     * replays every record SQLite does not have yet. An existing journal keeps its own
+     * capacity. Does file I/O and a query; call from a background thread.
+     */
+    static IntakeJournal open(File path, DatabaseHelper helper, int capacity, Executor executor) throws IOException {
+        return new IntakeJournal(path, helper, capacity, executor);
+    }
+
+    private IntakeJournal(File path, DatabaseHelper helper, int capacity, Executor executor) throws IOException {
+        this.helper = helper;
+        this.executor = executor;
+        this.file = new RandomAccessFile(path, "rw");
+        try {
+            boolean valid = false;
+            if (file.length() >= HEADER_SIZE) {
+                valid = file.readInt() == MAGIC && file.readInt() == VERSION && file.readInt() == RECORD_SIZE;
+                int stored = file.readInt();
+                if (valid && stored > 0 && file.length() == HEADER_SIZE + (long) stored * RECORD_SIZE) {
+                    capacity = stored;
+                } else {
+                    valid = false;
+                }
+            }
+            if (!valid) {
+                // New, or not a journal we can read: start empty
+                file.setLength(0);
+                file.setLength(HEADER_SIZE + (long) capacity * RECORD_SIZE);
+            }
+            this.capacity = capacity;
+            this.map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+            if (!valid) {
+                map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE).putInt(12, capacity);
+            }
+            replay(helper.getFoldedJournalSeq());
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void replay(long foldedSeq) {
+        long expected = 0; // sequence numbers start at 1
+        int slot = 0;
+        for (; slot < capacity; slot++) {
+            if (!readRecord(slot)) {
+                break;
+            }
+            long seq = recordBuffer.getLong(0);
+            if (seq <= 0 || (expected != 0 && seq != expected)) {
+                break; // a fold restarted here; what follows is older
+            }
+            expected = seq + 1;
+            if (seq <= foldedSeq) {
+                firstPendingSlot = slot + 1;
+            } else {
+                addPending(recordBuffer.getInt(8), recordBuffer.getInt(12), recordBuffer.getInt(24));
+            }
+        }
+        nextSlot = slot;
+        nextSeq = Math.max(expected, foldedSeq + 1);
+        firstPendingMillis = System.currentTimeMillis();
+        if (firstPendingSlot == nextSlot) {
+            firstPendingSlot = nextSlot = 0;
+        }
+    }
+
+    // ====================== IntakeStore ====================== //
+
+    @Override
+    public synchronized boolean append(int userId, int day, long loggedAt, int amount) {
+        if (closed) {
+            throw new IllegalStateException("Intake journal is closed");
+        }
+        if (nextSlot == capacity) {
+            // Only when folds can't keep up; this writer pays for one
+            foldLocked();
+        }
+        recordBuffer.clear();
+        recordBuffer.putLong(nextSeq).putInt(userId).putInt(day).putLong(loggedAt).putInt(amount);
+        crc.reset();
+        crc.update(record, 0, CRC_OFFSET);
+        recordBuffer.putInt((int) crc.getValue());
+        map.position(HEADER_SIZE + nextSlot * RECORD_SIZE);
+        map.put(record);
+
+        if (firstPendingSlot == nextSlot) {
+            firstPendingMillis = System.currentTimeMillis();
+        }
+        nextSlot++;
+        nextSeq++;
+        addPending(userId, day, amount);
+
+        if (!foldQueued && (nextSlot - firstPendingSlot >= capacity / 2
+                || System.currentTimeMillis() - firstPendingMillis >= FOLD_INTERVAL_MILLIS)) {
+            foldQueued = true;
+            try {
+                executor.execute(foldTask);
+            } catch (RuntimeException e) {
+                // Not queued: let a later append try again; a full journal folds inline anyway
+                foldQueued = false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized int pendingTotal(int userId, int day) {
+        int[] pending = pendingByDay.get(key(userId, day));
+        return pending == null ? 0 : pending[0];
+    }
+
+    @Override
+    public synchronized int fold() {
+        return closed ? 0 : foldLocked();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            foldLocked();
+            map.force();
+        } finally {
+            closed = true;
+            try {
+                file.close();
+            } catch (IOException e) {
+                // Nothing is left to write; the mapping stays valid until collected
+            }
+        }
+    }
+
+    // Records not yet folded
+    synchronized int getPendingCount() {
+        return nextSlot - firstPendingSlot;
+    }
+
+    // Every user with a record not yet folded
+    synchronized int[] getPendingUsers() {
+        int[] users = new int[pendingByDay.size()];
+        int count = 0;
+        for (Long key : pendingByDay.keySet()) {
+            int userId = (int) (key >> 32);
+            boolean seen = false;
+            for (int i = 0; i < count && !seen; i++) {
+                seen = users[i] == userId;
+            }
+            if (!seen) {
+                users[count++] = userId;
+            }
+        }
+        return Arrays.copyOf(users, count);
+    }
+
+    // ====================== Folding ====================== //
+
+    private int foldLocked() {
+        int folded = 0;
+        while (firstPendingSlot < nextSlot) {
+            int count = Math.min(FOLD_BATCH, nextSlot - firstPendingSlot);
+            long lastSeq = 0;
+            for (int i = 0; i < count; i++) {
+                readRecord(firstPendingSlot + i);
+                lastSeq = recordBuffer.getLong(0);
+                batchUsers[i] = recordBuffer.getInt(8);
+                batchDays[i] = recordBuffer.getInt(12);
+                batchLoggedAt[i] = recordBuffer.getLong(16);
+                batchAmounts[i] = recordBuffer.getInt(24);
+            }
+            helper.foldJournal(batchUsers, batchDays, batchLoggedAt, batchAmounts, count, lastSeq);
+
+            // Committed: these rows are SQLite's now
+            for (int i = 0; i < count; i++) {
+                removePending(batchUsers[i], batchDays[i], batchAmounts[i]);
+            }
+            firstPendingSlot += count;
+            folded += count;
+        }
+        firstPendingSlot = nextSlot = 0;
+        return folded;
+    }
+
+    // Copies the slot into record; false when its CRC doesn't match
+    private boolean readRecord(int slot) {
+        map.position(HEADER_SIZE + slot * RECORD_SIZE);
+        map.get(record);
+        crc.reset();
+        crc.update(record, 0, CRC_OFFSET);
+        return recordBuffer.getInt(CRC_OFFSET) == (int) crc.getValue();
+    }
+
+    private void addPending(int userId, int day, int amount) {
+        Long key = key(userId, day);
+        int[] pending = pendingByDay.get(key);
+        if (pending == null) {
+            pending = new int[2];
+            pendingByDay.put(key, pending);
+        }
+        pending[0] += amount;
+        pending[1]++;
+    }
+
+    private void removePending(int userId, int day, int amount) {
+        Long key = key(userId, day);
+        int[] pending = pendingByDay.get(key);
+        pending[0] -= amount;
+        if (--pending[1] == 0) {
+            pendingByDay.remove(key);
+        }
+    }
+
+    private static Long key(int userId, int day) {
+        return (long) userId << 32 | (day & 0xFFFFFFFFL);
+    }
+
+    // ====================== Setup ====================== //
+
+    static boolean isEnabled(Context context) {
+        return prefs(context).getBoolean(KEY_ENABLED, false);
+    }
+
+    // Takes effect the next time the process starts
+    static void setEnabled(Context context, boolean enabled) {
+        prefs(context).edit().putBoolean(KEY_ENABLED, enabled).apply();
+    }
+
+    /**
+     * Installs the journal as the helper's intake store when it is enabled, folding whatever
+     * a previous process left in it; when it has been disabled, folds any leftover journal
+     * and deletes it. Call once per process, from a background thread, before reading intake.
+     *
+     * Nothing announced the replayed drinks in this process, so each of their users is
+     * reported as changed: a cache or screen that read before the fold reads again.
+     */
+    static void attach(Context context, final DatabaseHelper helper) throws IOException {
+        File path = new File(context.getFilesDir(), FILE_NAME);
+        if (!isEnabled(context) && !path.exists()) {
+            return;
+        }
+        IntakeJournal journal = open(path, helper, DEFAULT_CAPACITY, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                WaterRepository.runInBackground(command);
+            }
+        });
+        int[] replayed = journal.getPendingUsers();
+        journal.fold();
+        for (int userId : replayed) {
+            helper.getInvalidationTracker().userChanged(userId);
+        }
+        if (isEnabled(context)) {
+            helper.setIntakeStore(journal);
+        } else {
+            journal.close();
+            path.delete();
+        }
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.h2obuddy;
+
+/**
+ * Where {@link DatabaseHelper} writes single drinks. By default that is SQLite itself; an
+ * {@link IntakeJournal} instead appends them to a memory-mapped file and moves them into
+ * SQLite in batches.
+ *
+ * Rows held by a store but not yet in SQLite are visible through {@link #pendingTotal}; every
+ * other read calls {@link #fold()} first, so it sees them in water_logs. Implementations fold
+ * while holding their own monitor, so a caller holding it sees each drink exactly once;
+ * DatabaseHelper also appends and publishes each drink while holding it.
+ */
+interface IntakeStore {
+
+    // Records one drink; loggedAt is DatabaseHelper.NO_TIME when only the day is known
+    boolean append(int userId, int day, long loggedAt, int amount);
+
+    // Intake for the day that has been appended but is not in water_logs yet
+    int pendingTotal(int userId, int day);
+
+    // Moves everything pending into water_logs; returns the number of rows moved
+    int fold();
+
+    // Folds what is left and releases the store
+    void close();
+}
@@ -0,0 +1,156 @@
+package com.example.h2obuddy;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LongSparseArray;
+import android.util.SparseBooleanArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Publishes what {@link DatabaseHelper} writes change, so screens can update in place instead of
+ * re-reading everything when they open.
+ *
+ * Writes to water_logs are reported as deltas per user and day ("today +250"); writes to users
+ * as the id of the user whose row changed. Changes are coalesced and delivered to observers on
+ * the main thread in one batch, however many writes happened in between. Immediate observers
+ * see every change on the writing thread, right after it commits, for caches that must never
+ * lag behind the database.
+ */
+public final class InvalidationTracker {
+
+    // Scope for observers of every user, and the id published when a write was keyed by email
+    public static final int ALL_USERS = -1;
+
+    public interface Observer {
+        // Net amount written to water_logs for userId on day since the last call
+        void onIntakeChanged(int userId, int day, int delta);
+
+        // userId's row in users changed; ALL_USERS when it isn't known which
+        void onUserChanged(int userId);
+    }
+
+    private static final class Registration {
+        final int userId;
+        final Observer observer;
+
+        Registration(int userId, Observer observer) {
+            this.userId = userId;
+            this.observer = observer;
+        }
+
+        boolean wants(int changedUserId) {
+            return userId == ALL_USERS || changedUserId == ALL_USERS || userId == changedUserId;
+        }
+    }
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final List<Registration> observers = new ArrayList<>();
+    private final List<Observer> immediateObservers = new CopyOnWriteArrayList<>();
+
+    // Undelivered changes; intake keyed by (userId << 32 | day)
+    private LongSparseArray<int[]> pendingIntake = new LongSparseArray<>();
+    private SparseBooleanArray pendingUsers = new SparseBooleanArray();
+    private boolean deliveryPosted;
+
+    private final Runnable deliver = new Runnable() {
+        @Override
+        public void run() {
+            deliverPending();
+        }
+    };
+
+    // Main thread only; userId limits delivery to that user's changes, or ALL_USERS for every change
+    public void addObserver(int userId, Observer observer) {
+        observers.add(new Registration(userId, observer));
+    }
+
+    public void removeObserver(Observer observer) {
+        for (int i = observers.size() - 1; i >= 0; i--) {
+            if (observers.get(i).observer == observer) {
+                observers.remove(i);
+            }
+        }
+    }
+
+    // Called on the writing thread for every change, without coalescing
+    void addImmediateObserver(Observer observer) {
+        immediateObservers.add(observer);
+    }
+
+    void intakeChanged(int userId, int day, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        for (Observer observer : immediateObservers) {
+            observer.onIntakeChanged(userId, day, delta);
+        }
+        synchronized (this) {
+            long key = ((long) userId << 32) | (day & 0xffffffffL);
+            int[] sum = pendingIntake.get(key);
+            if (sum == null) {
+                pendingIntake.put(key, new int[]{delta});
+            } else {
+                sum[0] += delta;
+            }
+            postDelivery();
+        }
+    }
+
+    void userChanged(int userId) {
+        for (Observer observer : immediateObservers) {
+            observer.onUserChanged(userId);
+        }
+        synchronized (this) {
+            pendingUsers.put(userId, true);
+            postDelivery();
+        }
+    }
+
+    // Caller holds the lock
+    private void postDelivery() {
+        if (!deliveryPosted) {
+            deliveryPosted = true;
+            main.post(deliver);
+        }
+    }
+
+    private void deliverPending() {
+        LongSparseArray<int[]> intake;
+        SparseBooleanArray users;
+        synchronized (this) {
+            intake = pendingIntake;
+            users = pendingUsers;
+            pendingIntake = new LongSparseArray<>();
+            pendingUsers = new SparseBooleanArray();
+            deliveryPosted = false;
+        }
+
+        // Copied so observers may unregister while being notified
+        List<Registration> current = new ArrayList<>(observers);
+        for (int i = 0; i < users.size(); i++) {
+            int userId = users.keyAt(i);
+            for (Registration registration : current) {
+                if (registration.wants(userId)) {
+                    registration.observer.onUserChanged(userId);
+                }
+            }
+        }
+        for (int i = 0; i < intake.size(); i++) {
+            long key = intake.keyAt(i);
+            int delta = intake.valueAt(i)[0];
+            if (delta == 0) {
+                continue;
+            }
+            int userId = (int) (key >> 32);
+            int day = (int) key;
+            for (Registration registration : current) {
+                if (registration.wants(userId)) {
+                    registration.observer.onIntakeChanged(userId, day, delta);
+                }
+            }
+        }
+    }
+}
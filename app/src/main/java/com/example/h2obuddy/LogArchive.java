@@ -0,0 +1,476 @@
+package com.example.h2obuddy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * The two export formats, encoded and decoded through one fixed-size buffer so memory stays
+ * flat however many rows pass through.
+ *
+ * CSV, for spreadsheets and analysis scripts:
+ * <pre>
+ * # h2obuddy 2
+ * settings,&lt;daily goal&gt;,&lt;reminder interval&gt;,&lt;wake h&gt;,&lt;wake m&gt;,&lt;bed h&gt;,&lt;bed m&gt;
+ * log,&lt;yyyy-MM-dd&gt;,&lt;logged at, epoch millis, or empty&gt;,&lt;amount&gt;
+ * compacted,&lt;yyyy-MM-dd&gt;,&lt;total&gt;
+ * </pre>
+ * Binary, for moving history between devices: "H2OB", a version int, six settings ints, then
+ * 16-byte records (int epoch day, long logged at, int amount) and a trailer of {@link #END},
+ * the record count and a CRC32 of the records. All big-endian. Logged at is Long.MIN_VALUE
+ * for an untimed drink and Long.MIN_VALUE + 1 for a compacted total.
+ *
+ * A compacted total is the one row LogCompactor left for a day. Version 1 had no such rows
+ * and is still read.
+ */
+final class LogArchive {
+
+    static final int CSV = 0;
+    static final int BINARY = 1;
+
+    // Log row without a time of day, as the visitor and writer see it
+    static final long NO_TIME = DatabaseHelper.NO_TIME;
+    // The same in a binary record; part of the file format, so it stays put if NO_TIME moves
+    private static final long RECORD_NO_TIME = Long.MIN_VALUE;
+    private static final long RECORD_COMPACTED = Long.MIN_VALUE + 1;
+
+    static final int VERSION = 2;
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] CSV_HEADER = ascii("# h2obuddy "); // then the version
+    private static final byte[] CSV_SETTINGS = ascii("settings,");
+    private static final byte[] CSV_LOG = ascii("log,");
+    private static final byte[] CSV_COMPACTED = ascii("compacted,");
+    private static final int MAGIC = 0x48324F42; // "H2OB"
+    private static final int END = Integer.MIN_VALUE; // never a valid epoch day here
+    private static final int RECORD_SIZE = 16;
+    private static final int MAX_LINE = 256;
+
+    // Receives decoded content in file order
+    interface Visitor {
+        void onSettings(int dailyGoal, int reminderInterval, int wakeUpHour, int wakeUpMinute,
+                        int bedTimeHour, int bedTimeMinute) throws IOException;
+
+        // loggedAt is NO_TIME when compacted is set
+        void onLog(int day, long loggedAt, int amount, boolean compacted) throws IOException;
+
+        // A CSV line that could not be parsed; reading goes on with the next line
+        void onMalformed(int lineNumber);
+    }
+
+    private LogArchive() {
+    }
+
+    private static byte[] ascii(String text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+        return bytes;
+    }
+
+    // ====================== Writing ====================== //
+
+    /**
+     * Encodes into a heap buffer and hands it to the channel whenever it fills. Write the
+     * settings first, then every log row, then call {@link #finish()}.
+     */
+    static final class Writer {
+
+        private final WritableByteChannel channel;
+        private final int format;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        private final char[] date = new char[10];
+        private final byte[] digits = new byte[19];
+        private long rows;
+
+        Writer(WritableByteChannel channel, int format) throws IOException {
+            if (format != CSV && format != BINARY) {
+                throw new IllegalArgumentException("Unknown format " + format);
+            }
+            this.channel = channel;
+            this.format = format;
+            if (format == CSV) {
+                buffer.put(CSV_HEADER);
+                putDecimal(VERSION).put((byte) '\n');
+            } else {
+                buffer.putInt(MAGIC).putInt(VERSION);
+            }
+        }
+
+        void writeSettings(int dailyGoal, int reminderInterval, int wakeUpHour, int wakeUpMinute,
+                           int bedTimeHour, int bedTimeMinute) throws IOException {
+            ensureRoom(MAX_LINE);
+            if (format == CSV) {
+                buffer.put(CSV_SETTINGS);
+                putDecimal(dailyGoal).put((byte) ',');
+                putDecimal(reminderInterval).put((byte) ',');
+                putDecimal(wakeUpHour).put((byte) ',');
+                putDecimal(wakeUpMinute).put((byte) ',');
+                putDecimal(bedTimeHour).put((byte) ',');
+                putDecimal(bedTimeMinute).put((byte) '\n');
+            } else {
+                buffer.putInt(dailyGoal).putInt(reminderInterval).putInt(wakeUpHour).putInt(wakeUpMinute)
+                        .putInt(bedTimeHour).putInt(bedTimeMinute);
+            }
+        }
+
+        // A compacted total has no time of day; loggedAt is ignored
+        void writeLog(int day, long loggedAt, int amount, boolean compacted) throws IOException {
+            ensureRoom(MAX_LINE);
+            rows++;
+            if (format == CSV) {
+                buffer.put(compacted ? CSV_COMPACTED : CSV_LOG);
+                EpochDays.toDate(day, date);
+                for (char c : date) {
+                    buffer.put((byte) c);
+                }
+                buffer.put((byte) ',');
+                if (!compacted) {
+                    if (loggedAt != NO_TIME) {
+                        putDecimal(loggedAt);
+                    }
+                    buffer.put((byte) ',');
+                }
+                putDecimal(amount).put((byte) '\n');
+            } else {
+                int start = buffer.position();
+                long time = compacted ? RECORD_COMPACTED : loggedAt == NO_TIME ? RECORD_NO_TIME : loggedAt;
+                buffer.putInt(day).putLong(time).putInt(amount);
+                crc.update(buffer.array(), start, RECORD_SIZE);
+            }
+        }
+
+        // Writes the trailer, if any, and everything still buffered
+        void finish() throws IOException {
+            if (format == BINARY) {
+                ensureRoom(RECORD_SIZE);
+                buffer.putInt(END).putLong(rows).putInt((int) crc.getValue());
+            }
+            drain();
+        }
+
+        long getRowCount() {
+            return rows;
+        }
+
+        private void ensureRoom(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        // ASCII digits without going through a String: filled backwards into a scratch array
+        private ByteBuffer putDecimal(long value) {
+            if (value < 0) {
+                buffer.put((byte) '-');
+                value = -value;
+            }
+            int start = digits.length;
+            do {
+                digits[--start] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            return buffer.put(digits, start, digits.length - start);
+        }
+    }
+
+    // ====================== Reading ====================== //
+
+    /**
+     * Decodes either format, told apart by its first bytes, and passes everything to the
+     * visitor. A binary file must end with an intact trailer; CSV lines that don't parse are
+     * reported and skipped. Throws if the content is neither format.
+     */
+    static void read(ReadableByteChannel channel, Visitor visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip(); // empty, as fill() expects
+        fill(channel, buffer, 4);
+        if (buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == MAGIC) {
+            readBinary(channel, buffer, visitor);
+        } else if (startsWith(buffer, CSV_HEADER)) {
+            readCsv(channel, buffer, visitor);
+        } else {
+            throw new IOException("Not an H2O Buddy export");
+        }
+    }
+
+    // Reads until at least minBytes are buffered or the channel ends; leaves the buffer flipped
+    private static boolean fill(ReadableByteChannel channel, ByteBuffer buffer, int minBytes) throws IOException {
+        buffer.compact();
+        try {
+            while (buffer.position() < minBytes) {
+                if (channel.read(buffer) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] prefix) {
+        if (buffer.remaining() < 4) {
+            return false;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (buffer.get(buffer.position() + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readBinary(ReadableByteChannel channel, ByteBuffer buffer, Visitor visitor) throws IOException {
+        if (!fill(channel, buffer, 8 + 24)) {
+            throw new EOFException("Export ends inside its header");
+        }
+        buffer.getInt(); // magic
+        int version = buffer.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported export version " + version);
+        }
+        visitor.onSettings(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                buffer.getInt(), buffer.getInt());
+
+        CRC32 crc = new CRC32();
+        long rows = 0;
+        while (true) {
+            if (buffer.remaining() < RECORD_SIZE && !fill(channel, buffer, RECORD_SIZE)) {
+                throw new EOFException("Export is truncated after " + rows + " rows");
+            }
+            int start = buffer.position();
+            int day = buffer.getInt();
+            long loggedAt = buffer.getLong();
+            int amount = buffer.getInt();
+            if (day == END) {
+                if (loggedAt != rows || amount != (int) crc.getValue()) {
+                    throw new IOException("Export is corrupt: trailer does not match its " + rows + " rows");
+                }
+                return;
+            }
+            crc.update(buffer.array(), start, RECORD_SIZE);
+            rows++;
+            if (loggedAt == RECORD_COMPACTED) {
+                visitor.onLog(day, NO_TIME, amount, true);
+            } else {
+                visitor.onLog(day, loggedAt == RECORD_NO_TIME ? NO_TIME : loggedAt, amount, false);
+            }
+        }
+    }
+
+    private static void readCsv(ReadableByteChannel channel, ByteBuffer buffer, Visitor visitor) throws IOException {
+        CsvLine line = new CsvLine(buffer.array());
+        int lineNumber = 0;
+        boolean ended = false;
+        while (true) {
+            int end = indexOf(buffer, (byte) '\n');
+            if (end < 0) {
+                if (ended) {
+                    end = buffer.limit(); // last line without a newline
+                    if (end == buffer.position()) {
+                        return;
+                    }
+                } else {
+                    if (buffer.remaining() >= MAX_LINE) {
+                        throw new IOException("Line " + (lineNumber + 1) + " is too long");
+                    }
+                    ended = !fill(channel, buffer, buffer.remaining() + 1);
+                    continue;
+                }
+            }
+            lineNumber++;
+            line.reset(buffer.position(), end);
+            buffer.position(Math.min(end + 1, buffer.limit()));
+
+            if (lineNumber == 1) {
+                int version = line.consume(CSV_HEADER) ? line.intNumber(-1) : 0;
+                if (line.failed() || !line.atEnd() || version < 1 || version > VERSION) {
+                    throw new IOException("Unsupported export header");
+                }
+                continue;
+            }
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (!parseCsvLine(line, visitor)) {
+                visitor.onMalformed(lineNumber);
+            }
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value) {
+        byte[] array = buffer.array();
+        for (int i = buffer.position(), end = buffer.limit(); i < end; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean parseCsvLine(CsvLine line, Visitor visitor) throws IOException {
+        if (line.consume(CSV_LOG)) {
+            int year = line.number(4, '-');
+            int month = line.number(2, '-');
+            int dayOfMonth = line.number(2, ',');
+            long loggedAt = line.peek(',') ? NO_TIME : line.longNumber(',');
+            if (loggedAt == NO_TIME && !line.skip(',')) {
+                return false;
+            }
+            int amount = line.intNumber(-1);
+            if (line.failed() || !line.atEnd() || !EpochDays.isValid(year, month, dayOfMonth)) {
+                return false;
+            }
+            visitor.onLog(EpochDays.of(year, month, dayOfMonth), loggedAt, amount, false);
+            return true;
+        }
+        if (line.consume(CSV_COMPACTED)) {
+            int year = line.number(4, '-');
+            int month = line.number(2, '-');
+            int dayOfMonth = line.number(2, ',');
+            int amount = line.intNumber(-1);
+            if (line.failed() || !line.atEnd() || !EpochDays.isValid(year, month, dayOfMonth)) {
+                return false;
+            }
+            visitor.onLog(EpochDays.of(year, month, dayOfMonth), NO_TIME, amount, true);
+            return true;
+        }
+        if (line.consume(CSV_SETTINGS)) {
+            int dailyGoal = line.intNumber(',');
+            int reminderInterval = line.intNumber(',');
+            int wakeUpHour = line.intNumber(',');
+            int wakeUpMinute = line.intNumber(',');
+            int bedTimeHour = line.intNumber(',');
+            int bedTimeMinute = line.intNumber(-1);
+            if (line.failed() || !line.atEnd()) {
+                return false;
+            }
+            visitor.onSettings(dailyGoal, reminderInterval, wakeUpHour, wakeUpMinute, bedTimeHour, bedTimeMinute);
+            return true;
+        }
+        return false;
+    }
+
+    // Cursor over one line of the read buffer; a parse error sets failed() instead of throwing
+    private static final class CsvLine {
+        private final byte[] bytes;
+        private int position;
+        private int end;
+        private boolean failed;
+
+        CsvLine(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        void reset(int start, int end) {
+            this.position = start;
+            this.end = end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+            this.failed = false;
+        }
+
+        boolean isEmpty() {
+            return position == end;
+        }
+
+        boolean atEnd() {
+            return position == end;
+        }
+
+        boolean failed() {
+            return failed;
+        }
+
+        boolean consume(byte[] prefix) {
+            if (end - position < prefix.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (bytes[position + i] != prefix[i]) {
+                    return false;
+                }
+            }
+            position += prefix.length;
+            return true;
+        }
+
+        boolean peek(char c) {
+            return position < end && bytes[position] == c;
+        }
+
+        boolean skip(char c) {
+            if (peek(c)) {
+                position++;
+                return true;
+            }
+            failed = true;
+            return false;
+        }
+
+        // Exactly digits digits, then the separator
+        int number(int digits, char separator) {
+            if (end - position < digits) {
+                failed = true;
+                return 0;
+            }
+            int value = 0;
+            for (int i = 0; i < digits; i++) {
+                int digit = bytes[position++] - '0';
+                if (digit < 0 || digit > 9) {
+                    failed = true;
+                    return 0;
+                }
+                value = value * 10 + digit;
+            }
+            skip(separator);
+            return value;
+        }
+
+        int intNumber(int separator) {
+            long value = longNumber(separator);
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                failed = true;
+                return 0;
+            }
+            return (int) value;
+        }
+
+        // Optionally signed decimal, then the separator; -1 means the number ends the line
+        long longNumber(int separator) {
+            boolean negative = peek('-');
+            if (negative) {
+                position++;
+            }
+            int start = position;
+            long value = 0;
+            while (position < end && bytes[position] >= '0' && bytes[position] <= '9') {
+                if (position - start >= 18) {
+                    failed = true; // more digits than a long holds safely
+                    return 0;
+                }
+                value = value * 10 + (bytes[position++] - '0');
+            }
+            if (position == start) {
+                failed = true;
+                return 0;
+            }
+            if (separator >= 0) {
+                skip((char) separator);
+            }
+            return negative ? -value : value;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Background maintenance for water_logs: collapses old days into one row per user per day,
+ * optionally drops logs past a retention window, then returns freed pages to the file system.
+ *
+ * Work is done in small chunks, each its own transaction, so the write lock is never held for
+ * long and intake writes can interleave. The app runs it at most once a day, through
+ * {@link #runIfDue}, with the retention window picked in Settings.
+ */
+public class LogCompactor {
+
+    static final int DEFAULT_HORIZON_DAYS = 90;
+    static final int NO_RETENTION = 0;
+    static final long RUN_INTERVAL_MILLIS = 24 * 60 * 60 * 1000;
+
+    private static final int DAYS_PER_CHUNK = 200;
+    private static final int ROWS_PER_CHUNK = 2000;
+    private static final int PAGES_PER_CHUNK = 256;
+
+    private static final String PREFS = "storage";
+    private static final String KEY_RETENTION_DAYS = "retention_days";
+    private static final String KEY_LAST_RUN = "compacted_at";
+
+    private final DatabaseHelper helper;
+    private final int horizonDays;
+    private final int retentionDays;
+
+    /**
+     * @param horizonDays   days older than this are compacted
+     * @param retentionDays logs older than this are deleted; {@link #NO_RETENTION} keeps everything
+     */
+    public LogCompactor(DatabaseHelper helper, int horizonDays, int retentionDays) {
+        this.helper = helper;
+        this.horizonDays = horizonDays;
+        this.retentionDays = retentionDays;
+    }
+
+    // Blocking; run on a background thread. Returns the number of days compacted.
+    public int run() {
+        int today = EpochDays.today();
+
+        if (retentionDays != NO_RETENTION) {
+            DatabaseHelper.MaintenanceCursor expired = new DatabaseHelper.MaintenanceCursor();
+            while (helper.deleteLogsBefore(today - retentionDays, ROWS_PER_CHUNK, expired) > 0) {
+                Thread.yield();
+            }
+        }
+
+        DatabaseHelper.MaintenanceCursor candidates = new DatabaseHelper.MaintenanceCursor();
+        int compacted = 0;
+        int chunk;
+        while ((chunk = helper.compactLogsBefore(today - horizonDays, DAYS_PER_CHUNK, candidates)) > 0) {
+            compacted += chunk;
+            Thread.yield();
+        }
+
+        helper.reclaimSpace(PAGES_PER_CHUNK);
+        return compacted;
+    }
+
+    // ====================== Scheduling ====================== //
+
+    static int getRetentionDays(Context context) {
+        return prefs(context).getInt(KEY_RETENTION_DAYS, NO_RETENTION);
+    }
+
+    // Also makes the next runIfDue() run, so a shorter window applies on the next start
+    static void setRetentionDays(Context context, int retentionDays) {
+        prefs(context).edit().putInt(KEY_RETENTION_DAYS, retentionDays).remove(KEY_LAST_RUN).apply();
+    }
+
+    /**
+     * Runs a compactor with the saved retention window unless one already ran in the last
+     * {@link #RUN_INTERVAL_MILLIS}. Blocking; run on a background thread. Returns whether it ran.
+     */
+    static boolean runIfDue(Context context, DatabaseHelper helper) {
+        SharedPreferences prefs = prefs(context);
+        long now = System.currentTimeMillis();
+        long lastRun = prefs.getLong(KEY_LAST_RUN, 0);
+        // A clock set back makes it due rather than postponing it indefinitely
+        if (lastRun <= now && now - lastRun < RUN_INTERVAL_MILLIS) {
+            return false;
+        }
+        new LogCompactor(helper, DEFAULT_HORIZON_DAYS, getRetentionDays(context)).run();
+        prefs.edit().putLong(KEY_LAST_RUN, now).apply();
+        return true;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.h2obuddy;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Moves one user's settings and full log history in and out of {@link LogArchive} files.
+ *
+ * Export reads the logs {@link #DAYS_PER_CHUNK} days per query and import writes
+ * {@link #ROWS_PER_BATCH} rows per transaction, so memory stays flat and the write lock is
+ * never held for long whatever the size of the history. An import that stops half way can
+ * simply be run again: rows already in the database are skipped. Days LogCompactor collapsed
+ * travel marked as such and are matched by day rather than drink by drink (see
+ * {@link DatabaseHelper#importWaterLogs}).
+ */
+public class LogTransfer {
+
+    static final int DAYS_PER_CHUNK = 64;
+    static final int ROWS_PER_BATCH = 5000;
+
+    // Anything outside these is a corrupt or hand-edited row, not a drink
+    static final int MAX_AMOUNT = 5000; // ml in one entry
+    static final int MAX_DAY_TOTAL = 100_000; // ml in one compacted day
+    static final int MAX_DAILY_GOAL = 20000;
+    static final int MAX_REMINDER_INTERVAL = 24 * 60;
+
+    // What an import did with each row of the file
+    public static final class Result {
+        public final long imported;
+        public final long duplicates; // already in the database, possibly compacted
+        public final long rejected; // malformed or failed validation
+        public final boolean settingsApplied;
+
+        Result(long imported, long duplicates, long rejected, boolean settingsApplied) {
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.rejected = rejected;
+            this.settingsApplied = settingsApplied;
+        }
+    }
+
+    private final DatabaseHelper helper;
+
+    public LogTransfer(DatabaseHelper helper) {
+        this.helper = helper;
+    }
+
+    /**
+     * Writes the user's settings and every log row, oldest first, in {@link LogArchive#CSV}
+     * or {@link LogArchive#BINARY}. Blocking; run on a background thread. The channel is left
+     * open. Returns the number of rows written.
+     */
+    public long export(int userId, int format, WritableByteChannel channel) throws IOException {
+        UserProfile profile = helper.getUserProfile(userId);
+        if (profile == null) {
+            throw new IOException("No user " + userId);
+        }
+        final LogArchive.Writer writer = new LogArchive.Writer(channel, format);
+        writer.writeSettings(profile.dailyGoal, profile.reminderInterval, profile.wakeUpHour,
+                profile.wakeUpMinute, profile.bedTimeHour, profile.bedTimeMinute);
+
+        int[] range = helper.getLogDayRange(userId);
+        if (range != null) {
+            DatabaseHelper.LogVisitor visitor = new DatabaseHelper.LogVisitor() {
+                @Override
+                public void onLog(int day, long loggedAt, int amount, boolean compacted) throws IOException {
+                    writer.writeLog(day, loggedAt, amount, compacted);
+                }
+            };
+            for (int from = range[0]; from <= range[1]; from += DAYS_PER_CHUNK) {
+                helper.readLogs(userId, from, from + DAYS_PER_CHUNK, visitor);
+            }
+        }
+        writer.finish();
+        return writer.getRowCount();
+    }
+
+    /**
+     * Reads an export of either format into {@code userId}'s history, validating every row.
+     * Settings from the file replace the user's own only if {@code applySettings} is set.
+     * Blocking; run on a background thread. Throws on a file that is not an export or is
+     * truncated; batches before the failure stay committed.
+     */
+    public Result importInto(int userId, ReadableByteChannel channel, boolean applySettings) throws IOException {
+        Importer importer = new Importer(userId, applySettings, helper.getLastLogId(), EpochDays.today());
+        LogArchive.read(channel, importer);
+        importer.flush();
+        return new Result(importer.imported, importer.read - importer.imported, importer.rejected,
+                importer.settingsApplied);
+    }
+
+    // Collects valid rows into one batch at a time
+    private final class Importer implements LogArchive.Visitor {
+        private final int userId;
+        private final boolean applySettings;
+        private final long lastLogId;
+        private final int latestDay;
+
+        private final int[] days = new int[ROWS_PER_BATCH];
+        private final long[] loggedAt = new long[ROWS_PER_BATCH];
+        private final int[] amounts = new int[ROWS_PER_BATCH];
+        private final boolean[] compacted = new boolean[ROWS_PER_BATCH];
+        private int count;
+
+        long read; // valid rows seen
+        long imported;
+        long rejected;
+        boolean settingsApplied;
+
+        Importer(int userId, boolean applySettings, long lastLogId, int today) {
+            this.userId = userId;
+            this.applySettings = applySettings;
+            this.lastLogId = lastLogId;
+            this.latestDay = today + 1; // an export from a device a time zone ahead
+        }
+
+        @Override
+        public void onSettings(int dailyGoal, int reminderInterval, int wakeUpHour, int wakeUpMinute,
+                               int bedTimeHour, int bedTimeMinute) {
+            if (!applySettings) {
+                return;
+            }
+            if (dailyGoal < 1 || dailyGoal > MAX_DAILY_GOAL
+                    || reminderInterval < 1 || reminderInterval > MAX_REMINDER_INTERVAL
+                    || !isTime(wakeUpHour, wakeUpMinute) || !isTime(bedTimeHour, bedTimeMinute)) {
+                return;
+            }
+            boolean saved = helper.updateUserSettings(userId, dailyGoal, reminderInterval);
+            settingsApplied = helper.saveNotificationTimes(userId, wakeUpHour, wakeUpMinute, bedTimeHour, bedTimeMinute)
+                    && saved;
+        }
+
+        @Override
+        public void onLog(int day, long time, int amount, boolean total) {
+            if (!isValidLog(day, time, amount, total)) {
+                rejected++;
+                return;
+            }
+            days[count] = day;
+            loggedAt[count] = time;
+            amounts[count] = amount;
+            compacted[count] = total;
+            read++;
+            if (++count == ROWS_PER_BATCH) {
+                flush();
+            }
+        }
+
+        @Override
+        public void onMalformed(int lineNumber) {
+            rejected++;
+        }
+
+        void flush() {
+            if (count > 0) {
+                imported += helper.importWaterLogs(userId, days, loggedAt, amounts, compacted, count, lastLogId);
+                count = 0;
+            }
+        }
+
+        private boolean isValidLog(int day, long time, int amount, boolean total) {
+            if (amount < 1 || amount > (total ? MAX_DAY_TOTAL : MAX_AMOUNT) || day < 0 || day > latestDay) {
+                return false;
+            }
+            // A timed row must be filed under (about) the day of its time; a zone change
+            // between devices moves it by at most one day
+            return time == LogArchive.NO_TIME
+                    || Math.abs(Math.floorDiv(time, EpochDays.MILLIS_PER_DAY) - day) <= 1;
+        }
+    }
+
+    private static boolean isTime(int hour, int minute) {
+        return hour >= 0 && hour < 24 && minute >= 0 && minute < 60;
+    }
+}
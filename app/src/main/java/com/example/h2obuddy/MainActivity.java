@@ -1,6 +1,7 @@
 package com.example.h2obuddy;
 
 import androidx.appcompat.app.AppCompatActivity;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
@@ -14,11 +15,20 @@ public class MainActivity extends AppCompatActivity {
     private EditText etEmail, etPassword;
     private Button btnLogin;
     private TextView btnSignup;
-    private DatabaseHelper databaseHelper;
+    private WaterRepository repository;
+    private long launchedAt; // For the time-to-first-progress metrics
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        launchedAt = Metrics.start();
+
+        // Database work runs in the background through the repository
+        repository = new WaterRepository(this);
+
+        // A saved session skips the login screen; the check started with the process
+        resumeSession();
+
         setContentView(R.layout.activity_main);
 
         // Initialize views
@@ -27,9 +37,6 @@ public class MainActivity extends AppCompatActivity {
         btnLogin = findViewById(R.id.btnLogin);
         btnSignup = findViewById(R.id.tvSignup);
 
-        // Initialize DatabaseHelper
-        databaseHelper = new DatabaseHelper(this);
-
         // Set up login button click listener
         btnLogin.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -44,8 +51,62 @@ public class MainActivity extends AppCompatActivity {
                 }
 
                 // Validate user credentials and get user ID
-                int userId = databaseHelper.validateUser(email, password);
+                login(email, password);
+            }
+        });
 
+        // Set up signup button click listener
+        btnSignup.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Intent intent = new Intent(MainActivity.this, SignupActivity.class);
+                startActivity(intent);
+            }
+        });
+    }
+
+    private void resumeSession() {
+        final Context appContext = getApplicationContext();
+        repository.execute(new WaterRepository.Query<Session>() {
+            @Override
+            public Session run(DatabaseHelper helper) {
+                return Session.await(appContext, helper);
+            }
+        }, new WaterRepository.Callback<Session>() {
+            @Override
+            public void onResult(Session session) {
+                if (session != null) {
+                    Intent intent = new Intent(MainActivity.this, HomeActivity.class);
+                    intent.putExtra("USER_ID", session.userId);
+                    intent.putExtra("LAUNCHED_AT", launchedAt);
+                    intent.putExtra("FROM_SESSION", true);
+                    startActivity(intent);
+                    overridePendingTransition(0, 0);
+                    finish();
+                }
+            }
+        });
+    }
+
+    private void login(final String email, final String password) {
+        final long started = Metrics.start();
+        final Context appContext = getApplicationContext();
+        btnLogin.setEnabled(false);
+        repository.execute(new WaterRepository.Query<Integer>() {
+            @Override
+            public Integer run(DatabaseHelper helper) {
+                int userId = helper.validateUser(email, password);
+                if (userId != -1) {
+                    // Remembered so the next launch goes straight to the home screen
+                    Session.start(appContext, helper, userId);
+                }
+                return userId;
+            }
+        }, new WaterRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer userId) {
+                Metrics.end(Metrics.LOAD_LOGIN, started);
+                btnLogin.setEnabled(true);
                 if (userId != -1) {
                     Toast.makeText(MainActivity.this, "Login successful!", Toast.LENGTH_SHORT).show();
 
@@ -53,6 +114,7 @@ public class MainActivity extends AppCompatActivity {
                     Intent intent = new Intent(MainActivity.this, NotificationActivity.class);
                     Bundle bundle = new Bundle();
                     bundle.putInt("USER_ID", userId);
+                    bundle.putLong("LAUNCHED_AT", launchedAt);
                     intent.putExtras(bundle);
                     startActivity(intent);
                     finish();
@@ -61,14 +123,11 @@ public class MainActivity extends AppCompatActivity {
                 }
             }
         });
+    }
 
-        // Set up signup button click listener
-        btnSignup.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                Intent intent = new Intent(MainActivity.this, SignupActivity.class);
-                startActivity(intent);
-            }
-        });
+    @Override
+    protected void onDestroy() {
+        repository.cancelAll();
+        super.onDestroy();
     }
 }
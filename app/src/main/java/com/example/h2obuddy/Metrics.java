@@ -0,0 +1,188 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low-overhead latency histograms for database and screen-load hot paths.
+ *
+ * All counters are preallocated; recording a call is a few atomic increments and never
+ * allocates. Timings use power-of-two microsecond buckets. Recording can be switched off at
+ * runtime, after which {@link #start()} returns 0 and {@link #end} does nothing; the choice made
+ * in Settings is saved and applied again by {@link #restore} on the next process start.
+ */
+public final class Metrics {
+
+    // Database operations
+    public static final int VALIDATE_USER = 0;
+    public static final int GET_USER_PROFILE = 1;
+    public static final int UPDATE_SETTINGS = 2;
+    public static final int SAVE_NOTIFICATION_TIMES = 3;
+    public static final int INSERT_WATER_LOG = 4;
+    public static final int INSERT_WATER_LOGS = 5;
+    public static final int DAILY_INTAKE = 6;
+    public static final int HISTORY = 7;
+    // Screen load paths: from onCreate/onResume to data on screen
+    public static final int LOAD_LOGIN = 8;
+    public static final int LOAD_HOME = 9;
+    public static final int LOAD_HISTORY = 10;
+    public static final int LOAD_SETTINGS = 11;
+    // Background quick-log: from broadcast to committed row, and from process start when the
+    // broadcast had to start the process
+    public static final int QUICK_LOG = 12;
+    public static final int QUICK_LOG_COLD_START = 13;
+    // From the launcher's onCreate to the home screen first showing progress, resuming a saved
+    // session or going through login (which includes the time spent on the login screens)
+    public static final int FIRST_PROGRESS_SESSION = 14;
+    public static final int FIRST_PROGRESS_LOGIN = 15;
+    public static final int LOAD_INSIGHTS = 16;
+    // Batches written by an import, kept apart from INSERT_WATER_LOGS so neither skews the other
+    public static final int IMPORT_WATER_LOGS = 17;
+    // Intake journal batches folded into water_logs, likewise apart from INSERT_WATER_LOGS
+    public static final int FOLD_JOURNAL = 18;
+
+    private static final String[] NAMES = {
+            "db.validateUser", "db.getUserProfile", "db.updateUserSettings", "db.saveNotificationTimes",
+            "db.insertWaterLog", "db.insertWaterLogs", "db.dailyIntake", "db.history",
+            "ui.login", "ui.home", "ui.history", "ui.settings",
+            "bg.quickLog", "bg.quickLogColdStart",
+            "ui.firstProgress.session", "ui.firstProgress.login",
+            "ui.insights",
+            "db.importWaterLogs", "db.foldJournal"
+    };
+
+    private static final int OPS = NAMES.length;
+
+    // Operations that must never run on the main thread: the "db." ones
+    private static final boolean[] DATABASE_OPS = new boolean[OPS];
+
+    static {
+        for (int op = 0; op < OPS; op++) {
+            DATABASE_OPS[op] = NAMES[op].startsWith("db.");
+        }
+    }
+
+    private static final int BUCKETS = 32; // bucket i holds [2^(i-1), 2^i) us
+
+    private static final String PREFS = "metrics";
+    private static final String KEY_ENABLED = "enabled";
+
+    private static volatile boolean enabled = true;
+
+    private static final AtomicLongArray calls = new AtomicLongArray(OPS);
+    private static final AtomicLongArray totalMicros = new AtomicLongArray(OPS);
+    private static final AtomicLongArray maxMicros = new AtomicLongArray(OPS);
+    private static final AtomicLongArray rows = new AtomicLongArray(OPS);
+    private static final AtomicLongArray mainThreadCalls = new AtomicLongArray(OPS);
+    private static final AtomicLongArray histogram = new AtomicLongArray(OPS * BUCKETS);
+
+    private Metrics() {
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    // Also saves the choice for later process starts
+    static void setEnabled(Context context, boolean on) {
+        enabled = on;
+        prefs(context).edit().putBoolean(KEY_ENABLED, on).apply();
+    }
+
+    // Applies the saved choice. Reads the disk, so it runs on the database executor at start
+    static void restore(Context context) {
+        enabled = prefs(context).getBoolean(KEY_ENABLED, true);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Start timestamp to pass to end(); 0 when recording is off
+    public static long start() {
+        return enabled ? SystemClock.elapsedRealtimeNanos() : 0;
+    }
+
+    public static void end(int op, long start) {
+        end(op, start, 0);
+    }
+
+    public static void end(int op, long start, int rowCount) {
+        if (start == 0 || !enabled) {
+            return;
+        }
+        long micros = (SystemClock.elapsedRealtimeNanos() - start) / 1000;
+
+        calls.incrementAndGet(op);
+        totalMicros.addAndGet(op, micros);
+        rows.addAndGet(op, rowCount);
+        histogram.incrementAndGet(op * BUCKETS + bucket(micros));
+        long max;
+        do {
+            max = maxMicros.get(op);
+        } while (micros > max && !maxMicros.compareAndSet(op, max, micros));
+
+        // Database work on the UI thread is a jank bug
+        if (DATABASE_OPS[op] && Looper.myLooper() == Looper.getMainLooper()) {
+            mainThreadCalls.incrementAndGet(op);
+        }
+    }
+
+    static int bucket(long micros) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public static void reset() {
+        for (int i = 0; i < OPS; i++) {
+            calls.set(i, 0);
+            totalMicros.set(i, 0);
+            maxMicros.set(i, 0);
+            rows.set(i, 0);
+            mainThreadCalls.set(i, 0);
+        }
+        for (int i = 0; i < OPS * BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    /**
+     * Plain-text table for bug reports, one line per operation that has run. Percentiles are
+     * the upper bound of the histogram bucket they fall in.
+     */
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append("op calls avg_us p50_us p90_us p99_us max_us rows main_thread\n");
+        for (int op = 0; op < OPS; op++) {
+            long count = calls.get(op);
+            if (count == 0) {
+                continue;
+            }
+            out.append(String.format(Locale.ROOT, "%s %d %d %d %d %d %d %d %d%n",
+                    NAMES[op], count, totalMicros.get(op) / count,
+                    percentile(op, count, 0.50), percentile(op, count, 0.90), percentile(op, count, 0.99),
+                    maxMicros.get(op), rows.get(op), mainThreadCalls.get(op)));
+        }
+        return out.toString();
+    }
+
+    private static long percentile(int op, long count, double fraction) {
+        long target = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += histogram.get(op * BUCKETS + b);
+            if (seen >= target) {
+                return b == 0 ? 0 : 1L << b;
+            }
+        }
+        return maxMicros.get(op);
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
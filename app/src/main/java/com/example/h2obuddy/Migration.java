@@ -0,0 +1,21 @@
+package com.example.h2obuddy;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * One schema step that moves the database from {@code startVersion} to {@code endVersion}
+ * while keeping every existing row.
+ */
+abstract class Migration {
+
+    final int startVersion;
+    final int endVersion;
+
+    Migration(int startVersion, int endVersion) {
+        this.startVersion = startVersion;
+        this.endVersion = endVersion;
+    }
+
+    // Runs inside the transaction opened by SQLiteOpenHelper for onCreate/onUpgrade
+    abstract void migrate(SQLiteDatabase db);
+}
@@ -1,7 +1,14 @@
 package com.example.h2obuddy;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
+
+import android.Manifest;
+import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.TimePicker;
@@ -11,7 +18,7 @@ public class NotificationActivity extends AppCompatActivity {
 
     private TimePicker tpWakeUpTime;
     private TimePicker tpBedTime;
-    private DatabaseHelper databaseHelper;
+    private WaterRepository repository;
     private int userId;
 
     @Override
@@ -23,8 +30,8 @@ public class NotificationActivity extends AppCompatActivity {
         tpWakeUpTime = findViewById(R.id.tpWakeUpTime);
         tpBedTime = findViewById(R.id.tpBedTime);
 
-        // Initialize DatabaseHelper
-        databaseHelper = new DatabaseHelper(this);
+        // Database work runs in the background through the repository
+        repository = new WaterRepository(this);
 
         // Retrieve user ID from intent
         userId = getIntent().getExtras().getInt("USER_ID", -1);
@@ -35,53 +42,83 @@ public class NotificationActivity extends AppCompatActivity {
             return;
         }
 
-        // Optionally, load existing notification preferences
+        // Reminders are posted as notifications, which need a runtime grant from Android 13
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.POST_NOTIFICATIONS}, 0);
+        }
+
+        // Load existing notification preferences
         loadNotificationSettings();
     }
 
     private void loadNotificationSettings() {
-        String userEmail = databaseHelper.getUserEmailById(userId);
-        if (userEmail == null) {
-            Toast.makeText(this, "User not found", Toast.LENGTH_SHORT).show();
-            finish();
-            return;
-        }
-
-        // Load and set existing notification times (if stored in database)
-        // This example assumes a method `getNotificationTimes` in DatabaseHelper to fetch the times.
-        // You'll need to implement it in your DatabaseHelper, if necessary.
-        // For now, this example skips loading to focus on saving functionality.
+        repository.execute(new WaterRepository.Query<UserProfile>() {
+            @Override
+            public UserProfile run(DatabaseHelper helper) {
+                return helper.getUserProfile(userId);
+            }
+        }, new WaterRepository.Callback<UserProfile>() {
+            @Override
+            public void onResult(UserProfile profile) {
+                if (profile == null) {
+                    Toast.makeText(NotificationActivity.this, "User not found", Toast.LENGTH_SHORT).show();
+                    finish();
+                    return;
+                }
+
+                // Start the pickers from the stored wake-up and bed times
+                tpWakeUpTime.setHour(profile.wakeUpHour);
+                tpWakeUpTime.setMinute(profile.wakeUpMinute);
+                tpBedTime.setHour(profile.bedTimeHour);
+                tpBedTime.setMinute(profile.bedTimeMinute);
+            }
+        });
     }
 
     public void gotoHome(View view) {
         // Get wake-up and bedtime from TimePickers
-        int wakeUpHour = tpWakeUpTime.getHour();
-        int wakeUpMinute = tpWakeUpTime.getMinute();
-        int bedTimeHour = tpBedTime.getHour();
-        int bedTimeMinute = tpBedTime.getMinute();
-
-        // Save notification preferences to the database
-        String userEmail = databaseHelper.getUserEmailById(userId);
-        if (userEmail == null) {
-            Toast.makeText(this, "User not found", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        // Example of saving the times (you need to implement `saveNotificationTimes` in DatabaseHelper)
-        boolean success = databaseHelper.saveNotificationTimes(userEmail, wakeUpHour, wakeUpMinute, bedTimeHour, bedTimeMinute);
-
-        if (success) {
-            Toast.makeText(this, "Notification settings saved successfully", Toast.LENGTH_SHORT).show();
+        final int wakeUpHour = tpWakeUpTime.getHour();
+        final int wakeUpMinute = tpWakeUpTime.getMinute();
+        final int bedTimeHour = tpBedTime.getHour();
+        final int bedTimeMinute = tpBedTime.getMinute();
+        final Context appContext = getApplicationContext();
+
+        // Save notification preferences to the database and move the reminder alarm to match
+        repository.execute(new WaterRepository.Query<Boolean>() {
+            @Override
+            public Boolean run(DatabaseHelper helper) {
+                boolean saved = helper.saveNotificationTimes(userId, wakeUpHour, wakeUpMinute, bedTimeHour, bedTimeMinute);
+                if (saved) {
+                    ReminderScheduler.scheduleNext(appContext, helper.getUserProfile(userId), System.currentTimeMillis());
+                }
+                return saved;
+            }
+        }, new WaterRepository.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean success) {
+                if (success) {
+                    Toast.makeText(NotificationActivity.this, "Notification settings saved successfully", Toast.LENGTH_SHORT).show();
+
+                    // Pass the user ID to HomeActivity
+                    Intent intent = new Intent(NotificationActivity.this, HomeActivity.class);
+                    Bundle bundle = new Bundle();
+                    bundle.putInt("USER_ID", userId);
+                    bundle.putLong("LAUNCHED_AT", getIntent().getLongExtra("LAUNCHED_AT", 0));
+                    intent.putExtras(bundle);
+                    startActivity(intent);
+                    finish();
+                } else {
+                    Toast.makeText(NotificationActivity.this, "Failed to save notification settings", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
 
-            // Pass the user ID to HomeActivity
-            Intent intent = new Intent(this, HomeActivity.class);
-            Bundle bundle = new Bundle();
-            bundle.putInt("USER_ID", userId);
-            intent.putExtras(bundle);
-            startActivity(intent);
-            finish();
-        } else {
-            Toast.makeText(this, "Failed to save notification settings", Toast.LENGTH_SHORT).show();
-        }
+    @Override
+    protected void onDestroy() {
+        repository.cancelAll();
+        super.onDestroy();
     }
 }
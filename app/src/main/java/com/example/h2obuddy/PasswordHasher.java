@@ -0,0 +1,106 @@
+package com.example.h2obuddy;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted, iterated password hashes (PBKDF2). The iteration count is stored with every hash, so
+ * the cost can be raised later and older rows are rehashed on their next login.
+ *
+ * Rows written before hashing existed have 0 iterations and hold the plaintext password.
+ * Hashing is deliberately slow: call from a background thread only.
+ */
+public final class PasswordHasher {
+
+    // Target: a login around 250 ms on a low-end device. Not yet measured; run
+    // PasswordHashBenchmark on one before changing this
+    static final int DEFAULT_ITERATIONS = 60_000;
+    static final int LEGACY_PLAINTEXT = 0;
+
+    // HMAC-SHA1 is the PBKDF2 variant available on every API level this app supports
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA1";
+    private static final int SALT_BYTES = 16;
+    // One HMAC-SHA1 block: each further 160 bits reruns every iteration, doubling the login
+    // cost, while a guess can still be checked against the first block alone
+    private static final int HASH_BITS = 160;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Cost for new hashes; tests and benchmarks lower it to seed many users quickly
+    private static volatile int iterations = DEFAULT_ITERATIONS;
+
+    private PasswordHasher() {
+    }
+
+    static int getIterations() {
+        return iterations;
+    }
+
+    static void setIterations(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Iterations must be positive: " + count);
+        }
+        iterations = count;
+    }
+
+    static String newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return toHex(salt);
+    }
+
+    static String hash(String password, String salt, int iterations) {
+        return hash(password, salt, iterations, HASH_BITS);
+    }
+
+    static String hash(String password, String salt, int iterations, int bits) {
+        KeySpec spec = new PBEKeySpec(password.toCharArray(), fromHex(salt), iterations, bits);
+        try {
+            return toHex(SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " unavailable", e);
+        }
+    }
+
+    // Compares in constant time, so a mismatch doesn't leak how much of the hash matched. Hashes
+    // are checked at their stored length, which older rows have at 256 bits
+    static boolean verify(String password, String stored, String salt, int iterations) {
+        if (stored == null || (iterations != LEGACY_PLAINTEXT && stored.isEmpty())) {
+            return false;
+        }
+        String candidate = iterations == LEGACY_PLAINTEXT
+                ? password : hash(password, salt, iterations, stored.length() * 4);
+        return MessageDigest.isEqual(candidate.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static boolean needsRehash(int storedIterations) {
+        return storedIterations < iterations;
+    }
+
+    // Also true for hashes of another length, so 256-bit rows drop to the cheaper 160 bits
+    static boolean needsRehash(int storedIterations, String stored) {
+        return needsRehash(storedIterations) || stored.length() != HASH_BITS / 4;
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.h2obuddy;
+
+import android.util.SparseArray;
+
+/**
+ * Process-wide cache of each user's daily goal and today's total, so the home screen only
+ * reads the database once per day (or after a settings change) instead of on every open.
+ *
+ * Entries follow the shared database's {@link InvalidationTracker}: intake deltas are added in
+ * place, a settings change drops the user's entry, and the day rolling over drops it too. A
+ * load that a change overtook while it was reading is read again rather than cached.
+ */
+public final class ProgressCache implements InvalidationTracker.Observer {
+
+    public static final class Progress {
+        public final int dailyGoal;
+        public final int day;
+        private int todayTotal;
+
+        Progress(int dailyGoal, int day, int todayTotal) {
+            this.dailyGoal = dailyGoal;
+            this.day = day;
+            this.todayTotal = todayTotal;
+        }
+
+        public synchronized int getTodayTotal() {
+            return todayTotal;
+        }
+
+        synchronized void add(int amount) {
+            todayTotal += amount;
+        }
+    }
+
+    private static final ProgressCache INSTANCE = new ProgressCache();
+
+    // Reads that kept being overtaken by writes give up and return an uncached result
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private final SparseArray<Progress> entries = new SparseArray<>();
+
+    // Bumped by every change, so a load can tell whether one arrived while it was reading
+    private int changes;
+
+    private ProgressCache() {
+    }
+
+    public static ProgressCache getInstance() {
+        return INSTANCE;
+    }
+
+    // Cached progress for today, or null if it has to be (re)loaded
+    public synchronized Progress get(int userId) {
+        Progress progress = entries.get(userId);
+        if (progress != null && progress.day != EpochDays.today()) {
+            entries.remove(userId);
+            return null;
+        }
+        return progress;
+    }
+
+    /**
+     * Reads the goal and today's total from the database and caches them. Must run on a
+     * background thread. Returns null if the user does not exist.
+     *
+     * A write publishes its delta after the read may already have seen it, or before the entry
+     * exists to take it; either way the change count moved, so the read is done again. Drinks
+     * are published atomically with the daily-total read (see DatabaseHelper), so an unchanged
+     * count means the total holds exactly the writes published before it.
+     */
+    public Progress load(DatabaseHelper helper, int userId) {
+        Progress progress;
+        int attempt = 0;
+        do {
+            int seen;
+            synchronized (this) {
+                seen = changes;
+            }
+            UserProfile profile = helper.getUserProfile(userId);
+            if (profile == null) {
+                return null;
+            }
+            int today = EpochDays.today();
+            progress = new Progress(profile.dailyGoal, today, helper.getDailyWaterIntake(userId, today));
+            synchronized (this) {
+                if (changes == seen) {
+                    entries.put(userId, progress);
+                    return progress;
+                }
+            }
+        } while (++attempt < MAX_LOAD_ATTEMPTS);
+        // Not cached; the change that overtook it makes the screen ask again
+        return progress;
+    }
+
+    // Keeps a cached entry in step with a write, without re-querying
+    @Override
+    public synchronized void onIntakeChanged(int userId, int day, int delta) {
+        changes++;
+        Progress progress = get(userId);
+        if (progress != null && progress.day == day) {
+            progress.add(delta);
+        }
+    }
+
+    // The goal may have changed
+    @Override
+    public synchronized void onUserChanged(int userId) {
+        changes++;
+        if (userId == InvalidationTracker.ALL_USERS) {
+            entries.clear();
+        } else {
+            entries.remove(userId);
+        }
+    }
+
+    public synchronized void invalidate(int userId) {
+        changes++;
+        entries.remove(userId);
+    }
+}
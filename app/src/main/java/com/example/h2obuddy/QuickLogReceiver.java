@@ -0,0 +1,111 @@
+package com.example.h2obuddy;
+
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationManagerCompat;
+
+/**
+ * Logs a drink straight from a notification action or the home-screen widget. No activity is
+ * started and nothing is inflated: the row is written on the database executor and the widget
+ * and reminder alarm are brought up to date.
+ */
+public class QuickLogReceiver extends BroadcastReceiver {
+
+    static final String ACTION_QUICK_LOG = "com.example.h2obuddy.action.QUICK_LOG";
+    static final String EXTRA_USER_ID = "USER_ID";
+    static final String EXTRA_AMOUNT = "AMOUNT";
+    static final int DEFAULT_AMOUNT = 250;
+
+    // A first quick log this soon after the process started is what started it
+    private static final long COLD_START_WINDOW_MILLIS = 10_000;
+    private static volatile boolean firstInProcess = true;
+
+    static PendingIntent pendingIntent(Context context, int userId, int amount) {
+        Intent intent = new Intent(context, QuickLogReceiver.class)
+                .setAction(ACTION_QUICK_LOG)
+                .putExtra(EXTRA_USER_ID, userId)
+                .putExtra(EXTRA_AMOUNT, amount);
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            flags |= PendingIntent.FLAG_IMMUTABLE;
+        }
+        return PendingIntent.getBroadcast(context, amount, intent, flags);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final long started = Metrics.start();
+        recordColdStart();
+
+        final int userId = intent.getIntExtra(EXTRA_USER_ID, -1);
+        final int amount = intent.getIntExtra(EXTRA_AMOUNT, DEFAULT_AMOUNT);
+        if (userId == -1 || amount <= 0) {
+            return;
+        }
+
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        WaterRepository.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    DatabaseHelper helper = DatabaseHelper.getInstance(appContext);
+                    if (!Session.isSignedIn(appContext, helper, userId)) {
+                        // A widget or notification left over from before a sign-out
+                        QuickLogWidget.unbindUser(appContext);
+                        NotificationManagerCompat.from(appContext).cancel(ReminderReceiver.NOTIFICATION_ID);
+                        return;
+                    }
+                    ProgressCache.Progress progress = log(helper, userId, amount);
+                    Metrics.end(Metrics.QUICK_LOG, started);
+                    if (progress == null) {
+                        return;
+                    }
+
+                    // The reminder that offered this action has been answered
+                    NotificationManagerCompat.from(appContext).cancel(ReminderReceiver.NOTIFICATION_ID);
+                    QuickLogWidget.showProgress(appContext, progress);
+                    if (ReminderScheduler.scheduledUserId(appContext) == userId
+                            && ReminderScheduler.isAdaptive(appContext)) {
+                        ReminderScheduler.scheduleNext(appContext, helper, helper.getUserProfile(userId), progress,
+                                System.currentTimeMillis());
+                    }
+                } finally {
+                    result.finish();
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes one drink for today and returns today's progress including it, or null if the row
+     * could not be written. Must run on a background thread.
+     */
+    static ProgressCache.Progress log(DatabaseHelper helper, int userId, int amount) {
+        if (!helper.insertWaterLog(new IntakeEvent(userId, System.currentTimeMillis(), amount))) {
+            return null;
+        }
+        // A cached entry already has the new row through the invalidation tracker; a fresh
+        // load is read after the insert, so it is counted either way
+        ProgressCache cache = ProgressCache.getInstance();
+        ProgressCache.Progress progress = cache.get(userId);
+        return progress != null ? progress : cache.load(helper, userId);
+    }
+
+    private static void recordColdStart() {
+        if (!firstInProcess || Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return;
+        }
+        firstInProcess = false;
+        long processStart = Process.getStartElapsedRealtime();
+        if (SystemClock.elapsedRealtime() - processStart < COLD_START_WINDOW_MILLIS && Metrics.isEnabled()) {
+            Metrics.end(Metrics.QUICK_LOG_COLD_START, processStart * 1_000_000L);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.h2obuddy;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.widget.RemoteViews;
+
+/**
+ * Home-screen widget with a one-tap "+250 ml" button for the last user who opened the home
+ * screen. The tap goes to {@link QuickLogReceiver}; no activity is launched.
+ */
+public class QuickLogWidget extends AppWidgetProvider {
+
+    private static final String PREFS = "quick_log";
+    private static final String KEY_USER_ID = "user_id";
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+
+        // Today's progress may need a database read
+        WaterRepository.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int userId = boundUserId(appContext);
+                    ProgressCache.Progress progress = null;
+                    if (userId != -1) {
+                        ProgressCache cache = ProgressCache.getInstance();
+                        progress = cache.get(userId);
+                        if (progress == null) {
+                            progress = cache.load(DatabaseHelper.getInstance(appContext), userId);
+                        }
+                    }
+                    update(appContext, userId, progress);
+                } finally {
+                    result.finish();
+                }
+            }
+        });
+    }
+
+    // Points the widget at userId; called off the main thread when the home screen opens
+    static void bindUser(Context context, int userId) {
+        if (boundUserId(context) != userId) {
+            prefs(context).edit().putInt(KEY_USER_ID, userId).apply();
+            update(context, userId, ProgressCache.getInstance().get(userId));
+        }
+    }
+
+    // After a sign-out: taps open the app instead of logging for anyone
+    static void unbindUser(Context context) {
+        prefs(context).edit().remove(KEY_USER_ID).apply();
+        update(context, -1, null);
+    }
+
+    static void showProgress(Context context, ProgressCache.Progress progress) {
+        update(context, boundUserId(context), progress);
+    }
+
+    private static void update(Context context, int userId, ProgressCache.Progress progress) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        int[] ids = manager.getAppWidgetIds(new ComponentName(context, QuickLogWidget.class));
+        if (ids.length == 0) {
+            return;
+        }
+
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_quick_log);
+        if (progress != null) {
+            views.setTextViewText(R.id.tvWidgetProgress, progress.getTodayTotal() + " / " + progress.dailyGoal + " ml");
+        }
+        if (userId != -1) {
+            views.setOnClickPendingIntent(R.id.btnWidgetAdd,
+                    QuickLogReceiver.pendingIntent(context, userId, QuickLogReceiver.DEFAULT_AMOUNT));
+        } else {
+            // Nobody to log for yet; open the app so they can sign in
+            int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0;
+            views.setOnClickPendingIntent(R.id.btnWidgetAdd,
+                    PendingIntent.getActivity(context, 0, new Intent(context, MainActivity.class), flags));
+        }
+        manager.updateAppWidget(ids, views);
+    }
+
+    private static int boundUserId(Context context) {
+        return prefs(context).getInt(KEY_USER_ID, -1);
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.h2obuddy;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+/**
+ * Shows a reminder when the alarm fires, unless the user is on pace, then registers the next one.
+ * Also restores the alarm after a reboot, since the system drops registered alarms then.
+ */
+public class ReminderReceiver extends BroadcastReceiver {
+
+    private static final String CHANNEL_ID = "reminders";
+    static final int NOTIFICATION_ID = 1;
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final Context appContext = context.getApplicationContext();
+        final boolean remind = ReminderScheduler.ACTION_REMIND.equals(intent.getAction());
+        final PendingResult result = goAsync();
+
+        // Reading the profile is disk I/O, so it runs on the database executor
+        WaterRepository.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int userId = ReminderScheduler.scheduledUserId(appContext);
+                    if (userId == -1) {
+                        return;
+                    }
+                    DatabaseHelper helper = DatabaseHelper.getInstance(appContext);
+                    UserProfile profile = helper.getUserProfile(userId);
+                    ProgressCache.Progress progress = null;
+                    if (profile != null && ReminderScheduler.isAdaptive(appContext)) {
+                        progress = todaysProgress(helper, userId);
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (remind && ReminderScheduler.shouldRemind(helper, profile, progress, now)) {
+                        showReminder(appContext, userId);
+                    }
+                    ReminderScheduler.scheduleNext(appContext, helper, profile, progress, now);
+                } finally {
+                    result.finish();
+                }
+            }
+        });
+    }
+
+    // The cached total is kept current by every write in this process, so the database is only
+    // read when the process is new or the day has rolled over
+    private static ProgressCache.Progress todaysProgress(DatabaseHelper helper, int userId) {
+        ProgressCache cache = ProgressCache.getInstance();
+        ProgressCache.Progress progress = cache.get(userId);
+        return progress != null ? progress : cache.load(helper, userId);
+    }
+
+    private static void showReminder(Context context, int userId) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = context.getSystemService(NotificationManager.class);
+            manager.createNotificationChannel(new NotificationChannel(
+                    CHANNEL_ID, "Water reminders", NotificationManager.IMPORTANCE_DEFAULT));
+        }
+
+        Intent open = new Intent(context, MainActivity.class);
+        int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0;
+        PendingIntent contentIntent = PendingIntent.getActivity(context, 0, open, flags);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_baseline_local_drink_24)
+                .setContentTitle("Time to drink water")
+                .setContentText("Stay on track with your daily goal")
+                .setContentIntent(contentIntent)
+                // Logs straight from the notification, without opening the app
+                .addAction(R.drawable.ic_baseline_local_drink_24, "+" + QuickLogReceiver.DEFAULT_AMOUNT + " ml",
+                        QuickLogReceiver.pendingIntent(context, userId, QuickLogReceiver.DEFAULT_AMOUNT))
+                .setAutoCancel(true);
+
+        NotificationManagerCompat manager = NotificationManagerCompat.from(context);
+        if (manager.areNotificationsEnabled()) {
+            manager.notify(NOTIFICATION_ID, builder.build());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.h2obuddy;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Pure-Java reminder timeline built from a user's wake-up time, bed time and reminder interval.
+ *
+ * Reminders fall every {@code interval} minutes after waking up, up to and including bed time.
+ * A bed time at or before the wake-up time means the awake window runs past midnight. Only the
+ * next reminder is ever computed, in constant time, so callers register a single alarm and ask
+ * again when it fires. The adaptive variants compare the intake since the current window began
+ * against an even pace across the window and skip reminders the user doesn't need. For a window
+ * inside one calendar day that is today's total; {@link ReminderScheduler} works it out for a
+ * window that runs past midnight.
+ */
+public final class ReminderSchedule {
+
+    static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    private final int wakeMinute;
+    private final int windowMinutes;
+    private final int intervalMinutes;
+
+    public ReminderSchedule(int wakeUpHour, int wakeUpMinute, int bedTimeHour, int bedTimeMinute, int intervalMinutes) {
+        if (intervalMinutes <= 0) {
+            throw new IllegalArgumentException("Reminder interval must be positive: " + intervalMinutes);
+        }
+        this.wakeMinute = wakeUpHour * 60 + wakeUpMinute;
+        int bedMinute = bedTimeHour * 60 + bedTimeMinute;
+        int window = bedMinute - wakeMinute;
+        this.windowMinutes = window > 0 ? window : window + MINUTES_PER_DAY;
+        this.intervalMinutes = intervalMinutes;
+    }
+
+    public static ReminderSchedule forProfile(UserProfile profile) {
+        return new ReminderSchedule(profile.wakeUpHour, profile.wakeUpMinute,
+                profile.bedTimeHour, profile.bedTimeMinute, profile.reminderInterval);
+    }
+
+    // Whether the awake window runs past midnight into the next calendar day
+    public boolean crossesMidnight() {
+        return wakeMinute + windowMinutes > MINUTES_PER_DAY;
+    }
+
+    // Reminders per awake window
+    public int remindersPerDay() {
+        return windowMinutes / intervalMinutes;
+    }
+
+    /**
+     * Minutes after local midnight of each reminder in one awake window, in firing order.
+     * Values past {@link #MINUTES_PER_DAY} belong to the following calendar day.
+     */
+    public int[] timeline() {
+        int[] minutes = new int[remindersPerDay()];
+        for (int i = 0; i < minutes.length; i++) {
+            minutes[i] = wakeMinute + (i + 1) * intervalMinutes;
+        }
+        return minutes;
+    }
+
+    // Epoch millis of the first reminder strictly after nowMillis
+    public long nextReminderAfter(long nowMillis, TimeZone zone) {
+        if (remindersPerDay() == 0) {
+            throw new IllegalStateException("Interval is longer than the awake window");
+        }
+
+        long windowStart = currentWindowStart(nowMillis, zone);
+        long elapsedMinutes = (nowMillis - windowStart) / MILLIS_PER_MINUTE;
+        long next = elapsedMinutes / intervalMinutes + 1;
+        if (next * intervalMinutes <= windowMinutes) {
+            return windowStart + next * intervalMinutes * MILLIS_PER_MINUTE;
+        }
+
+        // Past bed time: first reminder of the next window
+        return nextWindowStart(nowMillis, zone) + intervalMinutes * MILLIS_PER_MINUTE;
+    }
+
+    /**
+     * Intake the user would have reached by nowMillis drinking evenly from wake-up to bed time:
+     * nothing before waking up, the full goal after going to bed.
+     */
+    public int expectedIntake(long nowMillis, TimeZone zone, int dailyGoal) {
+        long elapsedMinutes = (nowMillis - currentWindowStart(nowMillis, zone)) / MILLIS_PER_MINUTE;
+        if (elapsedMinutes >= windowMinutes) {
+            // Between bed time and wake-up. Today's total restarts at midnight, so after midnight
+            // a same-day window has nothing to expect yet; the intake of a window that runs past
+            // midnight is still counted from its start
+            return !crossesMidnight() && windowStart(nowMillis, zone, 0) > nowMillis ? 0 : dailyGoal;
+        }
+        return (int) (dailyGoal * elapsedMinutes / windowMinutes);
+    }
+
+    // Whether a reminder due at nowMillis is worth showing, given the intake since the window began
+    public boolean isBehindPace(long nowMillis, TimeZone zone, int intake, int dailyGoal) {
+        return intake < expectedIntake(nowMillis, zone, dailyGoal);
+    }
+
+    /**
+     * Next reminder once the intake since the window began is taken into account. A user who is
+     * ahead of pace isn't reminded until steady drinking would have caught up with what they've
+     * had; once the goal is met the rest of the window is skipped.
+     */
+    public long nextAdaptiveReminderAfter(long nowMillis, TimeZone zone, int intake, int dailyGoal) {
+        if (intake >= dailyGoal) {
+            return nextWindowStart(nowMillis, zone) + intervalMinutes * MILLIS_PER_MINUTE;
+        }
+        long windowStart = currentWindowStart(nowMillis, zone);
+        long caughtUpMinutes = ((long) Math.max(intake, 0) * windowMinutes + dailyGoal - 1) / dailyGoal;
+        long caughtUpAt = windowStart + caughtUpMinutes * MILLIS_PER_MINUTE;
+        // A reminder landing exactly on the catch-up time still counts
+        return nextReminderAfter(Math.max(nowMillis, caughtUpAt - 1), zone);
+    }
+
+    // Start of the window that began most recently: today's, or yesterday's if it runs past midnight
+    long currentWindowStart(long nowMillis, TimeZone zone) {
+        long windowStart = windowStart(nowMillis, zone, 0);
+        return windowStart > nowMillis ? windowStart(nowMillis, zone, -1) : windowStart;
+    }
+
+    // Start of the first window that begins after nowMillis
+    private long nextWindowStart(long nowMillis, TimeZone zone) {
+        long windowStart = windowStart(nowMillis, zone, 0);
+        return windowStart <= nowMillis ? windowStart(nowMillis, zone, 1) : windowStart;
+    }
+
+    // Wake-up time on the local calendar day of nowMillis, shifted by dayOffset days
+    private long windowStart(long nowMillis, TimeZone zone, int dayOffset) {
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.setTimeInMillis(nowMillis);
+        calendar.add(Calendar.DAY_OF_MONTH, dayOffset);
+        calendar.set(Calendar.HOUR_OF_DAY, wakeMinute / 60);
+        calendar.set(Calendar.MINUTE, wakeMinute % 60);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+}
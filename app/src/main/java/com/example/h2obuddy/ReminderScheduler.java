@@ -0,0 +1,143 @@
+package com.example.h2obuddy;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import java.util.TimeZone;
+
+/**
+ * Keeps exactly one reminder alarm registered: the next one on the user's {@link ReminderSchedule}.
+ * {@link ReminderReceiver} asks for the following reminder each time one fires.
+ *
+ * In adaptive mode, switched on in Settings, the next reminder also depends on progress through
+ * the current awake window, so a user who is on pace or has met their goal isn't woken for
+ * nothing. Pace counts what was drunk since the window began, across midnight if it runs past it.
+ */
+final class ReminderScheduler {
+
+    static final String ACTION_REMIND = "com.example.h2obuddy.action.REMIND";
+
+    private static final String PREFS = "reminders";
+    private static final String KEY_USER_ID = "user_id";
+    private static final String KEY_ADAPTIVE = "adaptive";
+
+    private ReminderScheduler() {
+    }
+
+    // Replaces any pending reminder with the first one after afterMillis; returns its time, or -1 if none
+    static long scheduleNext(Context context, UserProfile profile, long afterMillis) {
+        return scheduleNext(context, null, profile, null, afterMillis);
+    }
+
+    /**
+     * Like {@link #scheduleNext(Context, UserProfile, long)}, but with today's progress the next
+     * reminder is postponed while the user is ahead of pace and moved to the next window once
+     * the goal is met. A null progress gives the fixed timeline. Must run on a background
+     * thread, since a window that runs past midnight reads the other day's drinks.
+     */
+    static long scheduleNext(Context context, DatabaseHelper helper, UserProfile profile,
+                             ProgressCache.Progress progress, long afterMillis) {
+        ReminderSchedule schedule = scheduleFor(profile);
+        if (schedule == null) {
+            cancel(context);
+            return -1;
+        }
+
+        long triggerAt = progress == null
+                ? schedule.nextReminderAfter(afterMillis, TimeZone.getDefault())
+                : schedule.nextAdaptiveReminderAfter(afterMillis, TimeZone.getDefault(),
+                        windowIntake(helper, schedule, profile.id, progress, afterMillis), progress.dailyGoal);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent operation = pendingIntent(context);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
+            // Without the exact-alarm grant the system may batch this by a few minutes
+            alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, operation);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, operation);
+        } else {
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerAt, operation);
+        }
+
+        // Remembered so the alarm can be restored after a reboot
+        prefs(context).edit().putInt(KEY_USER_ID, profile.id).apply();
+        return triggerAt;
+    }
+
+    // Whether a reminder due now should be shown; always true without progress
+    static boolean shouldRemind(DatabaseHelper helper, UserProfile profile, ProgressCache.Progress progress,
+                                long nowMillis) {
+        ReminderSchedule schedule = scheduleFor(profile);
+        if (schedule == null) {
+            return false;
+        }
+        return progress == null || schedule.isBehindPace(nowMillis, TimeZone.getDefault(),
+                windowIntake(helper, schedule, profile.id, progress, nowMillis), progress.dailyGoal);
+    }
+
+    /**
+     * Intake since the current awake window began. That is today's total for a window inside
+     * one calendar day. For one that runs past midnight it adds the drinks logged since the
+     * window began yesterday, or takes out today's drinks from before it began. Drinks that only
+     * know their day count for the day's window.
+     */
+    static int windowIntake(DatabaseHelper helper, ReminderSchedule schedule, int userId,
+                            ProgressCache.Progress progress, long nowMillis) {
+        int intake = progress.getTodayTotal();
+        if (!schedule.crossesMidnight()) {
+            return intake;
+        }
+        long windowStart = schedule.currentWindowStart(nowMillis, TimeZone.getDefault());
+        int startDay = EpochDays.fromMillis(windowStart);
+        if (startDay < progress.day) {
+            return intake + helper.getTimedIntake(userId, startDay, windowStart, Long.MAX_VALUE);
+        }
+        return intake - helper.getTimedIntake(userId, progress.day, Long.MIN_VALUE, windowStart);
+    }
+
+    static void cancel(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.cancel(pendingIntent(context));
+        prefs(context).edit().remove(KEY_USER_ID).apply();
+    }
+
+    // User whose reminders are registered, or -1
+    static int scheduledUserId(Context context) {
+        return prefs(context).getInt(KEY_USER_ID, -1);
+    }
+
+    static boolean isAdaptive(Context context) {
+        return prefs(context).getBoolean(KEY_ADAPTIVE, false);
+    }
+
+    static void setAdaptive(Context context, boolean adaptive) {
+        prefs(context).edit().putBoolean(KEY_ADAPTIVE, adaptive).apply();
+    }
+
+    // Null when the profile has no reminders to give
+    private static ReminderSchedule scheduleFor(UserProfile profile) {
+        if (profile == null || profile.reminderInterval <= 0) {
+            return null;
+        }
+        ReminderSchedule schedule = ReminderSchedule.forProfile(profile);
+        return schedule.remindersPerDay() > 0 ? schedule : null;
+    }
+
+    // The same request code every time, so a new alarm always replaces the previous one
+    private static PendingIntent pendingIntent(Context context) {
+        Intent intent = new Intent(context, ReminderReceiver.class).setAction(ACTION_REMIND);
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            flags |= PendingIntent.FLAG_IMMUTABLE;
+        }
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
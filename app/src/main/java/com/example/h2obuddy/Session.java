@@ -0,0 +1,134 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.security.SecureRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The signed-in user, persisted so a launch can go straight to the home screen instead of
+ * through the login query.
+ *
+ * The id and a random token are kept in SharedPreferences; the token must also match the one
+ * stored for the user, so signing out (or signing in elsewhere on a restored backup) ends the
+ * session. All methods touch the disk and must run on a background thread.
+ */
+public final class Session {
+
+    private static final String PREFS = "session";
+    private static final String KEY_USER_ID = "user_id";
+    private static final String KEY_TOKEN = "token";
+    private static final int TOKEN_BYTES = 16;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Started at process start so the check overlaps with the launcher's layout inflation
+    private static FutureTask<Session> pending;
+
+    public final int userId;
+    public final String token;
+
+    private Session(int userId, String token) {
+        this.userId = userId;
+        this.token = token;
+    }
+
+    // Signs userId in and persists the session; returns null if the user doesn't exist
+    static Session start(Context context, DatabaseHelper helper, int userId) {
+        String token = newToken();
+        if (!helper.startSession(userId, token)) {
+            return null;
+        }
+        prefs(context).edit().putInt(KEY_USER_ID, userId).putString(KEY_TOKEN, token).apply();
+        synchronized (Session.class) {
+            pending = null;
+        }
+        return new Session(userId, token);
+    }
+
+    // The persisted session if it is still valid, with today's progress already cached
+    static Session restore(Context context, DatabaseHelper helper) {
+        SharedPreferences prefs = prefs(context);
+        int userId = prefs.getInt(KEY_USER_ID, -1);
+        String token = prefs.getString(KEY_TOKEN, null);
+        if (userId == -1 || token == null) {
+            return null;
+        }
+        if (!helper.isSessionValid(userId, token)) {
+            prefs.edit().clear().apply();
+            return null;
+        }
+        // Warm what the home screen shows first
+        ProgressCache cache = ProgressCache.getInstance();
+        if (cache.get(userId) == null) {
+            cache.load(helper, userId);
+        }
+        return new Session(userId, token);
+    }
+
+    // Whether userId holds this device's session; checked before acting on a widget or
+    // notification tap, which may have been set up before a sign-out
+    static boolean isSignedIn(Context context, DatabaseHelper helper, int userId) {
+        SharedPreferences prefs = prefs(context);
+        String token = prefs.getString(KEY_TOKEN, null);
+        return prefs.getInt(KEY_USER_ID, -1) == userId && token != null
+                && helper.isSessionValid(userId, token);
+    }
+
+    static void end(Context context, DatabaseHelper helper, int userId) {
+        helper.endSession(userId);
+        prefs(context).edit().clear().apply();
+        synchronized (Session.class) {
+            pending = null;
+        }
+    }
+
+    // The restore() that await() picks up, for the caller to run on the database executor
+    // once the database is ready; called once from Application.onCreate
+    static Runnable prefetch(Context context) {
+        final Context appContext = context.getApplicationContext();
+        FutureTask<Session> task = new FutureTask<>(new Callable<Session>() {
+            @Override
+            public Session call() {
+                return restore(appContext, DatabaseHelper.getInstance(appContext));
+            }
+        });
+        synchronized (Session.class) {
+            pending = task;
+        }
+        return task;
+    }
+
+    // Result of the prefetch, waiting for it if needed, or a fresh restore() without one
+    static Session await(Context context, DatabaseHelper helper) {
+        FutureTask<Session> task;
+        synchronized (Session.class) {
+            task = pending;
+            pending = null;
+        }
+        if (task == null) {
+            return restore(context, helper);
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        return PasswordHasher.toHex(bytes);
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
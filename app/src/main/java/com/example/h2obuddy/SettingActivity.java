@@ -1,18 +1,41 @@
 package com.example.h2obuddy;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.app.NotificationManagerCompat;
 
+import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.view.View;
+import android.widget.AdapterView;
+import android.widget.CompoundButton;
 import android.widget.EditText;
+import android.widget.Spinner;
+import android.widget.Switch;
 import android.widget.Toast;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
 public class SettingActivity extends AppCompatActivity {
 
+    // Document picker requests for history export and import
+    private static final int REQUEST_EXPORT_CSV = 1;
+    private static final int REQUEST_EXPORT_BINARY = 2;
+    private static final int REQUEST_IMPORT = 3;
+
+    // Retention choices, in the order of R.array.retention_options
+    private static final int[] RETENTION_DAYS = {LogCompactor.NO_RETENTION, 365, 2 * 365, 5 * 365};
+
     private EditText etDailyGoal;
     private EditText etReminderInterval;
-    private DatabaseHelper databaseHelper;
+    private Switch swAdaptiveReminders;
+    private Switch swIntakeJournal;
+    private Spinner spRetention;
+    private WaterRepository repository;
     private int userId;
 
     @Override
@@ -23,9 +46,12 @@ public class SettingActivity extends AppCompatActivity {
         // Initialize views
         etDailyGoal = findViewById(R.id.etDailyGoal);
         etReminderInterval = findViewById(R.id.etReminderInterval);
+        swAdaptiveReminders = findViewById(R.id.swAdaptiveReminders);
+        swIntakeJournal = findViewById(R.id.swIntakeJournal);
+        spRetention = findViewById(R.id.spRetention);
 
-        // Initialize DatabaseHelper
-        databaseHelper = new DatabaseHelper(this);
+        // Database work runs in the background through the repository
+        repository = new WaterRepository(this);
 
         // Retrieve user ID from intent
         userId = getIntent().getExtras().getInt("USER_ID", -1);
@@ -36,23 +62,150 @@ public class SettingActivity extends AppCompatActivity {
             return;
         }
 
+        // Performance metrics can be switched off at runtime
+        Switch swMetrics = findViewById(R.id.swMetrics);
+        swMetrics.setChecked(Metrics.isEnabled());
+        swMetrics.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                Metrics.setEnabled(SettingActivity.this, isChecked);
+            }
+        });
+
         // Load existing settings
         loadUserSettings();
+        loadReminderMode();
+        loadStorageMode();
+        loadRetention();
     }
 
-    private void loadUserSettings() {
-        String userEmail = databaseHelper.getUserEmailById(userId);
-        if (userEmail == null) {
-            Toast.makeText(this, "User not found", Toast.LENGTH_SHORT).show();
-            finish();
-            return;
-        }
+    // The reminder mode lives in SharedPreferences, which are read from disk on first use
+    private void loadReminderMode() {
+        final Context appContext = getApplicationContext();
+        repository.execute(new WaterRepository.Query<Boolean>() {
+            @Override
+            public Boolean run(DatabaseHelper helper) {
+                return ReminderScheduler.isAdaptive(appContext);
+            }
+        }, new WaterRepository.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean adaptive) {
+                swAdaptiveReminders.setChecked(adaptive);
+                swAdaptiveReminders.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+                    @Override
+                    public void onCheckedChanged(CompoundButton buttonView, final boolean isChecked) {
+                        repository.executeWrite(new WaterRepository.Query<Void>() {
+                            @Override
+                            public Void run(DatabaseHelper helper) {
+                                ReminderScheduler.setAdaptive(appContext, isChecked);
+                                if (!isChecked) {
+                                    // Bring back any reminders adaptive mode had skipped today
+                                    ReminderScheduler.scheduleNext(appContext, helper.getUserProfile(userId),
+                                            System.currentTimeMillis());
+                                }
+                                return null;
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    // The journal backend is chosen at process start, so a change applies after a restart
+    private void loadStorageMode() {
+        final Context appContext = getApplicationContext();
+        repository.execute(new WaterRepository.Query<Boolean>() {
+            @Override
+            public Boolean run(DatabaseHelper helper) {
+                return IntakeJournal.isEnabled(appContext);
+            }
+        }, new WaterRepository.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean enabled) {
+                swIntakeJournal.setChecked(enabled);
+                swIntakeJournal.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+                    @Override
+                    public void onCheckedChanged(CompoundButton buttonView, final boolean isChecked) {
+                        repository.executeWrite(new WaterRepository.Query<Void>() {
+                            @Override
+                            public Void run(DatabaseHelper helper) {
+                                IntakeJournal.setEnabled(appContext, isChecked);
+                                return null;
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    // Applied by the next compaction, a little after the next start
+    private void loadRetention() {
+        final Context appContext = getApplicationContext();
+        repository.execute(new WaterRepository.Query<Integer>() {
+            @Override
+            public Integer run(DatabaseHelper helper) {
+                return LogCompactor.getRetentionDays(appContext);
+            }
+        }, new WaterRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer retentionDays) {
+                int selected = 0;
+                for (int i = 0; i < RETENTION_DAYS.length; i++) {
+                    if (RETENTION_DAYS[i] == retentionDays) {
+                        selected = i;
+                    }
+                }
+                final int loaded = selected;
+                spRetention.setSelection(loaded, false);
+                spRetention.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+                    private int current = loaded;
 
-        int dailyGoal = databaseHelper.getDailyGoal(userEmail);
-        int reminderInterval = databaseHelper.getReminderInterval(userEmail);
+                    @Override
+                    public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                        if (position == current) {
+                            return;
+                        }
+                        current = position;
+                        final int days = RETENTION_DAYS[position];
+                        repository.executeWrite(new WaterRepository.Query<Void>() {
+                            @Override
+                            public Void run(DatabaseHelper helper) {
+                                LogCompactor.setRetentionDays(appContext, days);
+                                return null;
+                            }
+                        });
+                    }
 
-        etDailyGoal.setText(String.valueOf(dailyGoal));
-        etReminderInterval.setText(String.valueOf(reminderInterval));
+                    @Override
+                    public void onNothingSelected(AdapterView<?> parent) {
+                    }
+                });
+            }
+        });
+    }
+
+    private void loadUserSettings() {
+        final long started = Metrics.start();
+        repository.execute(new WaterRepository.Query<UserProfile>() {
+            @Override
+            public UserProfile run(DatabaseHelper helper) {
+                return helper.getUserProfile(userId);
+            }
+        }, new WaterRepository.Callback<UserProfile>() {
+            @Override
+            public void onResult(UserProfile profile) {
+                if (profile == null) {
+                    Toast.makeText(SettingActivity.this, "User not found", Toast.LENGTH_SHORT).show();
+                    finish();
+                    return;
+                }
+                etDailyGoal.setText(String.valueOf(profile.dailyGoal));
+                etReminderInterval.setText(String.valueOf(profile.reminderInterval));
+                Metrics.end(Metrics.LOAD_SETTINGS, started);
+            }
+        });
     }
 
     public void saveSettings(View view) {
@@ -64,8 +217,8 @@ public class SettingActivity extends AppCompatActivity {
             return;
         }
 
-        int dailyGoal;
-        int reminderInterval;
+        final int dailyGoal;
+        final int reminderInterval;
 
         try {
             dailyGoal = Integer.parseInt(dailyGoalText);
@@ -75,23 +228,160 @@ public class SettingActivity extends AppCompatActivity {
             return;
         }
 
-        String userEmail = databaseHelper.getUserEmailById(userId);
-        if (userEmail == null) {
-            Toast.makeText(this, "Error retrieving user", Toast.LENGTH_SHORT).show();
+        final Context appContext = getApplicationContext();
+        repository.execute(new WaterRepository.Query<Boolean>() {
+            @Override
+            public Boolean run(DatabaseHelper helper) {
+                boolean saved = helper.updateUserSettings(userId, dailyGoal, reminderInterval);
+                if (saved) {
+                    // A new interval reshapes the whole reminder timeline
+                    ReminderScheduler.scheduleNext(appContext, helper.getUserProfile(userId), System.currentTimeMillis());
+                }
+                return saved;
+            }
+        }, new WaterRepository.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean success) {
+                if (success) {
+                    Toast.makeText(SettingActivity.this, "Settings saved successfully", Toast.LENGTH_SHORT).show();
+
+                    // Back to the home screen underneath, which picks up the new goal from the
+                    // invalidation tracker
+                    finish();
+                } else {
+                    Toast.makeText(SettingActivity.this, "Failed to save settings", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+
+    // Ends the saved session, so the next launch asks for the login again, and unbinds
+    // everything that could still log for the user without opening the app
+    public void signOut(View view) {
+        final Context appContext = getApplicationContext();
+        repository.execute(new WaterRepository.Query<Void>() {
+            @Override
+            public Void run(DatabaseHelper helper) {
+                Session.end(appContext, helper, userId);
+                ReminderScheduler.cancel(appContext);
+                QuickLogWidget.unbindUser(appContext);
+                NotificationManagerCompat.from(appContext).cancel(ReminderReceiver.NOTIFICATION_ID);
+                return null;
+            }
+        }, new WaterRepository.Callback<Void>() {
+            @Override
+            public void onResult(Void result) {
+                ProgressCache.getInstance().invalidate(userId);
+
+                // Back to the login screen, with nothing signed-in left on the back stack
+                Intent intent = new Intent(SettingActivity.this, MainActivity.class);
+                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                startActivity(intent);
+                finish();
+            }
+        });
+    }
+
+    // Shares the collected latency numbers so they can be attached to a bug report
+    public void shareMetrics(View view) {
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType("text/plain");
+        intent.putExtra(Intent.EXTRA_SUBJECT, "H2O Buddy performance metrics");
+        intent.putExtra(Intent.EXTRA_TEXT, Metrics.dump());
+        startActivity(Intent.createChooser(intent, "Share metrics"));
+    }
+
+    // Full history as CSV, for spreadsheets and analysis
+    public void exportCsv(View view) {
+        pickExportFile("text/csv", "h2obuddy-history.csv", REQUEST_EXPORT_CSV);
+    }
+
+    // Full history in the compact format, for moving to another device
+    public void exportBinary(View view) {
+        pickExportFile("application/octet-stream", "h2obuddy-history.h2ob", REQUEST_EXPORT_BINARY);
+    }
+
+    private void pickExportFile(String type, String name, int requestCode) {
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(type);
+        intent.putExtra(Intent.EXTRA_TITLE, name);
+        startActivityForResult(intent, requestCode);
+    }
+
+    public void importHistory(View view) {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        startActivityForResult(intent, REQUEST_IMPORT);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
             return;
         }
+        if (requestCode == REQUEST_IMPORT) {
+            importFrom(data.getData());
+        } else if (requestCode == REQUEST_EXPORT_CSV || requestCode == REQUEST_EXPORT_BINARY) {
+            exportTo(data.getData(), requestCode == REQUEST_EXPORT_CSV ? LogArchive.CSV : LogArchive.BINARY);
+        }
+    }
+
+    // Streams straight into the picked document's file channel
+    private void exportTo(final Uri uri, final int format) {
+        final Context appContext = getApplicationContext();
+        repository.execute(new WaterRepository.Query<String>() {
+            @Override
+            public String run(DatabaseHelper helper) {
+                try (ParcelFileDescriptor file = appContext.getContentResolver().openFileDescriptor(uri, "wt");
+                     FileOutputStream out = new FileOutputStream(file.getFileDescriptor())) {
+                    long rows = new LogTransfer(helper).export(userId, format, out.getChannel());
+                    return "Exported " + rows + " entries";
+                } catch (IOException | RuntimeException e) {
+                    return "Export failed: " + e.getMessage();
+                }
+            }
+        }, new WaterRepository.Callback<String>() {
+            @Override
+            public void onResult(String message) {
+                Toast.makeText(SettingActivity.this, message, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
 
-        boolean success = databaseHelper.updateUserSettings(userEmail, dailyGoal, reminderInterval);
-        if (success) {
-            Toast.makeText(this, "Settings saved successfully", Toast.LENGTH_SHORT).show();
+    // Imports the logs and the exported settings; screens refresh from the invalidation tracker
+    private void importFrom(final Uri uri) {
+        final Context appContext = getApplicationContext();
+        repository.execute(new WaterRepository.Query<String>() {
+            @Override
+            public String run(DatabaseHelper helper) {
+                try (ParcelFileDescriptor file = appContext.getContentResolver().openFileDescriptor(uri, "r");
+                     FileInputStream in = new FileInputStream(file.getFileDescriptor())) {
+                    LogTransfer.Result result = new LogTransfer(helper).importInto(userId, in.getChannel(), true);
+                    if (result.settingsApplied) {
+                        ReminderScheduler.scheduleNext(appContext, helper.getUserProfile(userId),
+                                System.currentTimeMillis());
+                    }
+                    return "Imported " + result.imported + " entries, skipped " + result.duplicates
+                            + " already present and " + result.rejected + " invalid";
+                } catch (IOException | RuntimeException e) {
+                    return "Import failed: " + e.getMessage();
+                }
+            }
+        }, new WaterRepository.Callback<String>() {
+            @Override
+            public void onResult(String message) {
+                Toast.makeText(SettingActivity.this, message, Toast.LENGTH_LONG).show();
+                loadUserSettings();
+            }
+        });
+    }
 
-            // Redirect back to HomeActivity
-            Intent intent = new Intent(this, HomeActivity.class);
-            intent.putExtra("USER_ID", userId);
-            startActivity(intent);
-            finish();
-        } else {
-            Toast.makeText(this, "Failed to save settings", Toast.LENGTH_SHORT).show();
-        }
+    @Override
+    protected void onDestroy() {
+        repository.cancelAll();
+        super.onDestroy();
     }
 }
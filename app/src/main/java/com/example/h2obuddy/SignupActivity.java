@@ -16,7 +16,7 @@ public class SignupActivity extends AppCompatActivity {
     private EditText etName, etEmail, etPassword, etDailyGoal;
     private Button btnSignup;
     private TextView tvLogin;
-    private DatabaseHelper databaseHelper;
+    private WaterRepository repository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -31,8 +31,8 @@ public class SignupActivity extends AppCompatActivity {
         btnSignup = findViewById(R.id.btnSignup);
         tvLogin = findViewById(R.id.tvLogin);
 
-        // Initialize DatabaseHelper
-        databaseHelper = new DatabaseHelper(this);
+        // Database work runs in the background through the repository
+        repository = new WaterRepository(this);
 
         // Set up the signup button click listener
         btnSignup.setOnClickListener(new View.OnClickListener() {
@@ -53,9 +53,9 @@ public class SignupActivity extends AppCompatActivity {
     }
 
     private void handleSignup() {
-        String name = etName.getText().toString().trim();
-        String email = etEmail.getText().toString().trim();
-        String password = etPassword.getText().toString().trim();
+        final String name = etName.getText().toString().trim();
+        final String email = etEmail.getText().toString().trim();
+        final String password = etPassword.getText().toString().trim();
         String dailyGoalStr = etDailyGoal.getText().toString().trim();
 
         // Validate input
@@ -69,7 +69,7 @@ public class SignupActivity extends AppCompatActivity {
             return;
         }
 
-        int dailyGoal;
+        final int dailyGoal;
         try {
             dailyGoal = Integer.parseInt(dailyGoalStr);
             if (dailyGoal <= 0) {
@@ -82,15 +82,31 @@ public class SignupActivity extends AppCompatActivity {
         }
 
         // Insert user into the database
-        boolean isInserted = databaseHelper.insertUser(name, email, password, dailyGoal);
+        btnSignup.setEnabled(false);
+        repository.execute(new WaterRepository.Query<Boolean>() {
+            @Override
+            public Boolean run(DatabaseHelper helper) {
+                return helper.insertUser(name, email, password, dailyGoal);
+            }
+        }, new WaterRepository.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean isInserted) {
+                btnSignup.setEnabled(true);
+                if (isInserted) {
+                    Toast.makeText(SignupActivity.this, "Signup successful!", Toast.LENGTH_SHORT).show();
+                    Intent intent = new Intent(SignupActivity.this, MainActivity.class);
+                    startActivity(intent);
+                    finish();
+                } else {
+                    Toast.makeText(SignupActivity.this, "Signup failed. Email may already be registered.", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
 
-        if (isInserted) {
-            Toast.makeText(SignupActivity.this, "Signup successful!", Toast.LENGTH_SHORT).show();
-            Intent intent = new Intent(SignupActivity.this, MainActivity.class);
-            startActivity(intent);
-            finish();
-        } else {
-            Toast.makeText(SignupActivity.this, "Signup failed. Email may already be registered.", Toast.LENGTH_SHORT).show();
-        }
+    @Override
+    protected void onDestroy() {
+        repository.cancelAll();
+        super.onDestroy();
     }
 }
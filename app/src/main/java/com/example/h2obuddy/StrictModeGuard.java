@@ -0,0 +1,28 @@
+package com.example.h2obuddy;
+
+import android.os.StrictMode;
+
+/**
+ * Turns disk access on the main thread into a hard failure. Tests install it so any
+ * DatabaseHelper call that slips back onto the UI thread crashes the run instead of
+ * showing up later as jank.
+ */
+final class StrictModeGuard {
+
+    private StrictModeGuard() {
+    }
+
+    // Must be called on the thread to guard, normally the main thread
+    static void failOnMainThreadDiskIo() {
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .penaltyLog()
+                .penaltyDeath()
+                .build());
+    }
+
+    static void reset() {
+        StrictMode.setThreadPolicy(StrictMode.ThreadPolicy.LAX);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.h2obuddy;
+
+/**
+ * Every setting stored for a user, read from the users table in one query.
+ * Immutable; a settings change replaces the cached instance.
+ */
+public final class UserProfile {
+
+    public final int id;
+    public final String email;
+    public final String name;
+    public final int dailyGoal;
+    public final int reminderInterval;
+    public final int wakeUpHour;
+    public final int wakeUpMinute;
+    public final int bedTimeHour;
+    public final int bedTimeMinute;
+
+    public UserProfile(int id, String email, String name, int dailyGoal, int reminderInterval,
+                       int wakeUpHour, int wakeUpMinute, int bedTimeHour, int bedTimeMinute) {
+        this.id = id;
+        this.email = email;
+        this.name = name;
+        this.dailyGoal = dailyGoal;
+        this.reminderInterval = reminderInterval;
+        this.wakeUpHour = wakeUpHour;
+        this.wakeUpMinute = wakeUpMinute;
+        this.bedTimeHour = bedTimeHour;
+        this.bedTimeMinute = bedTimeMinute;
+    }
+}
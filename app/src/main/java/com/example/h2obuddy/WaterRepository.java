@@ -0,0 +1,219 @@
+package com.example.h2obuddy;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link DatabaseHelper} work off the main thread and hands results back on it.
+ *
+ * Each activity owns one repository and calls {@link #cancelAll()} from onDestroy, so callbacks
+ * never reach a destroyed screen. All repositories share one small executor. Its queue is
+ * unbounded: callers are the main thread and receivers, and a write must never be rejected
+ * there; the queue only grows while the two threads are busy.
+ */
+public class WaterRepository {
+
+    // Work to run against the database on a background thread
+    public interface Query<T> {
+        T run(DatabaseHelper helper);
+    }
+
+    // Receives the result on the main thread
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private static final int THREADS = 2;
+
+    // Long enough for a cold start's first screen or quick-log write to be done
+    private static final long COMPACTION_DELAY_MILLIS = 30 * 1000;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            THREADS, THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "h2o-db-" + count.incrementAndGet());
+                }
+            });
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private final DatabaseHelper databaseHelper;
+    private final Set<Task<?>> pending = new HashSet<>();
+
+    public WaterRepository(Context context) {
+        this(DatabaseHelper.getInstance(context));
+    }
+
+    WaterRepository(DatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+    }
+
+    // Opens (and if needed creates or migrates) the shared database off the main thread,
+    // so the first screen that queries it doesn't pay for the open. The saved metrics setting
+    // is applied before that, off the main thread as well. The intake journal, when
+    // enabled, is attached right after; drinks logged before that go straight to SQLite.
+    // Then runs {@code then} on the same thread, so it reads drinks a previous process left in
+    // the journal as well
+    static void prewarm(Context context, final Runnable then) {
+        final Context appContext = context.getApplicationContext();
+        final DatabaseHelper helper = DatabaseHelper.getInstance(context);
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Metrics.restore(appContext);
+                    helper.getWritableDatabase();
+                    try {
+                        IntakeJournal.attach(appContext, helper);
+                    } catch (IOException e) {
+                        // Keep writing to SQLite; the journal file is retried next start
+                    }
+                } finally {
+                    then.run();
+                }
+            }
+        });
+    }
+
+    // Compacts old logs in the background, a while after the process starts and at most once
+    // a day. Processes started for a reminder or a quick log are usually gone before then
+    static void scheduleCompaction(Context context) {
+        final Context appContext = context.getApplicationContext();
+        final DatabaseHelper helper = DatabaseHelper.getInstance(context);
+        MAIN.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                runInBackground(new Runnable() {
+                    @Override
+                    public void run() {
+                        LogCompactor.runIfDue(appContext, helper);
+                    }
+                });
+            }
+        }, COMPACTION_DELAY_MILLIS);
+    }
+
+    // Runs work that isn't tied to a screen, e.g. from a BroadcastReceiver
+    static void runInBackground(Runnable work) {
+        EXECUTOR.execute(work);
+    }
+
+    /**
+     * Queues {@code query} on the database executor. Exceptions thrown by the query are
+     * rethrown on the main thread, as they would have been when the call was synchronous.
+     */
+    public <T> Task<T> execute(Query<T> query, Callback<T> callback) {
+        Task<T> task = new Task<>(query, callback);
+        synchronized (pending) {
+            pending.add(task);
+        }
+        task.future = EXECUTOR.submit(task);
+        return task;
+    }
+
+    /**
+     * Queues a write that must happen even if the screen that issued it goes away.
+     * Not tracked by {@link #cancelAll()} and has no result callback.
+     */
+    public void executeWrite(final Query<?> write) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                write.run(databaseHelper);
+            }
+        });
+    }
+
+    // Drops every queued or in-flight result; call from onDestroy
+    public void cancelAll() {
+        synchronized (pending) {
+            for (Task<?> task : pending) {
+                task.cancel();
+            }
+            pending.clear();
+        }
+    }
+
+    public final class Task<T> implements Runnable {
+
+        private final Query<T> query;
+        private final Callback<T> callback;
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        private Task(Query<T> query, Callback<T> callback) {
+            this.query = query;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            final T result;
+            try {
+                result = query.run(databaseHelper);
+            } catch (final RuntimeException e) {
+                finish();
+                MAIN.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        throw e;
+                    }
+                });
+                return;
+            }
+            MAIN.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled) {
+                        finish();
+                        callback.onResult(result);
+                    }
+                }
+            });
+        }
+
+        // Never interrupts a running statement; the result is simply not delivered
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        private void finish() {
+            synchronized (pending) {
+                pending.remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.h2obuddy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EpochDaysTest {
+    @Test
+    public void knownDates() {
+        assertEquals(0, EpochDays.fromDate("1970-01-01"));
+        assertEquals(19783, EpochDays.fromDate("2024-03-01"));
+        assertEquals("2024-02-29", EpochDays.toDate(19782));
+    }
+
+    @Test
+    public void roundTripsEveryDayOfFourHundredYears() {
+        for (int day = EpochDays.of(1900, 1, 1); day < EpochDays.of(2300, 1, 1); day++) {
+            assertEquals(day, EpochDays.fromDate(EpochDays.toDate(day)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonIsoDates() {
+        EpochDays.fromDate("01/03/2024");
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.h2obuddy;
+
+import android.app.Application;
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the trigger-maintained goal bitmap, and the streaks read from it, against a
+ * brute-force recomputation from every logged drink and goal change.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class GoalBitmapTest {
+
+    private static final String TEST_DB = "goal-bitmap-test.db";
+    private static final int DAYS = 400;
+
+    private Context context;
+    private TimeZone defaultZone;
+    private DatabaseHelper helper;
+    private Random random;
+    private int userId;
+    private int today;
+
+    // Brute-force model: every drink per day offset, and every goal change by first day
+    private final int[] totals = new int[DAYS];
+    private final TreeMap<Integer, Integer> goals = new TreeMap<>();
+
+    @Before
+    public void setUp() {
+        defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        context = RuntimeEnvironment.getApplication();
+        context.deleteDatabase(TEST_DB);
+        PasswordHasher.setIterations(1);
+        helper = new DatabaseHelper(context, TEST_DB);
+        today = EpochDays.today();
+        userId = new SyntheticData(23).populate(helper, 1, today, 0)[0];
+        goals.put(0, helper.getUserProfile(userId).dailyGoal);
+        random = new Random(23);
+    }
+
+    @After
+    public void tearDown() {
+        PasswordHasher.setIterations(PasswordHasher.DEFAULT_ITERATIONS);
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+        TimeZone.setDefault(defaultZone);
+    }
+
+    private int firstDay() {
+        return today - DAYS + 1;
+    }
+
+    private void logRandomDrinks(int count) {
+        List<IntakeEvent> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int offset = random.nextInt(DAYS);
+            int amount = 250 * (1 + random.nextInt(3));
+            long noon = (long) (firstDay() + offset) * EpochDays.MILLIS_PER_DAY + EpochDays.MILLIS_PER_DAY / 2;
+            totals[offset] += amount;
+            if (random.nextBoolean()) {
+                batch.add(new IntakeEvent(userId, noon, amount));
+            } else {
+                helper.insertWaterLog(new IntakeEvent(userId, noon, amount));
+            }
+        }
+        helper.insertWaterLogs(batch);
+    }
+
+    private void changeGoal(int fromDay, int goal) {
+        helper.setDailyGoalFrom(userId, goal, fromDay);
+        goals.put(fromDay, goal);
+    }
+
+    private boolean expectedMet(int day) {
+        int total = totals[day - firstDay()];
+        return total > 0 && total >= goals.floorEntry(day).getValue();
+    }
+
+    private void assertMatchesBruteForce() {
+        GoalBitmap bitmap = helper.getGoalBitmap(userId);
+
+        int longest = 0;
+        int run = 0;
+        for (int day = firstDay(); day <= today; day++) {
+            assertEquals("day " + day, expectedMet(day), bitmap.isMet(day));
+            run = expectedMet(day) ? run + 1 : 0;
+            longest = Math.max(longest, run);
+        }
+        assertEquals(longest, bitmap.longestStreak());
+
+        int current = 0;
+        for (int day = expectedMet(today) ? today : today - 1; day >= firstDay() && expectedMet(day); day--) {
+            current++;
+        }
+        assertEquals(current, bitmap.currentStreak(today));
+
+        for (int i = 0; i < 50; i++) {
+            int from = firstDay() + random.nextInt(DAYS);
+            int to = from + random.nextInt(today - from + 1);
+            int count = 0;
+            for (int day = from; day <= to; day++) {
+                count += expectedMet(day) ? 1 : 0;
+            }
+            assertEquals(count, bitmap.countMet(from, to));
+        }
+
+        // History rows carry the same flags
+        DailyHistory history = helper.getDailyTotalsBefore(userId, Integer.MAX_VALUE, DAYS);
+        for (int i = 0; i < history.size(); i++) {
+            assertEquals(expectedMet(history.getDay(i)), history.isGoalMet(i));
+        }
+    }
+
+    @Test
+    public void bitmapFollowsInsertsAndGoalChanges() {
+        logRandomDrinks(2000);
+        assertMatchesBruteForce();
+
+        for (int i = 0; i < 10; i++) {
+            changeGoal(firstDay() + random.nextInt(DAYS), 1000 + 250 * random.nextInt(8));
+            logRandomDrinks(100);
+        }
+        assertMatchesBruteForce();
+    }
+
+    @Test
+    public void settingsChangeOnlyMovesTodaysGoal() {
+        logRandomDrinks(2000);
+        helper.updateUserSettings(userId, 500, 60);
+        goals.put(today, 500);
+        assertMatchesBruteForce();
+    }
+
+    @Test
+    public void bitmapSurvivesCompactionAndRebuild() {
+        logRandomDrinks(3000);
+        changeGoal(today - 200, 1250);
+        changeGoal(today - 100, 2500);
+
+        assertTrue(new LogCompactor(helper, 30, LogCompactor.NO_RETENTION).run() > 0);
+        assertMatchesBruteForce();
+
+        helper.getWritableDatabase().execSQL("UPDATE daily_totals SET total = total + 1 WHERE user_id = " + userId);
+        assertTrue(helper.checkDailyTotals(true) > 0);
+        assertMatchesBruteForce();
+    }
+
+    @Test
+    public void streaksRunAcrossWords() {
+        // Days 60..200 met, spanning words 0..3, with today (201) still open
+        long[] words = new long[4];
+        for (int day = 60; day <= 200; day++) {
+            words[day >> 6] |= 1L << (day & 63);
+        }
+        GoalBitmap bitmap = new GoalBitmap(0, words);
+
+        assertEquals(141, bitmap.longestStreak());
+        assertEquals(141, bitmap.currentStreak(201));
+        assertEquals(141, bitmap.currentStreak(200));
+        assertEquals(0, bitmap.currentStreak(205));
+        assertEquals(4, bitmap.countMet(0, 63));
+        assertEquals(141, bitmap.countMet(0, 400));
+        assertFalse(bitmap.isMet(59));
+        assertTrue(bitmap.isMet(127));
+    }
+}
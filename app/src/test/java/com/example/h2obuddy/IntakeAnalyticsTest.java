@@ -0,0 +1,196 @@
+package com.example.h2obuddy;
+
+import android.app.Application;
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class IntakeAnalyticsTest {
+
+    private static final String TEST_DB = "analytics-test.db";
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final long HOUR = 60L * 60 * 1000;
+    private static final int FIRST_DAY = EpochDays.of(2024, 3, 4); // a Monday
+
+    private Context context;
+    private TimeZone defaultZone;
+    private DatabaseHelper helper;
+    private int userId;
+
+    @Before
+    public void setUp() {
+        defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(UTC);
+        context = RuntimeEnvironment.getApplication();
+        context.deleteDatabase(TEST_DB);
+        PasswordHasher.setIterations(1);
+        helper = new DatabaseHelper(context, TEST_DB);
+        userId = new SyntheticData(5).populate(helper, 1, FIRST_DAY, 0)[0];
+    }
+
+    @After
+    public void tearDown() {
+        PasswordHasher.setIterations(PasswordHasher.DEFAULT_ITERATIONS);
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+        TimeZone.setDefault(defaultZone);
+    }
+
+    private static long at(int day, int hour) {
+        return day * EpochDays.MILLIS_PER_DAY + hour * HOUR + 15 * 60 * 1000;
+    }
+
+    @Test
+    public void histogramsAndPaceFromTimedRows() {
+        IntakeAnalytics analytics = new IntakeAnalytics(FIRST_DAY, FIRST_DAY + 6, UTC);
+        analytics.add(FIRST_DAY, at(FIRST_DAY, 8), true, 250);
+        analytics.add(FIRST_DAY, at(FIRST_DAY, 8), true, 250);
+        analytics.add(FIRST_DAY, at(FIRST_DAY, 14), true, 500);
+        analytics.add(FIRST_DAY + 2, at(FIRST_DAY + 2, 14), true, 300);
+        analytics.add(FIRST_DAY + 5, 0, false, 1000); // untimed, Saturday
+        analytics.add(FIRST_DAY + 9, at(FIRST_DAY + 9, 9), true, 700); // outside the range
+        analytics.finish();
+
+        assertEquals(5, analytics.getRowCount());
+        assertEquals(500, analytics.getHourTotal(8));
+        assertEquals(800, analytics.getHourTotal(14));
+        assertEquals(400, analytics.getHourAverage(14)); // two days with timed rows
+        assertEquals(1000, analytics.getUntimedAmount());
+
+        assertEquals(1000, analytics.getWeekdayTotal(0));
+        assertEquals(300, analytics.getWeekdayTotal(2));
+        assertEquals(1000, analytics.getWeekdayTotal(5));
+        assertEquals(0, analytics.getWeekdayTotal(6));
+
+        int[] pace = new int[IntakeAnalytics.HOURS];
+        analytics.getPaceCurve(0, pace);
+        assertEquals(0, pace[7]);
+        assertEquals(500, pace[8]);
+        assertEquals(500, pace[13]);
+        assertEquals(1000, pace[23]);
+
+        analytics.getAveragePaceCurve(pace);
+        assertEquals(250, pace[8]);
+        assertEquals(650, pace[14]);
+    }
+
+    @Test
+    public void rollingAveragesShortenAtTheStartOfTheRange() {
+        IntakeAnalytics analytics = new IntakeAnalytics(FIRST_DAY, FIRST_DAY + 9, UTC);
+        for (int i = 0; i < 10; i++) {
+            analytics.add(FIRST_DAY + i, 0, false, 100 * (i + 1));
+        }
+        analytics.finish();
+
+        assertEquals(100, analytics.getRollingAverage(0, IntakeAnalytics.WEEK));
+        assertEquals(200, analytics.getRollingAverage(2, IntakeAnalytics.WEEK));
+        assertEquals(700, analytics.getRollingAverage(9, IntakeAnalytics.WEEK)); // days 4..10
+        assertEquals(550, analytics.getRollingAverage(9, IntakeAnalytics.MONTH));
+    }
+
+    @Test
+    public void matchesBruteForceOverRandomRows() {
+        int days = 60;
+        Random random = new Random(42);
+        int[] rowDays = new int[5000];
+        long[] rowTimes = new long[rowDays.length];
+        boolean[] timed = new boolean[rowDays.length];
+        int[] amounts = new int[rowDays.length];
+
+        IntakeAnalytics analytics = new IntakeAnalytics(FIRST_DAY, FIRST_DAY + days - 1, UTC);
+        for (int i = 0; i < rowDays.length; i++) {
+            rowDays[i] = FIRST_DAY + random.nextInt(days);
+            rowTimes[i] = rowDays[i] * EpochDays.MILLIS_PER_DAY + (long) (random.nextDouble() * EpochDays.MILLIS_PER_DAY);
+            timed[i] = random.nextInt(10) != 0;
+            amounts[i] = 50 + random.nextInt(500);
+            analytics.add(rowDays[i], rowTimes[i], timed[i], amounts[i]);
+        }
+        analytics.finish();
+
+        for (int day = 0; day < days; day++) {
+            int total = 0;
+            int[] pace = new int[IntakeAnalytics.HOURS];
+            for (int i = 0; i < rowDays.length; i++) {
+                if (rowDays[i] - FIRST_DAY != day) {
+                    continue;
+                }
+                total += amounts[i];
+                if (timed[i]) {
+                    int hour = (int) (rowTimes[i] % EpochDays.MILLIS_PER_DAY / HOUR);
+                    for (int h = hour; h < pace.length; h++) {
+                        pace[h] += amounts[i];
+                    }
+                }
+            }
+            assertEquals(total, analytics.getDailyTotal(day));
+            int[] curve = new int[IntakeAnalytics.HOURS];
+            analytics.getPaceCurve(day, curve);
+            assertArrayEquals(pace, curve);
+
+            for (int window : new int[]{IntakeAnalytics.WEEK, IntakeAnalytics.MONTH}) {
+                int from = Math.max(0, day - window + 1);
+                long sum = 0;
+                for (int d = from; d <= day; d++) {
+                    sum += analytics.getDailyTotal(d);
+                }
+                assertEquals(sum / (day + 1 - from), analytics.getRollingAverage(day, window));
+            }
+        }
+
+        for (int hour = 0; hour < IntakeAnalytics.HOURS; hour++) {
+            int total = 0;
+            for (int i = 0; i < rowDays.length; i++) {
+                if (timed[i] && rowTimes[i] % EpochDays.MILLIS_PER_DAY / HOUR == hour) {
+                    total += amounts[i];
+                }
+            }
+            assertEquals(total, analytics.getHourTotal(hour));
+        }
+
+        int[] weekdays = new int[IntakeAnalytics.WEEKDAYS];
+        for (int i = 0; i < rowDays.length; i++) {
+            weekdays[(rowDays[i] - FIRST_DAY) % 7] += amounts[i];
+        }
+        for (int w = 0; w < weekdays.length; w++) {
+            assertEquals(weekdays[w], analytics.getWeekdayTotal(w));
+        }
+    }
+
+    @Test
+    public void databaseScanKeepsLogTimes() {
+        helper.insertWaterLog(new IntakeEvent(userId, at(FIRST_DAY, 7), 250));
+        helper.insertWaterLog(new IntakeEvent(userId, at(FIRST_DAY, 19), 400));
+        helper.insertWaterLogs(Arrays.asList(
+                new IntakeEvent(userId, at(FIRST_DAY + 1, 7), 300),
+                new IntakeEvent(userId, at(FIRST_DAY + 1, 12), 200)));
+        helper.insertWaterLog(userId, FIRST_DAY + 1, 100); // day only
+
+        IntakeAnalytics analytics = helper.getIntakeAnalytics(userId, FIRST_DAY, FIRST_DAY + 1);
+
+        assertEquals(5, analytics.getRowCount());
+        assertEquals(650, analytics.getDailyTotal(0));
+        assertEquals(600, analytics.getDailyTotal(1));
+        assertEquals(550, analytics.getHourTotal(7));
+        assertEquals(400, analytics.getHourTotal(19));
+        assertEquals(200, analytics.getHourTotal(12));
+        assertEquals(100, analytics.getUntimedAmount());
+        assertEquals(650, analytics.getWeekdayTotal(0));
+        assertEquals(600, analytics.getWeekdayTotal(1));
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.h2obuddy;
+
+import android.app.Application;
+import android.content.Context;
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * The memory-mapped intake journal: reads see drinks before they are folded, folds move them
+ * into water_logs exactly once, and replay after a crash recovers every intact record.
+ * "Crashing" here means opening the file again without closing the first journal.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class IntakeJournalTest {
+
+    private static final String TEST_DB = "journal-test.db";
+    private static final int CAPACITY = 64;
+
+    private Context context;
+    private DatabaseHelper helper;
+    private File file;
+    private int userId;
+    private int today;
+
+    // Background folds are queued here and run when a test says so
+    private final List<Runnable> queuedFolds = new ArrayList<>();
+    private final Executor queue = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            queuedFolds.add(command);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        context.deleteDatabase(TEST_DB);
+        PasswordHasher.setIterations(1);
+        helper = new DatabaseHelper(context, TEST_DB);
+        file = new File(context.getFilesDir(), "journal-test.journal");
+        file.delete();
+        helper.insertUser("Journal", "journal@example.com", SyntheticData.PASSWORD, 2000);
+        userId = helper.getUserIdByEmail("journal@example.com");
+        today = EpochDays.today();
+    }
+
+    @After
+    public void tearDown() {
+        PasswordHasher.setIterations(PasswordHasher.DEFAULT_ITERATIONS);
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+        file.delete();
+    }
+
+    private IntakeJournal open() throws IOException {
+        return IntakeJournal.open(file, helper, CAPACITY, queue);
+    }
+
+    private int loggedRows() {
+        try (Cursor cursor = helper.getReadableDatabase().rawQuery("SELECT COUNT(*) FROM water_logs", null)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    // What water_logs alone says the user drank on the day
+    private int foldedTotal(int day) {
+        try (Cursor cursor = helper.getReadableDatabase().rawQuery(
+                "SELECT IFNULL(SUM(amount), 0) FROM water_logs WHERE user_id = ? AND day = ?",
+                new String[]{String.valueOf(userId), String.valueOf(day)})) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    @Test
+    public void readsSeeDrinksBeforeTheyAreFolded() throws IOException {
+        helper.setIntakeStore(open());
+        helper.insertWaterLog(new IntakeEvent(userId, System.currentTimeMillis(), 250));
+        helper.insertWaterLog(userId, today, 300);
+        helper.insertWaterLog(userId, today - 1, 400);
+
+        assertEquals(0, loggedRows());
+        assertEquals(550, helper.getDailyWaterIntake(userId, today));
+        assertEquals(400, helper.getDailyWaterIntake(userId, today - 1));
+
+        // History reads fold first
+        assertEquals(2, helper.getDailyTotals(userId).size());
+        assertEquals(3, loggedRows());
+        assertEquals(550, helper.getDailyWaterIntake(userId, today));
+    }
+
+    @Test
+    public void halfFullJournalQueuesOneFold() throws IOException {
+        IntakeJournal journal = open();
+        helper.setIntakeStore(journal);
+        for (int i = 0; i < CAPACITY / 2; i++) {
+            helper.insertWaterLog(userId, today, 100);
+        }
+        assertEquals(1, queuedFolds.size());
+
+        queuedFolds.remove(0).run();
+        assertEquals(0, journal.getPendingCount());
+        assertEquals(CAPACITY / 2 * 100, foldedTotal(today));
+        assertEquals(CAPACITY / 2 * 100, helper.getDailyWaterIntake(userId, today));
+    }
+
+    @Test
+    public void rejectedFoldIsQueuedAgain() throws IOException {
+        final boolean[] rejected = {false};
+        IntakeJournal journal = IntakeJournal.open(file, helper, CAPACITY, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (!rejected[0]) {
+                    rejected[0] = true;
+                    throw new RejectedExecutionException();
+                }
+                queuedFolds.add(command);
+            }
+        });
+        helper.setIntakeStore(journal);
+        for (int i = 0; i <= CAPACITY / 2; i++) {
+            helper.insertWaterLog(userId, today, 100);
+        }
+        assertTrue(rejected[0]);
+        assertEquals(1, queuedFolds.size());
+
+        queuedFolds.remove(0).run();
+        assertEquals(0, journal.getPendingCount());
+    }
+
+    @Test
+    public void fullJournalFoldsOnAppend() throws IOException {
+        IntakeJournal journal = open();
+        helper.setIntakeStore(journal);
+        // Folds queued in the background never run here, so the writer has to fold
+        for (int i = 0; i < CAPACITY * 3 + 5; i++) {
+            helper.insertWaterLog(userId, today - i % 3, 100);
+        }
+        assertTrue(journal.getPendingCount() <= CAPACITY);
+        int total = 0;
+        for (int d = 0; d < 3; d++) {
+            assertEquals(helper.getDailyWaterIntake(userId, today - d),
+                    foldedTotal(today - d) + journal.pendingTotal(userId, today - d));
+            total += helper.getDailyWaterIntake(userId, today - d);
+        }
+        assertEquals((CAPACITY * 3 + 5) * 100, total);
+    }
+
+    @Test
+    public void replayRecoversUnfoldedRecords() throws IOException {
+        IntakeJournal crashed = open();
+        for (int i = 0; i < 10; i++) {
+            crashed.append(userId, today, DatabaseHelper.NO_TIME, 250);
+        }
+        crashed.append(userId, today - 1, 1234567L, 500);
+
+        IntakeJournal reopened = open();
+        assertEquals(11, reopened.getPendingCount());
+        assertEquals(2500, reopened.pendingTotal(userId, today));
+        assertEquals(500, reopened.pendingTotal(userId, today - 1));
+
+        assertEquals(11, reopened.fold());
+        assertEquals(2500, foldedTotal(today));
+        assertEquals(500, foldedTotal(today - 1));
+
+        // Folded records are never replayed again
+        assertEquals(0, open().getPendingCount());
+    }
+
+    @Test
+    public void tornRecordEndsReplay() throws IOException {
+        IntakeJournal crashed = open();
+        for (int i = 0; i < 5; i++) {
+            crashed.append(userId, today, DatabaseHelper.NO_TIME, 100);
+        }
+        // Half of the last record reached the file
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(32 + 4 * 32 + 24); // its amount
+            raw.writeInt(0);
+        }
+
+        IntakeJournal reopened = open();
+        assertEquals(4, reopened.getPendingCount());
+        assertEquals(400, reopened.pendingTotal(userId, today));
+
+        // New records go after the intact ones
+        reopened.append(userId, today, DatabaseHelper.NO_TIME, 50);
+        assertEquals(450, open().pendingTotal(userId, today));
+    }
+
+    @Test
+    public void foldedRecordsLeftInTheFileAreSkipped() throws IOException {
+        IntakeJournal journal = open();
+        for (int i = 0; i < 8; i++) {
+            journal.append(userId, today, DatabaseHelper.NO_TIME, 125);
+        }
+        // A fold only commits folded_seq; the file keeps every record until slot 0 is rewritten
+        journal.fold();
+
+        IntakeJournal reopened = open();
+        assertEquals(0, reopened.getPendingCount());
+        assertEquals(0, reopened.fold());
+        assertEquals(1000, foldedTotal(today));
+    }
+
+    @Test
+    public void staleRecordsAfterRestartAreNotReplayed() throws IOException {
+        IntakeJournal journal = open();
+        for (int i = 0; i < 10; i++) {
+            journal.append(userId, today, DatabaseHelper.NO_TIME, 100);
+        }
+        journal.fold();
+        for (int i = 0; i < 3; i++) {
+            journal.append(userId, today, DatabaseHelper.NO_TIME, 10);
+        }
+
+        // Slots 3..9 still hold folded records from before the restart
+        IntakeJournal reopened = open();
+        assertEquals(3, reopened.getPendingCount());
+        assertEquals(30, reopened.pendingTotal(userId, today));
+        reopened.fold();
+        assertEquals(1030, foldedTotal(today));
+    }
+
+    @Test
+    public void closingTheHelperFoldsTheJournal() throws IOException {
+        helper.setIntakeStore(open());
+        helper.insertWaterLog(userId, today, 250);
+        helper.close();
+
+        helper = new DatabaseHelper(context, TEST_DB);
+        assertEquals(250, foldedTotal(today));
+        assertEquals(0, open().getPendingCount());
+    }
+
+    @Test
+    public void attachAnnouncesReplayedDrinks() throws IOException {
+        File left = new File(context.getFilesDir(), IntakeJournal.FILE_NAME);
+        IntakeJournal crashed = IntakeJournal.open(left, helper, CAPACITY, queue);
+        crashed.append(userId, today, DatabaseHelper.NO_TIME, 250);
+
+        ProgressCache cache = ProgressCache.getInstance();
+        helper.getInvalidationTracker().addImmediateObserver(cache);
+        try {
+            // Cached before the replay, as a quick-log or widget could during a cold start
+            assertEquals(0, cache.load(helper, userId).getTodayTotal());
+            IntakeJournal.attach(context, helper);
+            assertNull(cache.get(userId));
+            assertEquals(250, cache.load(helper, userId).getTodayTotal());
+            assertFalse("disabled, so folded and deleted", left.exists());
+        } finally {
+            cache.invalidate(userId);
+            left.delete();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.h2obuddy;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class InvalidationTrackerTest {
+
+    private static final String TEST_DB = "tracker-test.db";
+
+    private Context context;
+    private DatabaseHelper helper;
+    private InvalidationTracker tracker;
+    private int userId;
+    private int otherUserId;
+
+    // Records deliveries as "intake user day delta" / "user id" lines
+    private static final class Recorder implements InvalidationTracker.Observer {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onIntakeChanged(int userId, int day, int delta) {
+            events.add("intake " + userId + " " + day + " " + delta);
+        }
+
+        @Override
+        public void onUserChanged(int userId) {
+            events.add("user " + userId);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        context.deleteDatabase(TEST_DB);
+        PasswordHasher.setIterations(1);
+        helper = new DatabaseHelper(context, TEST_DB);
+        int[] ids = new SyntheticData(3).populate(helper, 2, EpochDays.today(), 0);
+        userId = ids[0];
+        otherUserId = ids[1];
+        tracker = helper.getInvalidationTracker();
+    }
+
+    @After
+    public void tearDown() {
+        PasswordHasher.setIterations(PasswordHasher.DEFAULT_ITERATIONS);
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    private static void deliver() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    @Test
+    public void coalescesWritesIntoOneDeltaPerUserAndDay() {
+        Recorder recorder = new Recorder();
+        tracker.addObserver(InvalidationTracker.ALL_USERS, recorder);
+
+        helper.insertWaterLog(userId, 100, 250);
+        helper.insertWaterLog(userId, 100, 500);
+        helper.insertWaterLog(userId, 99, 300);
+        assertTrue("delivered only once the main thread runs", recorder.events.isEmpty());
+
+        deliver();
+        assertEquals(Arrays.asList("intake " + userId + " 99 300", "intake " + userId + " 100 750"),
+                recorder.events);
+
+        recorder.events.clear();
+        deliver();
+        assertTrue(recorder.events.isEmpty());
+    }
+
+    @Test
+    public void batchInsertsPublishAfterCommit() {
+        Recorder recorder = new Recorder();
+        tracker.addObserver(userId, recorder);
+        long noon = EpochDays.of(2024, 3, 1) * EpochDays.MILLIS_PER_DAY + 12 * 60 * 60 * 1000;
+
+        helper.insertWaterLogs(Arrays.asList(
+                new IntakeEvent(userId, noon, 200),
+                new IntakeEvent(userId, noon, 0), // rejected, not published
+                new IntakeEvent(userId, noon, 300)));
+        deliver();
+
+        assertEquals(Arrays.asList("intake " + userId + " " + EpochDays.fromMillis(noon) + " 500"), recorder.events);
+    }
+
+    @Test
+    public void userScopedObserversOnlySeeTheirUser() {
+        Recorder mine = new Recorder();
+        Recorder everyone = new Recorder();
+        tracker.addObserver(userId, mine);
+        tracker.addObserver(InvalidationTracker.ALL_USERS, everyone);
+
+        helper.insertWaterLog(otherUserId, 100, 250);
+        helper.updateUserSettings(otherUserId, 2500, 30);
+        helper.saveNotificationTimes(userId, 7, 0, 22, 0);
+        deliver();
+
+        assertEquals(Arrays.asList("user " + userId), mine.events);
+        assertEquals(3, everyone.events.size());
+
+        // An email-keyed write can't say whose row changed, so everyone hears about it
+        mine.events.clear();
+        helper.updateUserSettings(SyntheticData.email(1), 2000, 60);
+        deliver();
+        assertEquals(Arrays.asList("user " + InvalidationTracker.ALL_USERS), mine.events);
+    }
+
+    @Test
+    public void removedObserversAreNotCalled() {
+        Recorder recorder = new Recorder();
+        tracker.addObserver(userId, recorder);
+        helper.insertWaterLog(userId, 100, 250);
+        tracker.removeObserver(recorder);
+        deliver();
+
+        assertTrue(recorder.events.isEmpty());
+    }
+
+    @Test
+    public void immediateObserversKeepTheProgressCacheCurrent() {
+        ProgressCache cache = ProgressCache.getInstance();
+        tracker.addImmediateObserver(cache);
+        int today = EpochDays.today();
+        try {
+            cache.load(helper, userId);
+            helper.insertWaterLog(userId, today, 250);
+            helper.insertWaterLog(userId, today - 1, 400); // not today, not cached
+            // No main-thread delivery needed
+            assertEquals(250, cache.get(userId).getTodayTotal());
+
+            helper.updateUserSettings(userId, 3000, 60);
+            assertNull(cache.get(userId));
+            assertEquals(3000, cache.load(helper, userId).dailyGoal);
+        } finally {
+            cache.invalidate(userId);
+        }
+    }
+
+    @Test
+    public void maintenancePublishesTheUsersItTouched() {
+        int old = EpochDays.today() - 200;
+        helper.insertWaterLog(userId, old, 250);
+        helper.insertWaterLog(userId, old, 500);
+        helper.insertWaterLog(otherUserId, old - 1, 300);
+        Recorder recorder = new Recorder();
+        tracker.addObserver(InvalidationTracker.ALL_USERS, recorder);
+        deliver();
+        recorder.events.clear();
+
+        // Only userId had a day with more than one entry
+        helper.compactLogsBefore(old + 1, 10);
+        deliver();
+        assertEquals(Arrays.asList("user " + userId), recorder.events);
+
+        recorder.events.clear();
+        helper.deleteLogsBefore(old + 1, 10);
+        deliver();
+        assertEquals(2, recorder.events.size());
+        assertTrue(recorder.events.contains("user " + userId));
+        assertTrue(recorder.events.contains("user " + otherUserId));
+    }
+
+    @Test
+    public void writesThatOvertakeALoadAreNotLost() {
+        ProgressCache cache = ProgressCache.getInstance();
+        final int today = EpochDays.today();
+        // A drink commits and is published between the load's read and its caching
+        DatabaseHelper racing = new DatabaseHelper(context, TEST_DB) {
+            private boolean raced;
+
+            @Override
+            public int getDailyWaterIntake(int id, int day) {
+                int total = super.getDailyWaterIntake(id, day);
+                if (!raced) {
+                    raced = true;
+                    insertWaterLog(id, day, 250);
+                }
+                return total;
+            }
+        };
+        racing.getInvalidationTracker().addImmediateObserver(cache);
+        try {
+            assertEquals(250, cache.load(racing, userId).getTodayTotal());
+            racing.insertWaterLog(userId, today, 100);
+            assertEquals(350, cache.get(userId).getTodayTotal());
+        } finally {
+            cache.invalidate(userId);
+            racing.close();
+        }
+    }
+}
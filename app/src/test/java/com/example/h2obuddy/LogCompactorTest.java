@@ -0,0 +1,126 @@
+package com.example.h2obuddy;
+
+import android.app.Application;
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class LogCompactorTest {
+
+    private static final String TEST_DB = "compactor-test.db";
+    private static final int USERS = 5;
+    private static final int DAYS = 400;
+
+    private Context context;
+    private DatabaseHelper helper;
+    private int[] ids;
+    private int today;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        // Anchored to today because the compactor measures its windows from today
+        today = EpochDays.today();
+        ids = new SyntheticData(11).populate(helper, USERS, today, DAYS);
+        helper.reclaimSpace(Integer.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        context.getSharedPreferences("storage", Context.MODE_PRIVATE).edit().clear().commit();
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void compactionKeepsHistoryAndShrinksFile() {
+        DailyHistory[] before = fullHistories();
+        File file = context.getDatabasePath(TEST_DB);
+        long sizeBefore = file.length();
+
+        int compacted = new LogCompactor(helper, 30, LogCompactor.NO_RETENTION).run();
+
+        assertEquals(USERS * (DAYS - 30), compacted, USERS * 2);
+        DailyHistory[] after = fullHistories();
+        for (int u = 0; u < USERS; u++) {
+            assertEquals(before[u].size(), after[u].size());
+            for (int i = 0; i < before[u].size(); i++) {
+                assertEquals(before[u].getDay(i), after[u].getDay(i));
+                assertEquals(before[u].getTotal(i), after[u].getTotal(i));
+                assertEquals(before[u].isGoalMet(i), after[u].isGoalMet(i));
+            }
+        }
+        assertEquals(0, helper.checkDailyTotals(false));
+        assertTrue("file did not shrink: " + sizeBefore + " -> " + file.length(), file.length() < sizeBefore);
+
+        // Running again finds nothing left to do
+        assertEquals(0, new LogCompactor(helper, 30, LogCompactor.NO_RETENTION).run());
+    }
+
+    @Test
+    public void chunksResumeAfterTheLastDayCompacted() {
+        DatabaseHelper.MaintenanceCursor cursor = new DatabaseHelper.MaintenanceCursor();
+        int before = today - 30;
+        assertEquals(50, helper.compactLogsBefore(before, 50, cursor));
+
+        // A day at or behind the cursor is left for the next run
+        helper.insertWaterLog(cursor.userId, cursor.day, 100);
+        while (helper.compactLogsBefore(before, 50, cursor) > 0) {
+            // Runs to the end of the table once
+        }
+        assertEquals(1, helper.compactLogsBefore(before, 50));
+        assertEquals(0, helper.checkDailyTotals(false));
+    }
+
+    @Test
+    public void retentionDropsOldDays() {
+        new LogCompactor(helper, 30, 100).run();
+
+        int oldest = today - 100;
+        for (int id : ids) {
+            DailyHistory history = helper.getDailyTotalsBefore(id, Integer.MAX_VALUE, DAYS);
+            assertTrue(history.getDay(history.size() - 1) >= oldest);
+        }
+        assertEquals(0, helper.checkDailyTotals(false));
+    }
+
+    @Test
+    public void runsAtMostOnceADayWithTheSavedRetention() {
+        assertTrue(LogCompactor.runIfDue(context, helper));
+        assertFalse(LogCompactor.runIfDue(context, helper));
+
+        // Changing the window makes the next start apply it
+        LogCompactor.setRetentionDays(context, 100);
+        assertEquals(100, LogCompactor.getRetentionDays(context));
+        assertTrue(LogCompactor.runIfDue(context, helper));
+        assertFalse(LogCompactor.runIfDue(context, helper));
+
+        int oldest = today - 100;
+        DailyHistory history = helper.getDailyTotalsBefore(ids[0], Integer.MAX_VALUE, DAYS);
+        assertTrue(history.getDay(history.size() - 1) >= oldest);
+    }
+
+    private DailyHistory[] fullHistories() {
+        DailyHistory[] histories = new DailyHistory[USERS];
+        for (int u = 0; u < USERS; u++) {
+            histories[u] = helper.getDailyTotalsBefore(ids[u], Integer.MAX_VALUE, DAYS + 1);
+        }
+        return histories;
+    }
+}
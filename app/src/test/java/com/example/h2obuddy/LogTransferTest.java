@@ -0,0 +1,269 @@
+package com.example.h2obuddy;
+
+import android.app.Application;
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class LogTransferTest {
+
+    private static final String TEST_DB = "transfer-test.db";
+    private static final int DAYS = 300; // several export chunks
+
+    private Context context;
+    private DatabaseHelper helper;
+    private LogTransfer transfer;
+    private int source;
+    private int target;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        context.deleteDatabase(TEST_DB);
+        PasswordHasher.setIterations(1);
+        helper = new DatabaseHelper(context, TEST_DB);
+        transfer = new LogTransfer(helper);
+        // Anchored to today because imports reject days in the future
+        int today = EpochDays.today();
+        source = new SyntheticData(24).populate(helper, 1, today, DAYS)[0];
+        helper.saveNotificationTimes(source, 6, 45, 22, 15);
+        helper.updateUserSettings(source, 2750, 40);
+
+        // Untimed rows, as left behind by compaction
+        helper.insertWaterLog(source, today - DAYS - 10, 1800);
+        helper.insertWaterLog(source, today - 5, 300);
+
+        helper.insertUser("Target", "target@example.com", SyntheticData.PASSWORD, 2000);
+        target = helper.getUserIdByEmail("target@example.com");
+    }
+
+    @After
+    public void tearDown() {
+        PasswordHasher.setIterations(PasswordHasher.DEFAULT_ITERATIONS);
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    // Every log row of the user as "day,loggedAt,amount", sorted; compacted totals end in ",c"
+    private List<String> logs(int userId) throws IOException {
+        final List<String> rows = new ArrayList<>();
+        helper.readLogs(userId, 0, Integer.MAX_VALUE, new DatabaseHelper.LogVisitor() {
+            @Override
+            public void onLog(int day, long loggedAt, int amount, boolean compacted) {
+                rows.add(day + "," + loggedAt + "," + amount + (compacted ? ",c" : ""));
+            }
+        });
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private byte[] export(int userId, int format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = transfer.export(userId, format, Channels.newChannel(out));
+        assertEquals(logs(userId).size(), rows);
+        return out.toByteArray();
+    }
+
+    private LogTransfer.Result importInto(int userId, byte[] file, boolean applySettings) throws IOException {
+        return transfer.importInto(userId, Channels.newChannel(new ByteArrayInputStream(file)), applySettings);
+    }
+
+    private void assertRoundTrip(int format) throws IOException {
+        List<String> expected = logs(source);
+        LogTransfer.Result result = importInto(target, export(source, format), true);
+
+        assertEquals(expected.size(), result.imported);
+        assertEquals(0, result.duplicates);
+        assertEquals(0, result.rejected);
+        assertEquals(expected, logs(target));
+        assertArrayEquals(helper.getLogDayRange(source), helper.getLogDayRange(target));
+
+        assertTrue(result.settingsApplied);
+        UserProfile profile = helper.getUserProfile(target);
+        assertEquals(2750, profile.dailyGoal);
+        assertEquals(40, profile.reminderInterval);
+        assertEquals(6, profile.wakeUpHour);
+        assertEquals(45, profile.wakeUpMinute);
+        assertEquals(22, profile.bedTimeHour);
+        assertEquals(15, profile.bedTimeMinute);
+    }
+
+    @Test
+    public void csvRoundTrip() throws IOException {
+        assertRoundTrip(LogArchive.CSV);
+    }
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        assertRoundTrip(LogArchive.BINARY);
+    }
+
+    @Test
+    public void reimportAddsNothing() throws IOException {
+        List<String> before = logs(source);
+        byte[] file = export(source, LogArchive.BINARY);
+
+        LogTransfer.Result result = importInto(source, file, false);
+
+        assertEquals(0, result.imported);
+        assertEquals(before.size(), result.duplicates);
+        assertFalse(result.settingsApplied);
+        assertEquals(before, logs(source));
+    }
+
+    // Every day of the user as "day:total", newest first
+    private List<String> totals(int userId) {
+        DailyHistory history = helper.getDailyTotalsBefore(userId, Integer.MAX_VALUE, DAYS + 20);
+        List<String> totals = new ArrayList<>();
+        for (int i = 0; i < history.size(); i++) {
+            totals.add(history.getDay(i) + ":" + history.getTotal(i));
+        }
+        return totals;
+    }
+
+    @Test
+    public void compactedDaysAreNotCountedTwice() throws IOException {
+        byte[] perDrink = export(source, LogArchive.BINARY);
+        new LogCompactor(helper, 30, LogCompactor.NO_RETENTION).run();
+        List<String> expected = totals(source);
+        byte[] compacted = export(source, LogArchive.BINARY);
+
+        // An export from before compaction, back into the compacted history
+        assertEquals(0, importInto(source, perDrink, false).imported);
+        assertEquals(expected, totals(source));
+
+        // A compacted export into a history that still has every drink
+        importInto(target, perDrink, false);
+        assertEquals(0, importInto(target, compacted, false).imported);
+        assertEquals(expected, totals(target));
+
+        // Compacted totals stay marked when they are imported, in either format
+        for (int format : new int[]{LogArchive.CSV, LogArchive.BINARY}) {
+            String email = "fresh" + format + "@example.com";
+            helper.insertUser("Fresh", email, SyntheticData.PASSWORD, 2000);
+            int fresh = helper.getUserIdByEmail(email);
+            importInto(fresh, export(source, format), false);
+            assertEquals(logs(source), logs(fresh));
+            assertEquals(0, importInto(fresh, perDrink, false).imported);
+            assertEquals(expected, totals(fresh));
+        }
+    }
+
+    @Test
+    public void untimedDrinksDontHideTimedOnes() throws IOException {
+        int day = EpochDays.today() - 2;
+        String date = EpochDays.toDate(day);
+        long noon = (long) day * EpochDays.MILLIS_PER_DAY + EpochDays.MILLIS_PER_DAY / 2;
+        helper.insertWaterLog(target, day, 300); // logged with only a date
+        String csv = "# h2obuddy 2\n"
+                + "log," + date + ",,300\n"
+                + "log," + date + "," + noon + ",250\n"
+                + "log," + date + ",,400\n";
+
+        LogTransfer.Result result = importInto(target, csv.getBytes(StandardCharsets.US_ASCII), false);
+
+        assertEquals(2, result.imported);
+        assertEquals(1, result.duplicates);
+        assertEquals(950, helper.getDailyWaterIntake(target, day));
+
+        // The mixed day survives a round trip whole
+        helper.insertUser("Copy", "copy@example.com", SyntheticData.PASSWORD, 2000);
+        int copy = helper.getUserIdByEmail("copy@example.com");
+        assertEquals(3, importInto(copy, export(target, LogArchive.BINARY), false).imported);
+        assertEquals(logs(target), logs(copy));
+    }
+
+    @Test
+    public void repeatsInsideOneFileAreKept() throws IOException {
+        int day = EpochDays.today() - 1;
+        String date = EpochDays.toDate(day);
+        String csv = "# h2obuddy 1\n"
+                + "log," + date + ",,250\n"
+                + "log," + date + ",,250\n";
+
+        LogTransfer.Result result = importInto(target, csv.getBytes(StandardCharsets.US_ASCII), false);
+
+        assertEquals(2, result.imported);
+        assertEquals(500, helper.getDailyWaterIntake(target, day));
+    }
+
+    @Test
+    public void invalidRowsAreRejected() throws IOException {
+        int day = EpochDays.today() - 1;
+        String date = EpochDays.toDate(day);
+        long noon = (long) day * EpochDays.MILLIS_PER_DAY + EpochDays.MILLIS_PER_DAY / 2;
+        String csv = "# h2obuddy 1\r\n"
+                + "settings,0,60,7,0,23,0\r\n" // no goal
+                + "log," + date + "," + noon + ",250\r\n"
+                + "log," + date + ",,0\r\n" // nothing drunk
+                + "log," + date + ",," + (LogTransfer.MAX_AMOUNT + 1) + "\r\n"
+                + "log," + date + "," + (noon + 5 * EpochDays.MILLIS_PER_DAY) + ",250\r\n" // time on another day
+                + "log," + EpochDays.toDate(EpochDays.today() + 5) + ",,250\r\n" // in the future
+                + "log,2024-02-30,,250\r\n"
+                + "log," + date + ",250\r\n"
+                + "something else\r\n"
+                + "\r\n"
+                + "log," + date + ",,500";
+
+        LogTransfer.Result result = importInto(target, csv.getBytes(StandardCharsets.US_ASCII), true);
+
+        assertEquals(2, result.imported);
+        assertEquals(7, result.rejected);
+        assertFalse(result.settingsApplied);
+        assertEquals(2000, helper.getUserProfile(target).dailyGoal);
+        assertEquals(750, helper.getDailyWaterIntake(target, day));
+    }
+
+    @Test
+    public void damagedBinaryFails() throws IOException {
+        byte[] file = export(source, LogArchive.BINARY);
+
+        try {
+            importInto(target, Arrays.copyOf(file, file.length - 20), false);
+            fail("truncated export was accepted");
+        } catch (EOFException expected) {
+            // Batches read before the end stay imported; importing again completes them
+        }
+
+        file[40] ^= 1;
+        try {
+            importInto(target, file, false);
+            fail("corrupt export was accepted");
+        } catch (IOException expected) {
+            assertFalse(expected instanceof EOFException);
+        }
+    }
+
+    @Test
+    public void rejectsUnknownContent() {
+        try {
+            importInto(target, "day,amount\n1,250\n".getBytes(StandardCharsets.US_ASCII), false);
+            fail("foreign CSV was accepted");
+        } catch (IOException expected) {
+            // Not an export
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.h2obuddy;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, application = Application.class)
+public class MetricsTest {
+
+    private static final String HEADER = "op calls avg_us p50_us p90_us p99_us max_us rows main_thread";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        Metrics.setEnabled(true);
+        Metrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        context.getSharedPreferences("metrics", Context.MODE_PRIVATE).edit().clear().commit();
+        Metrics.setEnabled(true);
+        Metrics.reset();
+    }
+
+    @Test
+    public void bucketsArePowersOfTwoMicros() {
+        assertEquals(0, Metrics.bucket(0));
+        assertEquals(1, Metrics.bucket(1));
+        assertEquals(2, Metrics.bucket(2));
+        assertEquals(2, Metrics.bucket(3));
+        assertEquals(11, Metrics.bucket(1500));
+        assertEquals(31, Metrics.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void nothingIsRecordedWhileDisabled() {
+        long started = Metrics.start();
+        assertNotEquals(0, started);
+
+        Metrics.setEnabled(false);
+        assertEquals(0, Metrics.start());
+        Metrics.end(Metrics.HISTORY, Metrics.start(), 5);
+        // A call already started when recording was switched off is dropped too
+        Metrics.end(Metrics.HISTORY, started, 5);
+        assertArrayEquals(new String[] {HEADER}, lines());
+
+        Metrics.setEnabled(true);
+        Metrics.end(Metrics.HISTORY, Metrics.start(), 5);
+        assertEquals(2, lines().length);
+    }
+
+    @Test
+    public void dumpReportsCallsTimesAndRows() {
+        for (int i = 0; i < 2; i++) {
+            long started = Metrics.start();
+            SystemClock.sleep(3);
+            Metrics.end(Metrics.LOAD_HOME, started, 4);
+        }
+        long started = Metrics.start();
+        SystemClock.sleep(9);
+        Metrics.end(Metrics.LOAD_HOME, started);
+
+        // 3 ms falls in the [2048, 4096) us bucket and 9 ms in [8192, 16384)
+        assertArrayEquals(new String[] {HEADER, "ui.home 3 5000 4096 16384 16384 9000 8 0"}, lines());
+
+        Metrics.reset();
+        assertArrayEquals(new String[] {HEADER}, lines());
+    }
+
+    @Test
+    public void databaseCallsOnTheMainThreadAreCounted() throws InterruptedException {
+        // Robolectric runs tests on the main looper's thread
+        Metrics.end(Metrics.DAILY_INTAKE, Metrics.start(), 1);
+        Metrics.end(Metrics.LOAD_HISTORY, Metrics.start(), 1);
+
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Metrics.end(Metrics.DAILY_INTAKE, Metrics.start(), 1);
+            }
+        });
+        worker.start();
+        worker.join();
+
+        String[] lines = lines();
+        assertEquals(3, lines.length);
+        assertTrue(lines[1], lines[1].startsWith("db.dailyIntake 2 "));
+        assertTrue(lines[1], lines[1].endsWith(" 2 1"));
+        assertTrue(lines[2], lines[2].startsWith("ui.history 1 "));
+        assertTrue(lines[2], lines[2].endsWith(" 1 0"));
+    }
+
+    @Test
+    public void settingsChoiceSurvivesARestart() {
+        // Nothing saved yet: recording stays on
+        Metrics.restore(context);
+        assertTrue(Metrics.isEnabled());
+
+        Metrics.setEnabled(context, false);
+        assertFalse(Metrics.isEnabled());
+
+        // A new process starts with recording on until the saved choice is applied
+        Metrics.setEnabled(true);
+        Metrics.restore(context);
+        assertFalse(Metrics.isEnabled());
+
+        Metrics.setEnabled(context, true);
+        Metrics.setEnabled(false);
+        Metrics.restore(context);
+        assertTrue(Metrics.isEnabled());
+    }
+
+    private static String[] lines() {
+        return Metrics.dump().split("\\R");
+    }
+}
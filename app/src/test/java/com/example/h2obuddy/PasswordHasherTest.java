@@ -0,0 +1,83 @@
+package com.example.h2obuddy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PasswordHasherTest {
+
+    // Low so the tests stay fast; the cost doesn't change what is checked
+    private static final int ITERATIONS = 1000;
+
+    @Test
+    public void verifiesOnlyTheRightPassword() {
+        String salt = PasswordHasher.newSalt();
+        String hash = PasswordHasher.hash("secret", salt, ITERATIONS);
+
+        assertTrue(PasswordHasher.verify("secret", hash, salt, ITERATIONS));
+        assertFalse(PasswordHasher.verify("Secret", hash, salt, ITERATIONS));
+        assertFalse(PasswordHasher.verify("secret", hash, salt, ITERATIONS + 1));
+        assertFalse(PasswordHasher.verify("secret", null, salt, ITERATIONS));
+    }
+
+    @Test
+    public void saltMakesEqualPasswordsHashDifferently() {
+        String first = PasswordHasher.newSalt();
+        String second = PasswordHasher.newSalt();
+
+        assertNotEquals(first, second);
+        assertNotEquals(PasswordHasher.hash("secret", first, ITERATIONS),
+                PasswordHasher.hash("secret", second, ITERATIONS));
+        assertEquals(PasswordHasher.hash("secret", first, ITERATIONS),
+                PasswordHasher.hash("secret", first, ITERATIONS));
+    }
+
+    @Test
+    public void knownVector() {
+        // RFC 6070 test case 2: "password" / "salt", 2 iterations, first 20 bytes
+        String hash = PasswordHasher.hash("password", PasswordHasher.toHex("salt".getBytes()), 2);
+        assertTrue(hash.startsWith("ea6c014dc72d6f8ccd1ed92ace1d41f0d8de8957"));
+    }
+
+    @Test
+    public void hashesFitOneSha1Block() {
+        String salt = PasswordHasher.newSalt();
+        String hash = PasswordHasher.hash("secret", salt, ITERATIONS);
+
+        assertEquals(40, hash.length());
+        assertFalse(PasswordHasher.needsRehash(PasswordHasher.getIterations(), hash));
+    }
+
+    @Test
+    public void longerHashesStillVerifyAndNeedRehash() {
+        String salt = PasswordHasher.newSalt();
+        String older = PasswordHasher.hash("secret", salt, ITERATIONS, 256);
+
+        assertTrue(PasswordHasher.verify("secret", older, salt, ITERATIONS));
+        assertFalse(PasswordHasher.verify("Secret", older, salt, ITERATIONS));
+        // The first block is the same either way
+        assertTrue(older.startsWith(PasswordHasher.hash("secret", salt, ITERATIONS)));
+        assertTrue(PasswordHasher.needsRehash(PasswordHasher.getIterations(), older));
+    }
+
+    @Test
+    public void legacyRowsComparePlaintextAndNeedRehash() {
+        assertTrue(PasswordHasher.verify("secret", "secret", null, PasswordHasher.LEGACY_PLAINTEXT));
+        assertFalse(PasswordHasher.verify("other", "secret", null, PasswordHasher.LEGACY_PLAINTEXT));
+
+        assertTrue(PasswordHasher.needsRehash(PasswordHasher.LEGACY_PLAINTEXT));
+        assertTrue(PasswordHasher.needsRehash(PasswordHasher.getIterations() - 1));
+        assertFalse(PasswordHasher.needsRehash(PasswordHasher.getIterations()));
+    }
+
+    @Test
+    public void raisingTheCostFlagsOlderHashes() {
+        int before = PasswordHasher.getIterations();
+        try {
+            PasswordHasher.setIterations(before * 2);
+            assertTrue(PasswordHasher.needsRehash(before));
+        } finally {
+            PasswordHasher.setIterations(before);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.h2obuddy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The expected query plan of every named statement DatabaseHelper issues.
+ *
+ * A statement that is not declared here fails QueryPlanTest, so adding a query means deciding
+ * which index it should use. Fragments are matched against EXPLAIN QUERY PLAN detail lines
+ * with the "TABLE " noise word removed, which older SQLite versions print.
+ *
+ * The plan of a write doesn't include the triggers it fires, so each trigger's statements are
+ * declared separately, by trigger name.
+ */
+final class QueryPlanRegistry {
+
+    static final class Expectation {
+        final String[] fragments;
+        // Maintenance statements that read whole tables on purpose
+        final boolean fullScanAllowed;
+
+        Expectation(boolean fullScanAllowed, String... fragments) {
+            this.fragments = fragments;
+            this.fullScanAllowed = fullScanAllowed;
+        }
+    }
+
+    static final Map<String, Expectation> PLANS = new LinkedHashMap<>();
+    static final Map<String, Expectation> TRIGGER_PLANS = new LinkedHashMap<>();
+
+    private static final String USERS_BY_ID = "SEARCH users USING INTEGER PRIMARY KEY";
+    private static final String USERS_BY_EMAIL = "SEARCH users USING INDEX sqlite_autoindex_users_1";
+    private static final String USER_ID_BY_EMAIL = "SEARCH users USING COVERING INDEX sqlite_autoindex_users_1";
+    private static final String DAILY_TOTALS = "SEARCH daily_totals USING PRIMARY KEY";
+    private static final String GOAL_DAYS = "SEARCH goal_days USING PRIMARY KEY";
+    private static final String GOAL_HISTORY = "SEARCH goal_history USING PRIMARY KEY";
+    private static final String INTAKE_JOURNAL = "SEARCH intake_journal USING INTEGER PRIMARY KEY";
+    private static final String COMPACTED_DAYS = "SEARCH compacted_days USING PRIMARY KEY";
+
+    static {
+        expect("insertUser");
+        expect("validateUser", USERS_BY_EMAIL);
+        expect("getUserProfile", USERS_BY_ID);
+        expect("getUserIdByEmail", USER_ID_BY_EMAIL);
+        expect("getDailyGoalByEmail", USERS_BY_EMAIL);
+        expect("getReminderIntervalByEmail", USERS_BY_EMAIL);
+        expect("updateUserSettings", USERS_BY_ID);
+        expect("updateUserSettingsByEmail", USERS_BY_EMAIL);
+        expect("saveNotificationTimes", USERS_BY_ID);
+        expect("saveNotificationTimesByEmail", USERS_BY_EMAIL);
+        expect("setPassword", USERS_BY_ID);
+        expect("startSession", USERS_BY_ID);
+        expect("validateSession", USERS_BY_ID);
+        expect("endSession", USERS_BY_ID);
+        expect("recordGoal");
+        expect("recordGoalByEmail", USER_ID_BY_EMAIL);
+        expect("reevaluateGoalDays", DAILY_TOTALS);
+        expect("reevaluateGoalDaysByEmail", DAILY_TOTALS, USER_ID_BY_EMAIL);
+
+        expect("insertWaterLog");
+        expect("insertWaterLogs");
+        expect("getDailyWaterIntake", DAILY_TOTALS);
+        expect("getDailyWaterIntakeByEmail", DAILY_TOTALS, USER_ID_BY_EMAIL);
+        expect("history", DAILY_TOTALS);
+        expect("historyByEmail", DAILY_TOTALS, USER_ID_BY_EMAIL);
+        expect("getDailyTotalsBefore", DAILY_TOTALS, GOAL_DAYS);
+        expect("getGoalBitmap", GOAL_DAYS);
+        expect("intakeAnalytics", "SEARCH water_logs USING COVERING INDEX idx_water_logs_user_day_time");
+        expect("timedIntake", "SEARCH water_logs USING COVERING INDEX idx_water_logs_user_day_time");
+
+        expect("logDayRange", DAILY_TOTALS);
+        expect("exportLogs", "SEARCH water_logs USING COVERING INDEX idx_water_logs_user_day_time", COMPACTED_DAYS);
+        expect("lastLogId", "SEARCH water_logs");
+        expect("importLog", "SEARCH water_logs USING COVERING INDEX idx_water_logs_user_day_time", COMPACTED_DAYS);
+        expect("markImportedDayCompacted");
+
+        expect("foldedJournalSeq", INTAKE_JOURNAL);
+        expect("foldJournal");
+        expect("markJournalFolded", INTAKE_JOURNAL);
+
+        expect("sumLogsForDay", "SEARCH water_logs USING COVERING INDEX idx_water_logs_user_day_time");
+        expect("deleteLogsForDay", "SEARCH water_logs USING", "idx_water_logs_user_day_time");
+        expect("insertCompactedLog");
+        expect("markDayCompacted");
+
+        // Resume where the previous chunk stopped
+        expect("compactionCandidates", DAILY_TOTALS);
+        expect("expiredLogs", "SEARCH water_logs USING INTEGER PRIMARY KEY");
+        expect("deleteExpiredLogs", "SEARCH water_logs USING INTEGER PRIMARY KEY");
+        maintenance("deleteExpiredCompactedDays");
+        maintenance("checkDailyTotals", "water_logs USING COVERING INDEX idx_water_logs_user_day_time");
+        maintenance("clearDailyTotals");
+        maintenance("rebuildDailyTotals", "water_logs USING COVERING INDEX idx_water_logs_user_day_time");
+
+        // Run for every row written to water_logs, daily_totals or users
+        trigger("trg_water_logs_insert", DAILY_TOTALS);
+        trigger("trg_water_logs_delete", DAILY_TOTALS);
+        trigger("trg_water_logs_update", DAILY_TOTALS);
+        trigger("trg_daily_totals_insert", GOAL_DAYS, GOAL_HISTORY);
+        trigger("trg_daily_totals_update", GOAL_DAYS, GOAL_HISTORY);
+        trigger("trg_daily_totals_delete", GOAL_DAYS);
+        trigger("trg_users_insert_goal");
+    }
+
+    private QueryPlanRegistry() {
+    }
+
+    private static void expect(String name, String... fragments) {
+        PLANS.put(name, new Expectation(false, fragments));
+    }
+
+    private static void maintenance(String name, String... fragments) {
+        PLANS.put(name, new Expectation(true, fragments));
+    }
+
+    private static void trigger(String name, String... fragments) {
+        TRIGGER_PLANS.put(name, new Expectation(false, fragments));
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.h2obuddy;
+
+import android.app.Application;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs EXPLAIN QUERY PLAN for every statement DatabaseHelper issues while exercising its public
+ * API, and for every statement in a trigger body, and fails on full table scans, temp B-trees,
+ * or statements missing from QueryPlanRegistry.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class QueryPlanTest {
+
+    private static final String TEST_DB = "plan-test.db";
+
+    private final Map<String, String[]> statements = new LinkedHashMap<>();
+    private final Map<String, String> sqlByName = new LinkedHashMap<>();
+
+    private Context context;
+    private DatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        new SyntheticData(7).populate(helper, 3, EpochDays.today(), 10);
+
+        DatabaseHelper.statementListener = new DatabaseHelper.StatementListener() {
+            @Override
+            public void onStatement(String name, String sql, String[] args) {
+                synchronized (statements) {
+                    statements.put(name, args);
+                    sqlByName.put(name, sql);
+                }
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.statementListener = null;
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void everyStatementUsesItsDeclaredIndex() throws IOException {
+        exerciseEveryQuery();
+
+        SQLiteDatabase db = helper.getReadableDatabase();
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, String[]> statement : statements.entrySet()) {
+            String name = statement.getKey();
+            QueryPlanRegistry.Expectation expected = QueryPlanRegistry.PLANS.get(name);
+            if (expected == null) {
+                failures.add(name + ": not declared in QueryPlanRegistry");
+                continue;
+            }
+
+            check(name, expected, explain(db, sqlByName.get(name), statement.getValue()), failures);
+        }
+
+        for (String declared : QueryPlanRegistry.PLANS.keySet()) {
+            if (!statements.containsKey(declared)) {
+                failures.add(declared + ": declared but never issued; exercise it or remove it");
+            }
+        }
+        assertTrue(String.join("\n\n", failures), failures.isEmpty());
+    }
+
+    @Test
+    public void everyTriggerStatementUsesItsDeclaredIndex() {
+        SQLiteDatabase db = helper.getReadableDatabase();
+        List<String> failures = new ArrayList<>();
+        List<String> triggers = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT name, sql FROM sqlite_master WHERE type = 'trigger'", null)) {
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(0);
+                triggers.add(name);
+                QueryPlanRegistry.Expectation expected = QueryPlanRegistry.TRIGGER_PLANS.get(name);
+                if (expected == null) {
+                    failures.add(name + ": not declared in QueryPlanRegistry");
+                    continue;
+                }
+
+                // NEW.x and OLD.x become parameters, so each statement can be explained on its own
+                String sql = cursor.getString(1);
+                String body = sql.substring(sql.indexOf(" BEGIN ") + 7, sql.lastIndexOf("END"));
+                StringBuilder plan = new StringBuilder();
+                for (String statement : body.split(";")) {
+                    statement = statement.trim().replaceAll("\\b(NEW|OLD)\\.\\w+", "?");
+                    if (statement.isEmpty()) {
+                        continue;
+                    }
+                    String[] args = new String[statement.length() - statement.replace("?", "").length()];
+                    Arrays.fill(args, "1");
+                    plan.append(explain(db, statement, args));
+                }
+                check(name, expected, plan.toString(), failures);
+            }
+        }
+
+        for (String declared : QueryPlanRegistry.TRIGGER_PLANS.keySet()) {
+            if (!triggers.contains(declared)) {
+                failures.add(declared + ": declared but no such trigger; remove it");
+            }
+        }
+        assertTrue(String.join("\n\n", failures), failures.isEmpty());
+    }
+
+    private static void check(String name, QueryPlanRegistry.Expectation expected, String plan, List<String> failures) {
+        // INSERT ... SELECT without a FROM "scans" its one constant row, not a table
+        plan = plan.replace("SCAN CONSTANT ROW", "");
+        for (String fragment : expected.fragments) {
+            if (!plan.contains(fragment)) {
+                failures.add(name + ": expected \"" + fragment + "\" in plan\n" + plan);
+            }
+        }
+        if (!expected.fullScanAllowed && (plan.contains("SCAN ") || plan.contains("USE TEMP B-TREE"))) {
+            failures.add(name + ": full scan or temp B-tree\n" + plan);
+        }
+    }
+
+    // Calls every public DatabaseHelper method that touches the database
+    private void exerciseEveryQuery() throws IOException {
+        String email = SyntheticData.email(0);
+        int userId = helper.getUserIdByEmail(email);
+        int today = EpochDays.today();
+
+        helper.insertUser("Plan", "plan@example.com", SyntheticData.PASSWORD, 2000);
+        helper.validateUser(email, SyntheticData.PASSWORD);
+        helper.getUserProfile(userId);
+        helper.getDailyGoal(email);
+        helper.getReminderInterval(email);
+        helper.updateUserSettings(userId, 2200, 45);
+        helper.updateUserSettings(email, 2300, 50);
+        helper.saveNotificationTimes(userId, 7, 0, 23, 0);
+        helper.saveNotificationTimes(email, 7, 30, 23, 30);
+        helper.setPassword(userId, SyntheticData.PASSWORD);
+        helper.startSession(userId, "token");
+        helper.isSessionValid(userId, "token");
+        helper.endSession(userId);
+
+        helper.insertWaterLog(userId, today, 250);
+        helper.insertWaterLog(new IntakeEvent(userId, System.currentTimeMillis(), 250));
+        helper.insertWaterLog(email, EpochDays.toDate(today), 250);
+        helper.insertWaterLogs(Arrays.asList(new IntakeEvent(userId, System.currentTimeMillis(), 250)));
+
+        File journalFile = new File(context.getFilesDir(), "plan-test.journal");
+        helper.setIntakeStore(IntakeJournal.open(journalFile, helper, 16, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }));
+        helper.insertWaterLog(userId, today, 250);
+        helper.setIntakeStore(null); // folds
+        journalFile.delete();
+        helper.getDailyWaterIntake(userId, today);
+        helper.getDailyWaterIntake(email, EpochDays.toDate(today));
+        helper.getDailyHistory(userId);
+        helper.getDailyHistory(email);
+        helper.getWeeklyHistory(userId);
+        helper.getWeeklyHistory(email);
+        helper.getWeeklyWaterIntake(userId).close();
+        helper.getWeeklyWaterIntake(email).close();
+        helper.getDailyTotals(userId);
+        helper.getDailyTotalsBefore(userId, today - 3, 5);
+        helper.getIntakeAnalytics(userId, today - 29, today);
+        helper.getTimedIntake(userId, today - 1, 0, Long.MAX_VALUE);
+        helper.getGoalBitmap(userId);
+
+        ByteArrayOutputStream export = new ByteArrayOutputStream();
+        LogTransfer transfer = new LogTransfer(helper);
+        transfer.export(userId, LogArchive.BINARY, Channels.newChannel(export));
+        transfer.importInto(userId, Channels.newChannel(new ByteArrayInputStream(export.toByteArray())), false);
+
+        helper.getWritableDatabase().execSQL("UPDATE daily_totals SET total = total + 1 WHERE user_id = " + userId);
+        helper.checkDailyTotals(true);
+
+        helper.compactLogsBefore(today - 2, 10);
+        helper.deleteLogsBefore(today - 8, 10);
+    }
+
+    private static String explain(SQLiteDatabase db, String sql, String[] args) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail).replace("TABLE ", "")).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.h2obuddy;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class ReminderScheduleTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final long MINUTE = 60_000L;
+
+    // 2024-03-01 00:00 UTC
+    private static final long MIDNIGHT = EpochDays.of(2024, 3, 1) * EpochDays.MILLIS_PER_DAY;
+
+    private static long at(int hour, int minute) {
+        return MIDNIGHT + (hour * 60 + minute) * MINUTE;
+    }
+
+    @Test
+    public void timelineRunsFromWakeUpToBedTime() {
+        ReminderSchedule schedule = new ReminderSchedule(7, 0, 22, 0, 60);
+
+        int[] timeline = schedule.timeline();
+        assertEquals(15, schedule.remindersPerDay());
+        assertEquals(8 * 60, timeline[0]);
+        assertEquals(22 * 60, timeline[timeline.length - 1]);
+    }
+
+    @Test
+    public void nextReminderWithinWindow() {
+        ReminderSchedule schedule = new ReminderSchedule(7, 0, 22, 0, 60);
+
+        assertEquals(at(8, 0), schedule.nextReminderAfter(at(7, 0), UTC));
+        assertEquals(at(13, 0), schedule.nextReminderAfter(at(12, 30), UTC));
+        // Strictly after: a reminder that just fired isn't returned again
+        assertEquals(at(14, 0), schedule.nextReminderAfter(at(13, 0), UTC));
+    }
+
+    @Test
+    public void beforeWakeUpWaitsForTheFirstReminder() {
+        ReminderSchedule schedule = new ReminderSchedule(7, 0, 22, 0, 60);
+
+        assertEquals(at(8, 0), schedule.nextReminderAfter(at(3, 15), UTC));
+    }
+
+    @Test
+    public void afterBedTimeRollsToTomorrow() {
+        ReminderSchedule schedule = new ReminderSchedule(7, 0, 22, 0, 60);
+
+        assertEquals(at(24 + 8, 0), schedule.nextReminderAfter(at(22, 0), UTC));
+        assertEquals(at(24 + 8, 0), schedule.nextReminderAfter(at(23, 59), UTC));
+    }
+
+    @Test
+    public void windowCrossingMidnight() {
+        // Night shift: awake 20:00 to 04:00
+        ReminderSchedule schedule = new ReminderSchedule(20, 0, 4, 0, 90);
+
+        assertArrayEquals(new int[]{1290, 1380, 1470, 1560, 1650}, schedule.timeline());
+        // Still inside the window that started yesterday evening
+        assertEquals(at(2, 0), schedule.nextReminderAfter(at(1, 0), UTC));
+        // Between bed time and wake-up
+        assertEquals(at(21, 30), schedule.nextReminderAfter(at(4, 0), UTC));
+        assertEquals(at(21, 30), schedule.nextReminderAfter(at(20, 45), UTC));
+        assertEquals(at(24 + 0, 30), schedule.nextReminderAfter(at(23, 0), UTC));
+    }
+
+    @Test
+    public void sameWakeAndBedTimeMeansAFullDay() {
+        ReminderSchedule schedule = new ReminderSchedule(6, 0, 6, 0, 120);
+
+        assertEquals(12, schedule.remindersPerDay());
+        assertEquals(at(6, 0), schedule.nextReminderAfter(at(5, 0), UTC));
+    }
+
+    @Test
+    public void intervalLongerThanWindowHasNoReminders() {
+        ReminderSchedule schedule = new ReminderSchedule(9, 0, 10, 0, 90);
+
+        assertEquals(0, schedule.remindersPerDay());
+        assertEquals(0, schedule.timeline().length);
+    }
+
+    @Test
+    public void followsLocalTimeAcrossDaylightSaving() {
+        TimeZone zone = TimeZone.getTimeZone("Europe/London");
+        ReminderSchedule schedule = new ReminderSchedule(8, 0, 22, 0, 60);
+
+        // Clocks went forward at 01:00 on 2024-03-31
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.clear();
+        calendar.set(2024, Calendar.MARCH, 30, 23, 0);
+        long next = schedule.nextReminderAfter(calendar.getTimeInMillis(), zone);
+
+        calendar.setTimeInMillis(next);
+        assertEquals(31, calendar.get(Calendar.DAY_OF_MONTH));
+        assertEquals(9, calendar.get(Calendar.HOUR_OF_DAY));
+        assertEquals(0, calendar.get(Calendar.MINUTE));
+    }
+
+    @Test
+    public void expectedIntakeFollowsAnEvenPace() {
+        ReminderSchedule schedule = new ReminderSchedule(8, 0, 20, 0, 60);
+
+        assertEquals(0, schedule.expectedIntake(at(6, 0), UTC, 2400));
+        assertEquals(0, schedule.expectedIntake(at(8, 0), UTC, 2400));
+        assertEquals(1200, schedule.expectedIntake(at(14, 0), UTC, 2400));
+        assertEquals(2400, schedule.expectedIntake(at(21, 0), UTC, 2400));
+    }
+
+    @Test
+    public void expectedIntakeAcrossMidnightCountsFromWindowStart() {
+        // Night shift: awake 20:00 to 04:00
+        ReminderSchedule schedule = new ReminderSchedule(20, 0, 4, 0, 60);
+
+        assertTrue(schedule.crossesMidnight());
+        assertFalse(new ReminderSchedule(8, 0, 20, 0, 60).crossesMidnight());
+        assertEquals(500, schedule.expectedIntake(at(22, 0), UTC, 2000));
+        assertEquals(1500, schedule.expectedIntake(at(2, 0), UTC, 2000));
+        // The bed-time reminder and the hours after it expect the whole goal
+        assertEquals(2000, schedule.expectedIntake(at(4, 0), UTC, 2000));
+        assertEquals(2000, schedule.expectedIntake(at(12, 0), UTC, 2000));
+        assertFalse(schedule.isBehindPace(at(2, 0), UTC, 1800, 2000));
+        assertTrue(schedule.isBehindPace(at(2, 0), UTC, 1400, 2000));
+    }
+
+    @Test
+    public void behindPaceStillGetsEveryReminder() {
+        ReminderSchedule schedule = new ReminderSchedule(8, 0, 20, 0, 60);
+
+        assertTrue(schedule.isBehindPace(at(14, 0), UTC, 1000, 2400));
+        assertEquals(at(15, 0), schedule.nextAdaptiveReminderAfter(at(14, 0), UTC, 1000, 2400));
+    }
+
+    @Test
+    public void aheadOfPacePostponesUntilPaceCatchesUp() {
+        ReminderSchedule schedule = new ReminderSchedule(8, 0, 20, 0, 60);
+
+        // 1800 of 2400 ml is where an even pace would be at 17:00
+        assertFalse(schedule.isBehindPace(at(10, 0), UTC, 1800, 2400));
+        assertEquals(at(17, 0), schedule.nextAdaptiveReminderAfter(at(10, 0), UTC, 1800, 2400));
+        // Catching up between reminders rounds to the next one
+        assertEquals(at(17, 0), schedule.nextAdaptiveReminderAfter(at(10, 0), UTC, 1700, 2400));
+    }
+
+    @Test
+    public void goalMetSkipsToTomorrow() {
+        ReminderSchedule schedule = new ReminderSchedule(8, 0, 20, 0, 60);
+
+        assertFalse(schedule.isBehindPace(at(12, 0), UTC, 2400, 2400));
+        assertEquals(at(24 + 9, 0), schedule.nextAdaptiveReminderAfter(at(12, 0), UTC, 2400, 2400));
+        assertEquals(at(24 + 9, 0), schedule.nextAdaptiveReminderAfter(at(12, 0), UTC, 3000, 2400));
+    }
+
+    @Test
+    public void adaptiveMatchesFixedWhenNothingLogged() {
+        ReminderSchedule schedule = new ReminderSchedule(20, 0, 4, 0, 90);
+
+        for (int hour = 0; hour < 24; hour++) {
+            long now = at(hour, 10);
+            assertEquals(schedule.nextReminderAfter(now, UTC),
+                    schedule.nextAdaptiveReminderAfter(now, UTC, 0, 2000));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveInterval() {
+        new ReminderSchedule(7, 0, 22, 0, 0);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.h2obuddy;
+
+import android.app.Application;
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class ReminderSchedulerTest {
+
+    private static final String TEST_DB = "scheduler-test.db";
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final int DAY = EpochDays.of(2024, 3, 1);
+
+    private Context context;
+    private TimeZone defaultZone;
+    private DatabaseHelper helper;
+    private int userId;
+
+    @Before
+    public void setUp() {
+        defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        context = RuntimeEnvironment.getApplication();
+        context.deleteDatabase(TEST_DB);
+        PasswordHasher.setIterations(1);
+        helper = new DatabaseHelper(context, TEST_DB);
+        helper.insertUser("Night", "night@example.com", SyntheticData.PASSWORD, 2000);
+        userId = helper.getUserIdByEmail("night@example.com");
+        // Night shift: awake 20:00 to 04:00, hourly reminders
+        helper.saveNotificationTimes(userId, 20, 0, 4, 0);
+        helper.updateUserSettings(userId, 2000, 60);
+
+        drink(DAY, 1, 250); // end of the window that began the evening before
+        drink(DAY, 19, 500); // awake early
+        drink(DAY, 21, 800);
+        drink(DAY, 23, 800);
+        drink(DAY + 1, 1, 200);
+    }
+
+    @After
+    public void tearDown() {
+        context.getSharedPreferences("reminders", Context.MODE_PRIVATE).edit().clear().commit();
+        PasswordHasher.setIterations(PasswordHasher.DEFAULT_ITERATIONS);
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+        TimeZone.setDefault(defaultZone);
+    }
+
+    private void drink(int day, int hour, int amount) {
+        helper.insertWaterLog(new IntakeEvent(userId, at(day, hour), amount));
+    }
+
+    private static long at(int day, int hour) {
+        return day * EpochDays.MILLIS_PER_DAY + hour * HOUR;
+    }
+
+    private ProgressCache.Progress progress(int day) {
+        return new ProgressCache.Progress(2000, day, helper.getDailyWaterIntake(userId, day));
+    }
+
+    @Test
+    public void adaptiveIsOffUntilSwitchedOn() {
+        assertFalse(ReminderScheduler.isAdaptive(context));
+        ReminderScheduler.setAdaptive(context, true);
+        assertTrue(ReminderScheduler.isAdaptive(context));
+    }
+
+    @Test
+    public void paceAcrossMidnightCountsFromTheWindowStart() {
+        UserProfile profile = helper.getUserProfile(userId);
+        ReminderSchedule schedule = ReminderSchedule.forProfile(profile);
+
+        // Before midnight: today's drinks from before 20:00 belong elsewhere
+        assertEquals(1600, ReminderScheduler.windowIntake(helper, schedule, userId, progress(DAY), at(DAY, 23)));
+
+        // After midnight today's total is only 200, but the window has had 1800 of the 1500
+        // an even pace expects by 02:00
+        long night = at(DAY + 1, 2);
+        ProgressCache.Progress progress = progress(DAY + 1);
+        assertEquals(200, progress.getTodayTotal());
+        assertEquals(1800, ReminderScheduler.windowIntake(helper, schedule, userId, progress, night));
+        assertFalse(ReminderScheduler.shouldRemind(helper, profile, progress, night));
+        assertTrue(ReminderScheduler.shouldRemind(helper, profile, null, night));
+    }
+
+    @Test
+    public void sameDayWindowUsesTodaysTotal() {
+        ReminderSchedule schedule = new ReminderSchedule(8, 0, 22, 0, 60);
+
+        assertEquals(2350, ReminderScheduler.windowIntake(helper, schedule, userId, progress(DAY), at(DAY, 23)));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.h2obuddy;
+
+import android.app.Application;
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * JVM benchmark of the DatabaseHelper hot paths against synthetic data, from one user with a
+ * month of logs up to 10k users with three years each. Runs on Robolectric's native SQLite.
+ *
+ * Opt-in: ./gradlew testDebugUnitTest --tests '*StorageBenchmark' -Dh2o.benchmark=true
+ * Each (scale, operation) pair is written as one JSON line to stdout and to
+ * build/reports/benchmarks/storage.jsonl so runs can be diffed between commits.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class StorageBenchmark {
+
+    private static final String TEST_DB = "storage-bench.db";
+    private static final int BENCH_HASH_ITERATIONS = 1;
+    private static final String DEFAULT_SCALES = "1x30,100x365,1000x1095,10000x1095";
+    private static final int WARMUP = 200;
+    private static final int SAMPLES = 2000;
+
+    private Context context;
+    private Writer output;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue("set -Dh2o.benchmark=true to run", Boolean.getBoolean("h2o.benchmark"));
+        context = RuntimeEnvironment.getApplication();
+        // PBKDF2 cost is PasswordHashBenchmark's concern; here it would only slow down seeding
+        // thousands of users and drown out the validateUser query
+        PasswordHasher.setIterations(BENCH_HASH_ITERATIONS);
+        File file = new File(System.getProperty("h2o.benchmark.output", "build/storage.jsonl"));
+        file.getParentFile().mkdirs();
+        output = new FileWriter(file, true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        PasswordHasher.setIterations(PasswordHasher.DEFAULT_ITERATIONS);
+        if (output != null) {
+            output.close();
+        }
+    }
+
+    @Test
+    public void hotPathsAcrossScales() throws IOException {
+        String scales = System.getProperty("h2o.benchmark.scales", "");
+        for (String scale : (scales.isEmpty() ? DEFAULT_SCALES : scales).split(",")) {
+            String[] parts = scale.trim().split("x");
+            runScale(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        }
+    }
+
+    private void runScale(int users, int days) throws IOException {
+        context.deleteDatabase(TEST_DB);
+        final DatabaseHelper helper = new DatabaseHelper(context, TEST_DB);
+        final SyntheticData data = new SyntheticData(42);
+        final int today = EpochDays.today();
+        final int[] ids = data.populate(helper, users, today, days);
+        String label = users + "x" + days;
+
+        measure(label, users, days, "insertWaterLog", new Op() {
+            @Override
+            public void run() {
+                helper.insertWaterLog(data.pick(ids), today, data.amount());
+            }
+        });
+        measure(label, users, days, "getDailyWaterIntake", new Op() {
+            @Override
+            public void run() {
+                helper.getDailyWaterIntake(data.pick(ids), today - data.nextInt(days));
+            }
+        });
+        measure(label, users, days, "getDailyHistory", new Op() {
+            @Override
+            public void run() {
+                helper.getDailyHistory(data.pick(ids));
+            }
+        });
+        measure(label, users, days, "validateUser", new Op() {
+            @Override
+            public void run() {
+                helper.validateUser(SyntheticData.email(data.nextInt(ids.length)), SyntheticData.PASSWORD);
+            }
+        });
+        measure(label, users, days, "updateUserSettings", new Op() {
+            @Override
+            public void run() {
+                helper.updateUserSettings(data.pick(ids), 1500 + data.nextInt(6) * 250, 30 + data.nextInt(90));
+            }
+        });
+
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    private interface Op {
+        void run();
+    }
+
+    private void measure(String scale, int users, int days, String name, Op op) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+        long[] samples = new long[SAMPLES];
+        long total = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            op.run();
+            samples[i] = System.nanoTime() - start;
+            total += samples[i];
+        }
+        Arrays.sort(samples);
+
+        String line = String.format(Locale.ROOT,
+                "{\"scale\":\"%s\",\"users\":%d,\"days\":%d,\"op\":\"%s\",\"samples\":%d,"
+                        + "\"ops_per_sec\":%.1f,\"p50_us\":%.1f,\"p99_us\":%.1f}",
+                scale, users, days, name, SAMPLES,
+                SAMPLES / (total / 1e9),
+                samples[SAMPLES / 2] / 1e3,
+                samples[(int) (SAMPLES * 0.99)] / 1e3);
+        System.out.println(line);
+        output.write(line);
+        output.write('\n');
+        output.flush();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.h2obuddy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Deterministic synthetic users and intake logs for storage tests and benchmarks.
+ * The same seed always produces the same database.
+ */
+final class SyntheticData {
+
+    static final String PASSWORD = "synthetic-password";
+    private static final int BATCH = 20_000;
+    private static final int HOUR = 60 * 60 * 1000;
+
+    private final Random random;
+
+    SyntheticData(long seed) {
+        random = new Random(seed);
+    }
+
+    static String email(int index) {
+        return "user" + index + "@example.com";
+    }
+
+    /**
+     * Creates {@code users} users, each with {@code days} days of history ending on
+     * {@code lastDay} and 3-9 drinks per day between 08:00 and 20:00 local time. Returns the user
+     * ids in creation order.
+     */
+    int[] populate(DatabaseHelper helper, int users, int lastDay, int days) {
+        int[] ids = new int[users];
+        for (int u = 0; u < users; u++) {
+            helper.insertUser("User " + u, email(u), PASSWORD, 1500 + random.nextInt(6) * 250);
+            ids[u] = helper.getUserIdByEmail(email(u));
+        }
+
+        List<IntakeEvent> batch = new ArrayList<>(BATCH);
+        for (int u = 0; u < users; u++) {
+            for (int d = 0; d < days; d++) {
+                long morning = startOfDay(lastDay - d) + 8 * HOUR;
+                int drinks = 3 + random.nextInt(7);
+                for (int i = 0; i < drinks; i++) {
+                    batch.add(new IntakeEvent(ids[u], morning + random.nextInt(12 * HOUR), amount()));
+                    if (batch.size() == BATCH) {
+                        helper.insertWaterLogs(batch);
+                        batch.clear();
+                    }
+                }
+            }
+        }
+        helper.insertWaterLogs(batch);
+        return ids;
+    }
+
+    // Local midnight starting the given epoch day, the inverse of EpochDays.fromMillis
+    static long startOfDay(int epochDay) {
+        long utc = epochDay * EpochDays.MILLIS_PER_DAY;
+        return utc - TimeZone.getDefault().getOffset(utc);
+    }
+
+    int amount() {
+        return 100 + random.nextInt(8) * 50;
+    }
+
+    int pick(int[] ids) {
+        return ids[random.nextInt(ids.length)];
+    }
+
+    int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+}